@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.elasticsearch.jdbc.strategy.mock.MockSink;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Compares the ways a row of numbers and timestamps ends up in a document source.
+ *
+ * The listener benchmark is the path of the importer: decoded values are boxed, pass the key/value
+ * stream listener, and are written by the document as values. The boxed benchmark writes the same boxed
+ * values straight into the builder, and the primitives benchmark writes primitives straight into the
+ * builder, which is the lower bound for typed document slots.
+ *
+ * Run with <code>gradle jmh -Pjmh=DocumentBuildBenchmark</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DocumentBuildBenchmark {
+
+    private final static List<Object> KEYS = Arrays.<Object>asList("_id", "quantity", "price", "created", "name");
+
+    private final static long CREATED = 1468000000000L;
+
+    private SinkKeyValueStreamListener<Object, Object> listener;
+
+    private long id;
+
+    private long length;
+
+    @Setup
+    public void setup() throws IOException {
+        MockSink sink = new MockSink() {
+            @Override
+            public void index(IndexableObject object, boolean create) throws IOException {
+                length += object.build().length();
+            }
+        };
+        listener = new SinkKeyValueStreamListener<Object, Object>().output(sink);
+        listener.begin();
+        listener.keys(KEYS);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        listener.end();
+    }
+
+    @Benchmark
+    public long listener() throws IOException {
+        long n = ++id;
+        listener.values(Arrays.<Object>asList(n, n % 100, n * 0.25d, CREATED + n, "product"));
+        return length;
+    }
+
+    @Benchmark
+    public int boxed() throws IOException {
+        long n = ++id;
+        Object[] values = new Object[]{n % 100, n * 0.25d, CREATED + n, "product"};
+        XContentBuilder builder = jsonBuilder().startObject();
+        for (int i = 0; i < values.length; i++) {
+            builder.field((String) KEYS.get(i + 1)).value(values[i]);
+        }
+        return builder.endObject().string().length();
+    }
+
+    @Benchmark
+    public int primitives() throws IOException {
+        long n = ++id;
+        return jsonBuilder().startObject()
+                .field("quantity", n % 100)
+                .field("price", n * 0.25d)
+                .field("created", CREATED + n)
+                .field("name", "product")
+                .endObject().string().length();
+    }
+}
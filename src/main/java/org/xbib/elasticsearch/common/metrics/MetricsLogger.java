@@ -46,6 +46,13 @@ public class MetricsLogger {
         double dps = submitted * 1000.0 / elapsed;
         double avg = bytes / (submitted + 1); // avoid div by zero
         double mbps = (bytes * 1024.0 / elapsed) / 1048576.0;
+        long rejected = metric.getRejected().count();
+        long retried = metric.getRetried().count();
+        long deadlettered = metric.getDeadLettered().count();
+        int bulkactions = metric.getBulkActions();
+        long bulkvolume = metric.getBulkVolume();
+        int concurrency = metric.getBulkConcurrency();
+        long latency = metric.getBulkLatency() / 1000000;
         if (settings.getAsBoolean("metrics.logger.json", false)) {
             XContentBuilder builder = jsonBuilder();
             builder.startObject()
@@ -57,11 +64,19 @@ public class MetricsLogger {
                     .field("avg", avg)
                     .field("dps", dps)
                     .field("mbps", mbps)
+                    .field("rejected", rejected)
+                    .field("retried", retried)
+                    .field("deadlettered", deadlettered)
+                    .field("bulkactions", bulkactions)
+                    .field("bulkvolume", bulkvolume)
+                    .field("concurrency", concurrency)
+                    .field("latency", latency)
                     .endObject();
             jsonsinklogger.info(builder.string());
         }
         if (settings.getAsBoolean("metrics.logger.plain", true)) {
-            plainsinklogger.info("{} = {} ms, submitted = {}, succeeded = {}, failed = {}, {} = {} bytes, {} = {} avg size, {} dps, {} MB/s",
+            plainsinklogger.info("{} = {} ms, submitted = {}, succeeded = {}, failed = {}, {} = {} bytes, {} = {} avg size, {} dps, {} MB/s, " +
+                            "rejected = {}, retried = {}, dead lettered = {}, bulk actions = {}, bulk volume = {}, concurrency = {}, latency = {} ms",
                     FormatUtil.formatDurationWords(elapsed, true, true),
                     elapsed,
                     submitted,
@@ -72,7 +87,14 @@ public class MetricsLogger {
                     FormatUtil.convertFileSize(avg),
                     formatter.format(avg),
                     formatter.format(dps),
-                    formatter.format(mbps));
+                    formatter.format(mbps),
+                    rejected,
+                    retried,
+                    deadlettered,
+                    bulkactions,
+                    FormatUtil.convertFileSize(bulkvolume),
+                    concurrency,
+                    latency);
         }
     }
 
@@ -83,6 +105,9 @@ public class MetricsLogger {
         double dps = totalrows * 1000.0 / elapsed;
         double avg = bytes / (totalrows + 1); // avoid div by zero
         double mbps = (bytes * 1024.0 / elapsed) / 1048576.0;
+        long rowqueue = metric.getRowQueueDepth().count();
+        long documentqueue = metric.getDocumentQueueDepth().count();
+        int fetchsize = metric.getFetchSize();
         if (settings.getAsBoolean("metrics.logger.json", false)) {
             XContentBuilder builder = jsonBuilder();
             builder.startObject()
@@ -92,11 +117,14 @@ public class MetricsLogger {
                     .field("avg", avg)
                     .field("dps", dps)
                     .field("mbps", mbps)
+                    .field("rowqueue", rowqueue)
+                    .field("documentqueue", documentqueue)
+                    .field("fetchsize", fetchsize)
                     .endObject();
             jsonsourcelogger.info(builder.string());
         }
         if (settings.getAsBoolean("metrics.logger.plain", true)) {
-            plainsourcelogger.info("totalrows = {}, {} = {} ms, {} = {} bytes, {} = {} avg size, {} dps, {} MB/s",
+            plainsourcelogger.info("totalrows = {}, {} = {} ms, {} = {} bytes, {} = {} avg size, {} dps, {} MB/s, row queue = {}, document queue = {}, fetch size = {}",
                     totalrows,
                     FormatUtil.formatDurationWords(elapsed, true, true),
                     elapsed,
@@ -105,7 +133,10 @@ public class MetricsLogger {
                     FormatUtil.convertFileSize(avg),
                     formatter.format(avg),
                     formatter.format(dps),
-                    formatter.format(mbps));
+                    formatter.format(mbps),
+                    rowqueue,
+                    documentqueue,
+                    fetchsize);
         }
     }
 
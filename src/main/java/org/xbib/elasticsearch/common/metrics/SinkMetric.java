@@ -15,10 +15,100 @@
  */
 package org.xbib.elasticsearch.common.metrics;
 
+import org.elasticsearch.common.metrics.CounterMetric;
+
 public class SinkMetric extends ElasticsearchIngestMetric {
 
+    /**
+     * The number of actions of a bulk request, as decided by the bulk writer
+     */
+    private volatile int bulkActions;
+
+    /**
+     * The volume of a bulk request in bytes, as decided by the bulk writer
+     */
+    private volatile long bulkVolume;
+
+    /**
+     * The number of concurrent bulk requests, as decided by the bulk writer
+     */
+    private volatile int bulkConcurrency;
+
+    /**
+     * The time taken by the last bulk response in nanoseconds
+     */
+    private volatile long bulkLatency;
+
+    /**
+     * The bytes of the bulk requests in flight
+     */
+    private final CounterMetric inFlightBytes = new CounterMetric();
+
+    /**
+     * The number of actions rejected by the cluster
+     */
+    private final CounterMetric rejected = new CounterMetric();
+
+    /**
+     * The number of failed actions that were submitted again
+     */
+    private final CounterMetric retried = new CounterMetric();
+
+    /**
+     * The number of failed actions written to the dead letter file
+     */
+    private final CounterMetric deadLettered = new CounterMetric();
+
     public SinkMetric start() {
         super.start();
         return this;
     }
+
+    public void setBulkActions(int bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    public int getBulkActions() {
+        return bulkActions;
+    }
+
+    public void setBulkVolume(long bulkVolume) {
+        this.bulkVolume = bulkVolume;
+    }
+
+    public long getBulkVolume() {
+        return bulkVolume;
+    }
+
+    public void setBulkConcurrency(int bulkConcurrency) {
+        this.bulkConcurrency = bulkConcurrency;
+    }
+
+    public int getBulkConcurrency() {
+        return bulkConcurrency;
+    }
+
+    public void setBulkLatency(long bulkLatency) {
+        this.bulkLatency = bulkLatency;
+    }
+
+    public long getBulkLatency() {
+        return bulkLatency;
+    }
+
+    public CounterMetric getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public CounterMetric getRejected() {
+        return rejected;
+    }
+
+    public CounterMetric getRetried() {
+        return retried;
+    }
+
+    public CounterMetric getDeadLettered() {
+        return deadLettered;
+    }
 }
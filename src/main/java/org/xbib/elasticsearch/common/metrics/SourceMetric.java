@@ -36,6 +36,21 @@ public class SourceMetric {
 
     private CounterMetric currentRows = new CounterMetric();
 
+    /**
+     * The number of rows waiting for the assembler stage of a pipeline
+     */
+    private final CounterMetric rowQueueDepth = new CounterMetric();
+
+    /**
+     * The number of documents waiting for the sink stage of a pipeline
+     */
+    private final CounterMetric documentQueueDepth = new CounterMetric();
+
+    /**
+     * The fetch size of the last result set, or the current fetch size if it is adaptive
+     */
+    private volatile int fetchSize;
+
     public CounterMetric getTotalRows() {
         return totalRows;
     }
@@ -52,6 +67,22 @@ public class SourceMetric {
         return currentRows;
     }
 
+    public CounterMetric getRowQueueDepth() {
+        return rowQueueDepth;
+    }
+
+    public CounterMetric getDocumentQueueDepth() {
+        return documentQueueDepth;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
     public CounterMetric getSucceeded() {
         return succeeded;
     }
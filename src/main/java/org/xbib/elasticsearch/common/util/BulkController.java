@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+/**
+ * Adapts the size of bulk requests and the number of concurrent bulk requests to the cluster, by
+ * additive increase and multiplicative decrease.
+ *
+ * Each bulk response is a signal. If items were rejected because the bulk thread pool of the cluster
+ * was full, the bulk size and the concurrency are halved. If the response took longer than the target
+ * latency, the bulk size is halved. Otherwise, the bulk size grows by a step, and the concurrency grows
+ * by one request after as many good responses as there are concurrent requests. The bulk size is a
+ * fraction of the maximum number of actions and the maximum volume, and never drops below the minimum
+ * number of actions.
+ */
+public class BulkController {
+
+    private final static double STEP = 1.0d / 16;
+
+    private final int maxActions;
+
+    private final long maxVolume;
+
+    private final int minConcurrency;
+
+    private final int maxConcurrency;
+
+    private final long targetLatency;
+
+    private final double minScale;
+
+    private double scale;
+
+    private int concurrency;
+
+    private int good;
+
+    private long lastLatency;
+
+    /**
+     * Create a bulk controller. It starts in the middle of the bounds.
+     *
+     * @param minActions     the minimum number of actions of a bulk request
+     * @param maxActions     the maximum number of actions of a bulk request
+     * @param maxVolume      the maximum volume of a bulk request in bytes
+     * @param minConcurrency the minimum number of concurrent bulk requests
+     * @param maxConcurrency the maximum number of concurrent bulk requests
+     * @param targetLatency  the time a bulk response should take at most, in nanoseconds
+     */
+    public BulkController(int minActions, int maxActions, long maxVolume,
+                          int minConcurrency, int maxConcurrency, long targetLatency) {
+        this.maxActions = Math.max(1, maxActions);
+        this.maxVolume = maxVolume;
+        this.minConcurrency = Math.max(1, minConcurrency);
+        this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+        this.targetLatency = targetLatency;
+        this.minScale = Math.min(1.0d, Math.max(1, minActions) / (double) this.maxActions);
+        this.scale = Math.max(minScale, 0.5d);
+        this.concurrency = Math.max(this.minConcurrency, this.maxConcurrency / 2);
+    }
+
+    /**
+     * The number of actions of a bulk request
+     *
+     * @return the number of actions
+     */
+    public synchronized int getActions() {
+        return Math.max(1, (int) (maxActions * scale));
+    }
+
+    /**
+     * The volume of a bulk request
+     *
+     * @return the volume in bytes
+     */
+    public synchronized long getVolume() {
+        return Math.max(1L, (long) (maxVolume * scale));
+    }
+
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * The time taken by the last bulk response
+     *
+     * @return the latency in nanoseconds
+     */
+    public synchronized long getLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * Record a bulk response
+     *
+     * @param nanos    the time from submitting the bulk request to its response
+     * @param rejected the number of rejected items, or all items if the request was rejected
+     * @return true if the bulk size or the concurrency has changed
+     */
+    public synchronized boolean response(long nanos, int rejected) {
+        lastLatency = nanos;
+        double oldScale = scale;
+        int oldConcurrency = concurrency;
+        if (rejected > 0) {
+            scale = Math.max(minScale, scale / 2);
+            concurrency = Math.max(minConcurrency, concurrency / 2);
+            good = 0;
+        } else if (nanos > targetLatency) {
+            scale = Math.max(minScale, scale / 2);
+            good = 0;
+        } else {
+            scale = Math.min(1.0d, scale + STEP);
+            if (++good >= concurrency) {
+                concurrency = Math.min(maxConcurrency, concurrency + 1);
+                good = 0;
+            }
+        }
+        return scale != oldScale || concurrency != oldConcurrency;
+    }
+}
@@ -0,0 +1,894 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.xbib.elasticsearch.common.metrics.SinkMetric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.contentBuilder;
+
+/**
+ * Writes bulk actions straight into reusable byte buffers in bulk format, and executes a bulk request
+ * for each full buffer.
+ *
+ * The action and metadata line and the source of a document are encoded into the current buffer, without
+ * an index request per document. A buffer is submitted when it holds the maximum number of actions or
+ * the maximum volume, or when the flush interval has passed, and it returns to the pool when the bulk
+ * response has arrived. The number of concurrent bulk requests and the bytes in flight are limited, adding
+ * blocks while the limit is reached. With a {@link BulkController}, the bulk size and the number of
+ * concurrent requests adapt to the latency and the rejections of the bulk responses.
+ *
+ * Actions failing with a temporary error, and bulk requests failing as a whole, are submitted again after
+ * an exponential backoff with jitter. Only the failed actions are submitted again. Actions that have failed
+ * permanently, or too often, are written to a {@link DeadLetterLog} for replaying them later.
+ *
+ * Each action has a position, counting from 1. The writer tracks the highest position up to which all
+ * actions are acknowledged, that is, indexed by the cluster or written to the dead letter log, so a caller
+ * can commit a checkpoint only for documents that are safe.
+ */
+public class BulkWriter implements Closeable {
+
+    private final static Logger logger = LogManager.getLogger("importer.jdbc.bulk");
+
+    private final ElasticsearchClient client;
+
+    private final XContentType contentType;
+
+    private final byte separator;
+
+    private final int maxActions;
+
+    private final long maxVolume;
+
+    private final int maxConcurrentRequests;
+
+    private final Object lock = new Object();
+
+    private long maxInFlightBytes = Long.MAX_VALUE;
+
+    private int inFlight;
+
+    private long inFlightBytes;
+
+    private BulkController controller;
+
+    private final Queue<Buffer> pool = new ConcurrentLinkedQueue<Buffer>();
+
+    private final Set<Buffer> retries = new HashSet<>();
+
+    private int maxRetries;
+
+    private long retryBackoff = 100L;
+
+    private long maxRetryBackoff = 30000L;
+
+    private DeadLetterLog deadLetterLog;
+
+    private final ScheduledExecutorService scheduler;
+
+    private long position;
+
+    private long submitted;
+
+    private final Queue<Batch> batches = new ArrayDeque<>();
+
+    private final TreeMap<Long, List<PlainActionFuture<Boolean>>> waiters = new TreeMap<>();
+
+    private long acknowledged;
+
+    private long firstLost;
+
+    private SinkMetric metric;
+
+    private Buffer buffer;
+
+    private volatile Throwable throwable;
+
+    /**
+     * Create a bulk writer
+     *
+     * @param client                the client
+     * @param contentType           the content type of the bulk requests, JSON or SMILE
+     * @param maxActions            the maximum number of actions in a bulk request
+     * @param maxVolume             the maximum volume of a bulk request in bytes
+     * @param maxConcurrentRequests the maximum number of bulk requests in flight
+     * @param flushInterval         the interval for submitting a buffer that is not full, or null
+     */
+    public BulkWriter(ElasticsearchClient client, XContentType contentType,
+                      int maxActions, long maxVolume, int maxConcurrentRequests, TimeValue flushInterval) {
+        if (contentType != XContentType.JSON && contentType != XContentType.SMILE) {
+            throw new IllegalArgumentException("bulk format is not available for content type " + contentType);
+        }
+        this.client = client;
+        this.contentType = contentType;
+        this.separator = contentType.xContent().streamSeparator();
+        this.maxActions = maxActions;
+        this.maxVolume = maxVolume;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "bulk-flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (flushInterval != null && flushInterval.millis() > 0L) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        logger.error(e.getMessage(), e);
+                    }
+                }
+            }, flushInterval.millis(), flushInterval.millis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public BulkWriter setMetric(SinkMetric metric) {
+        this.metric = metric;
+        updateMetric();
+        return this;
+    }
+
+    /**
+     * Adapt the bulk size and the number of concurrent requests. The limits of this writer are ignored.
+     *
+     * @param controller the bulk controller, or null for fixed limits
+     * @return this writer
+     */
+    public BulkWriter setController(BulkController controller) {
+        this.controller = controller;
+        updateMetric();
+        return this;
+    }
+
+    /**
+     * Set the maximum number of bytes of the bulk requests in flight. A single request may exceed it.
+     *
+     * @param maxInFlightBytes the number of bytes
+     * @return this writer
+     */
+    public BulkWriter setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+        return this;
+    }
+
+    /**
+     * Submit actions again that have failed with a temporary error, or in a bulk request that has failed
+     * as a whole. The delay before a retry is drawn between the half and the full backoff, which doubles
+     * with each retry up to the maximum backoff.
+     *
+     * @param maxRetries      the number of retries of an action, or 0 for no retries
+     * @param backoff         the backoff of the first retry
+     * @param maxRetryBackoff the maximum backoff
+     * @return this writer
+     */
+    public BulkWriter setRetries(int maxRetries, TimeValue backoff, TimeValue maxRetryBackoff) {
+        this.maxRetries = maxRetries;
+        this.retryBackoff = Math.max(1L, backoff.millis());
+        this.maxRetryBackoff = Math.max(retryBackoff, maxRetryBackoff.millis());
+        return this;
+    }
+
+    /**
+     * Write actions that have failed permanently, or have exhausted the retries, to a dead letter log.
+     * Without a dead letter log, the actions are logged and dropped.
+     *
+     * @param deadLetterLog the dead letter log, or null
+     * @return this writer
+     */
+    public BulkWriter setDeadLetterLog(DeadLetterLog deadLetterLog) {
+        this.deadLetterLog = deadLetterLog;
+        return this;
+    }
+
+    public XContentType getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Add an index action
+     *
+     * @param index  the index
+     * @param type   the type
+     * @param id     the ID, or null if the ID is generated
+     * @param object the document
+     * @throws IOException if the document can not be encoded or the bulk request can not be submitted
+     */
+    public synchronized void index(String index, String type, String id, IndexableObject object) throws IOException {
+        Buffer b = buffer();
+        int mark = b.size();
+        try {
+            action(b, "index", index, type, id, object);
+            object.build(contentType, b);
+            b.write(separator);
+        } catch (IOException | RuntimeException e) {
+            b.truncate(mark);
+            throw e;
+        }
+        added(b, mark);
+    }
+
+    /**
+     * Add a delete action
+     *
+     * @param index  the index
+     * @param type   the type
+     * @param id     the ID
+     * @param object the object with the meta data of the action
+     * @throws IOException if the bulk request can not be submitted
+     */
+    public synchronized void delete(String index, String type, String id, IndexableObject object) throws IOException {
+        Buffer b = buffer();
+        int mark = b.size();
+        action(b, "delete", index, type, id, object);
+        added(b, mark);
+    }
+
+    /**
+     * Add an update action that merges the document into an existing document, or indexes it
+     * if it does not exist
+     *
+     * @param index  the index
+     * @param type   the type
+     * @param id     the ID
+     * @param object the partial document
+     * @throws IOException if the document can not be encoded or the bulk request can not be submitted
+     */
+    public synchronized void update(String index, String type, String id, IndexableObject object) throws IOException {
+        Buffer b = buffer();
+        int mark = b.size();
+        try {
+            action(b, "update", index, type, id, object);
+            XContentBuilder builder = contentBuilder(contentType, b);
+            builder.startObject()
+                    .rawField("doc", object.build(contentType))
+                    .field("doc_as_upsert", true)
+                    .endObject()
+                    .flush();
+            b.write(separator);
+        } catch (IOException | RuntimeException e) {
+            b.truncate(mark);
+            throw e;
+        }
+        added(b, mark);
+    }
+
+    /**
+     * The position of the last action added to this writer
+     *
+     * @return the position, or 0 if no action has been added
+     */
+    public synchronized long getPosition() {
+        return position;
+    }
+
+    /**
+     * The highest position up to which all actions are acknowledged
+     *
+     * @return the position
+     */
+    public long getAcknowledged() {
+        synchronized (lock) {
+            return acknowledged;
+        }
+    }
+
+    /**
+     * A future that completes when all actions up to a position are acknowledged, that is, indexed or
+     * written to the dead letter log. It yields false if an action up to the position is lost, because it
+     * has failed without a dead letter log. The current buffer is submitted if it holds the position.
+     *
+     * @param position the position
+     * @return the future
+     * @throws IOException if the current buffer can not be submitted
+     */
+    public synchronized PlainActionFuture<Boolean> acknowledged(long position) throws IOException {
+        PlainActionFuture<Boolean> future = PlainActionFuture.newFuture();
+        if (position > submitted) {
+            flush();
+        }
+        synchronized (lock) {
+            if (position <= acknowledged) {
+                future.onResponse(firstLost == 0L || position < firstLost);
+                return future;
+            }
+            List<PlainActionFuture<Boolean>> list = waiters.get(position);
+            if (list == null) {
+                list = new ArrayList<>();
+                waiters.put(position, list);
+            }
+            list.add(future);
+        }
+        return future;
+    }
+
+    /**
+     * Add actions that are already in bulk format, for example from a dead letter log. Each action line
+     * must be followed by a source line, except for delete actions.
+     *
+     * @param data   the actions in the content type of this writer
+     * @param offset the offset
+     * @param length the length
+     * @return the number of actions
+     * @throws IOException if the actions are malformed or the bulk request can not be submitted
+     */
+    public synchronized int add(byte[] data, int offset, int length) throws IOException {
+        int n = 0;
+        int end = offset + length;
+        int pos = offset;
+        while (pos < end) {
+            int eol = next(data, pos, end);
+            if (eol == pos) {
+                pos++;
+                continue;
+            }
+            String action = action(data, pos, eol - pos);
+            int stop = eol;
+            if (!"delete".equals(action)) {
+                if (eol >= end) {
+                    throw new IOException("bulk action " + action + " without source");
+                }
+                stop = next(data, eol + 1, end);
+            }
+            Buffer b = buffer();
+            int mark = b.size();
+            b.write(data, pos, stop - pos);
+            b.write(separator);
+            added(b, mark);
+            n++;
+            pos = stop + 1;
+        }
+        return n;
+    }
+
+    /**
+     * Submit the current buffer, if it holds actions
+     *
+     * @throws IOException if the bulk request can not be submitted
+     */
+    public synchronized void flush() throws IOException {
+        if (buffer != null && buffer.actions > 0) {
+            submit();
+        }
+    }
+
+    /**
+     * Wait until all submitted bulk requests have a response, and all retries are done
+     *
+     * @param timeout the maximum time to wait
+     * @return true if all responses have arrived, false if the time has elapsed
+     * @throws InterruptedException if the wait was interrupted
+     */
+    public boolean waitForResponses(TimeValue timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.nanos();
+        synchronized (lock) {
+            while (inFlight > 0 || !retries.isEmpty()) {
+                long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (millis <= 0L) {
+                    return false;
+                }
+                lock.wait(millis);
+            }
+        }
+        return true;
+    }
+
+    public boolean hasThrowable() {
+        return throwable != null;
+    }
+
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    /**
+     * Submit the current buffer and stop flushing. Outstanding responses are not awaited. Actions waiting
+     * for a retry are written to the dead letter log.
+     *
+     * @throws IOException if the bulk request can not be submitted
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        flush();
+        List<Buffer> pending;
+        synchronized (lock) {
+            pending = new ArrayList<>(retries);
+            retries.clear();
+            lock.notifyAll();
+        }
+        for (Buffer b : pending) {
+            failed(b, all(b), "bulk writer closed");
+        }
+    }
+
+    private Buffer buffer() {
+        if (buffer == null) {
+            buffer = pool.poll();
+            if (buffer == null) {
+                buffer = new Buffer((int) Math.min(getMaxVolume() + 1024L, 65536L));
+            }
+        }
+        return buffer;
+    }
+
+    private void action(Buffer b, String action, String index, String type, String id, IndexableObject object)
+            throws IOException {
+        XContentBuilder builder = contentBuilder(contentType, b);
+        builder.startObject().startObject(action);
+        if (index != null) {
+            builder.field("_index", index);
+        }
+        if (type != null) {
+            builder.field("_type", type);
+        }
+        if (id != null) {
+            builder.field("_id", id);
+        }
+        String version = object.meta(ControlKeys._version.name());
+        if (version != null) {
+            builder.field("_version", Long.parseLong(version)).field("_version_type", "external");
+        }
+        String routing = object.meta(ControlKeys._routing.name());
+        if (routing != null) {
+            builder.field("_routing", routing);
+        }
+        String parent = object.meta(ControlKeys._parent.name());
+        if (parent != null) {
+            builder.field("_parent", parent);
+        }
+        if ("index".equals(action)) {
+            String timestamp = object.meta(ControlKeys._timestamp.name());
+            if (timestamp != null) {
+                builder.field("_timestamp", timestamp);
+            }
+            String ttl = object.meta(ControlKeys._ttl.name());
+            if (ttl != null) {
+                builder.field("_ttl", Long.parseLong(ttl));
+            }
+        }
+        builder.endObject().endObject().flush();
+        b.write(separator);
+    }
+
+    private String action(byte[] data, int offset, int length) throws IOException {
+        try (XContentParser parser = contentType.xContent().createParser(data, offset, length)) {
+            if (parser.nextToken() == XContentParser.Token.START_OBJECT &&
+                    parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                return parser.currentName();
+            }
+        }
+        throw new IOException("malformed bulk action: " + new String(data, offset, length, "UTF-8"));
+    }
+
+    private int next(byte[] data, int offset, int end) {
+        int i = offset;
+        while (i < end && data[i] != separator) {
+            i++;
+        }
+        return i;
+    }
+
+    private void added(Buffer b, int mark) throws IOException {
+        b.added(mark);
+        position++;
+        if (b.actions >= getMaxActions() || b.size() >= getMaxVolume()) {
+            submit();
+        }
+    }
+
+    private void submit() throws IOException {
+        Buffer b = buffer;
+        buffer = null;
+        b.batch = new Batch(submitted + 1L, b.actions);
+        submitted += b.actions;
+        synchronized (lock) {
+            batches.add(b.batch);
+        }
+        execute(b);
+    }
+
+    private void execute(final Buffer b) throws IOException {
+        final int actions = b.actions;
+        final long bytes = b.size();
+        BulkRequest request = new BulkRequest();
+        try {
+            request.add(b.bytes(), null, null);
+        } catch (Exception e) {
+            if (b.attempt > 0) {
+                abandon(b, "invalid bulk request");
+            } else {
+                resolve(b.batch, actions, true);
+            }
+            release(b);
+            throw new IOException("invalid bulk request", e);
+        }
+        try {
+            synchronized (lock) {
+                while (inFlight > 0 && (inFlight >= getConcurrency() || inFlightBytes + bytes > maxInFlightBytes)) {
+                    lock.wait();
+                }
+                if (b.attempt > 0 && !retries.remove(b)) {
+                    // the writer was closed while waiting
+                    return;
+                }
+                inFlight++;
+                inFlightBytes += bytes;
+            }
+        } catch (InterruptedException e) {
+            if (b.attempt > 0) {
+                abandon(b, "interrupted");
+            } else {
+                resolve(b.batch, actions, true);
+            }
+            release(b);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a bulk request");
+        }
+        if (metric != null) {
+            if (b.attempt == 0) {
+                metric.getSubmitted().inc(actions);
+            }
+            metric.getCurrentIngest().inc();
+            metric.getCurrentIngestNumDocs().inc(actions);
+            metric.getTotalIngestSizeInBytes().inc(bytes);
+            metric.getInFlightBytes().inc(bytes);
+        }
+        final long start = System.nanoTime();
+        client.execute(BulkAction.INSTANCE, request, new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(BulkResponse response) {
+                List<Integer> retry = new ArrayList<>();
+                List<Integer> failed = new ArrayList<>();
+                int rejected = 0;
+                for (BulkItemResponse item : response) {
+                    if (item.isFailed()) {
+                        RestStatus status = item.getFailure().getStatus();
+                        if (status == RestStatus.TOO_MANY_REQUESTS) {
+                            rejected++;
+                        }
+                        boolean temporary = status == RestStatus.TOO_MANY_REQUESTS ||
+                                status == RestStatus.SERVICE_UNAVAILABLE;
+                        if (temporary && b.attempt < maxRetries) {
+                            retry.add(item.getItemId());
+                        } else {
+                            failed.add(item.getItemId());
+                            logger.error("bulk item {}/{}/{} failed: {}", item.getIndex(), item.getType(), item.getId(),
+                                    item.getFailureMessage());
+                        }
+                    }
+                }
+                done(b, actions, bytes, actions - retry.size() - failed.size(), retry, failed, null, rejected,
+                        System.nanoTime() - start);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                boolean rejected = ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException;
+                List<Integer> items = all(b);
+                if (b.attempt < maxRetries) {
+                    logger.warn("bulk request failed, retrying: " + e.getMessage());
+                    done(b, actions, bytes, 0, items, new ArrayList<Integer>(), null, rejected ? actions : 0,
+                            System.nanoTime() - start);
+                } else {
+                    throwable = e;
+                    logger.error("bulk request failed: " + e.getMessage(), e);
+                    done(b, actions, bytes, 0, new ArrayList<Integer>(), items, e.getMessage(), rejected ? actions : 0,
+                            System.nanoTime() - start);
+                }
+            }
+        });
+    }
+
+    private void done(Buffer b, int actions, long bytes, int succeeded, List<Integer> retry, List<Integer> failed,
+                      String reason, int rejected, long nanos) {
+        boolean changed = controller != null && controller.response(nanos, rejected);
+        if (changed) {
+            logger.debug("bulk size {} actions, {} bytes, {} concurrent requests, latency {} ms, {} rejected",
+                    controller.getActions(), controller.getVolume(), controller.getConcurrency(),
+                    TimeUnit.NANOSECONDS.toMillis(nanos), rejected);
+        }
+        if (!retry.isEmpty()) {
+            retry(copy(b, retry));
+        }
+        if (!failed.isEmpty()) {
+            failed(b, failed, reason);
+        }
+        resolve(b.batch, succeeded, false);
+        if (metric != null) {
+            metric.getCurrentIngest().dec();
+            metric.getCurrentIngestNumDocs().dec(actions);
+            metric.getSucceeded().inc(succeeded);
+            metric.getRejected().inc(rejected);
+            metric.getInFlightBytes().dec(bytes);
+            metric.setBulkLatency(nanos);
+            if (changed) {
+                updateMetric();
+            }
+        }
+        release(b);
+        synchronized (lock) {
+            inFlight--;
+            inFlightBytes -= bytes;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Schedule a retry of the actions in a buffer. The buffer counts as pending until it is submitted,
+     * so waiting for responses includes the retries.
+     */
+    private void retry(final Buffer r) {
+        long backoff = Math.min(maxRetryBackoff, retryBackoff << Math.min(r.attempt - 1, 30));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        if (metric != null) {
+            metric.getRetried().inc(r.actions);
+        }
+        logger.debug("retry {} of {} actions in {} ms", r.attempt, r.actions, delay);
+        synchronized (lock) {
+            retries.add(r);
+        }
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        execute(r);
+                    } catch (IOException e) {
+                        logger.error(e.getMessage(), e);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            abandon(r, "bulk writer closed");
+        }
+    }
+
+    /**
+     * Give up a pending retry, unless the writer has already given it up
+     */
+    private void abandon(Buffer r, String reason) {
+        synchronized (lock) {
+            if (!retries.remove(r)) {
+                return;
+            }
+            lock.notifyAll();
+        }
+        failed(r, all(r), reason);
+    }
+
+    /**
+     * Copy actions of a buffer into a new buffer for the next attempt
+     */
+    private Buffer copy(Buffer b, List<Integer> items) {
+        Buffer r = new Buffer(b.size());
+        r.attempt = b.attempt + 1;
+        r.batch = b.batch;
+        for (int i : items) {
+            b.copy(i, r);
+        }
+        return r;
+    }
+
+    /**
+     * Count actions that have finally failed, and write them to the dead letter log
+     */
+    private void failed(Buffer b, List<Integer> items, String reason) {
+        if (metric != null) {
+            metric.getFailed().inc(items.size());
+        }
+        if (reason != null) {
+            logger.error("{} bulk actions failed: {}", items.size(), reason);
+        }
+        boolean lost = true;
+        if (deadLetterLog != null) {
+            try {
+                for (int i : items) {
+                    b.write(i, deadLetterLog);
+                }
+                lost = false;
+                if (metric != null) {
+                    metric.getDeadLettered().inc(items.size());
+                }
+                logger.warn("{} failed bulk actions written to {}", items.size(), deadLetterLog.getFile());
+            } catch (IOException e) {
+                logger.error("can not write to dead letter file " + deadLetterLog.getFile() + ": " + e.getMessage(), e);
+            }
+        }
+        resolve(b.batch, items.size(), lost);
+    }
+
+    /**
+     * Count actions of a batch as resolved, advance the acknowledged position over the leading batches
+     * without pending actions, and complete the futures up to the acknowledged position
+     */
+    private void resolve(Batch batch, int n, boolean lost) {
+        Map<Long, List<PlainActionFuture<Boolean>>> completed;
+        long lostPosition;
+        synchronized (lock) {
+            batch.pending -= n;
+            batch.lost |= lost;
+            while (!batches.isEmpty() && batches.peek().pending <= 0) {
+                Batch head = batches.poll();
+                if (head.lost && firstLost == 0L) {
+                    firstLost = head.first;
+                }
+                acknowledged = head.first + head.actions - 1L;
+            }
+            SortedMap<Long, List<PlainActionFuture<Boolean>>> head = waiters.headMap(acknowledged + 1L);
+            if (head.isEmpty()) {
+                return;
+            }
+            completed = new TreeMap<>(head);
+            head.clear();
+            lostPosition = firstLost;
+        }
+        for (Map.Entry<Long, List<PlainActionFuture<Boolean>>> entry : completed.entrySet()) {
+            for (PlainActionFuture<Boolean> future : entry.getValue()) {
+                future.onResponse(lostPosition == 0L || entry.getKey() < lostPosition);
+            }
+        }
+    }
+
+    private List<Integer> all(Buffer b) {
+        List<Integer> items = new ArrayList<>(b.actions);
+        for (int i = 0; i < b.actions; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    private int getMaxActions() {
+        return controller != null ? controller.getActions() : maxActions;
+    }
+
+    private long getMaxVolume() {
+        return controller != null ? controller.getVolume() : maxVolume;
+    }
+
+    private int getConcurrency() {
+        return controller != null ? controller.getConcurrency() : maxConcurrentRequests;
+    }
+
+    private void updateMetric() {
+        if (metric != null) {
+            metric.setBulkActions(getMaxActions());
+            metric.setBulkVolume(getMaxVolume());
+            metric.setBulkConcurrency(getConcurrency());
+        }
+    }
+
+    private void release(Buffer b) {
+        if (b.attempt > 0) {
+            // retry buffers are sized for their actions only
+            return;
+        }
+        b.reset();
+        b.actions = 0;
+        b.batch = null;
+        pool.offer(b);
+    }
+
+    /**
+     * A byte buffer that keeps its capacity when it is reset, and passes its content without copying
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        private int actions;
+
+        private int[] offsets = new int[64];
+
+        private int attempt;
+
+        private Batch batch;
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        void added(int offset) {
+            if (actions == offsets.length) {
+                offsets = Arrays.copyOf(offsets, actions * 2);
+            }
+            offsets[actions++] = offset;
+        }
+
+        void copy(int i, Buffer to) {
+            to.added(to.size());
+            to.write(buf, offsets[i], end(i) - offsets[i]);
+        }
+
+        void write(int i, DeadLetterLog log) throws IOException {
+            log.write(buf, offsets[i], end(i) - offsets[i]);
+        }
+
+        private int end(int i) {
+            return i + 1 < actions ? offsets[i + 1] : count;
+        }
+
+        BytesReference bytes() {
+            return new BytesArray(buf, 0, count);
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+    }
+
+    /**
+     * The actions of a submitted buffer, at consecutive positions, with the number of actions that are
+     * not yet acknowledged or failed
+     */
+    private static class Batch {
+
+        private final long first;
+
+        private final int actions;
+
+        private int pending;
+
+        private boolean lost;
+
+        Batch(long first, int actions) {
+            this.first = first;
+            this.actions = actions;
+            this.pending = actions;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of JDBC connections to a single URL. The pool lives across runs of a context,
+ * so scheduled runs do not have to reconnect each time.
+ *
+ * A connection is validated when it is taken from the pool, but a successful validation is
+ * remembered for the validation interval, so a connection in frequent use is not validated
+ * by a round trip to the database each time. The database metadata of the URL is also kept
+ * in the pool, it must be probed only once. Each pooled connection may have a cache of
+ * prepared statements that lives as long as the connection.
+ */
+public class ConnectionPool {
+
+    private final static Logger logger = LogManager.getLogger("importer.jdbc.pool");
+
+    private final String url;
+
+    private final Properties properties;
+
+    private final int size;
+
+    private final Semaphore permits;
+
+    private final LinkedList<Connection> idle = new LinkedList<Connection>();
+
+    private final Map<Connection, Long> validated = new IdentityHashMap<Connection, Long>();
+
+    private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<Connection, StatementCache>();
+
+    private long validationInterval;
+
+    private volatile Map<String, Object> databaseMetadata;
+
+    private volatile boolean closed;
+
+    /**
+     * Create a connection pool
+     *
+     * @param url        the JDBC URL
+     * @param properties the connection properties, including user and password, or null
+     * @param size       the maximum number of connections
+     */
+    public ConnectionPool(String url, Properties properties, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("pool size must be greater than 0");
+        }
+        this.url = url;
+        this.properties = properties;
+        this.size = size;
+        this.permits = new Semaphore(size, true);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public ConnectionPool setValidationInterval(long validationInterval) {
+        this.validationInterval = validationInterval;
+        return this;
+    }
+
+    public long getValidationInterval() {
+        return validationInterval;
+    }
+
+    public ConnectionPool setDatabaseMetadata(Map<String, Object> databaseMetadata) {
+        this.databaseMetadata = databaseMetadata;
+        return this;
+    }
+
+    /**
+     * The cached database metadata of the URL
+     *
+     * @return the database metadata, or null if not probed yet
+     */
+    public Map<String, Object> getDatabaseMetadata() {
+        return databaseMetadata;
+    }
+
+    /**
+     * Get the statement cache of a pooled connection, the cache is created on first use
+     *
+     * @param connection the connection
+     * @param size       the maximum number of cached statements
+     * @return the statement cache
+     */
+    public StatementCache getStatementCache(Connection connection, int size) {
+        synchronized (statementCaches) {
+            StatementCache statementCache = statementCaches.get(connection);
+            if (statementCache == null) {
+                statementCache = new StatementCache(connection, size);
+                statementCaches.put(connection, statementCache);
+            }
+            return statementCache;
+        }
+    }
+
+    /**
+     * Take a connection from the pool. An idle connection is reused if it is valid,
+     * otherwise a new connection is opened.
+     *
+     * @param timeout the maximum time in milliseconds to wait for a free connection
+     * @return the connection
+     * @throws SQLException if no connection is free within the timeout or a connection can not be opened
+     */
+    public Connection acquire(long timeout) throws SQLException {
+        if (closed) {
+            throw new SQLException("connection pool is closed: " + url);
+        }
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("no free connection in pool after " + timeout + " ms: " + url);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("interrupted while waiting for connection: " + url);
+        }
+        try {
+            Connection connection;
+            while ((connection = poll()) != null) {
+                try {
+                    if (isValid(connection)) {
+                        return connection;
+                    }
+                    logger.debug("discarding invalid connection {}", connection);
+                } catch (SQLException e) {
+                    logger.debug("discarding connection {} after failed validation: {}", connection, e.getMessage());
+                }
+                discard(connection);
+            }
+            connection = properties != null ?
+                    DriverManager.getConnection(url, properties) : DriverManager.getConnection(url);
+            synchronized (validated) {
+                validated.put(connection, System.currentTimeMillis());
+            }
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Return a connection to the pool. A closed connection is discarded.
+     *
+     * @param connection the connection
+     */
+    public void release(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            boolean reusable = !closed && !connection.isClosed();
+            if (reusable) {
+                synchronized (idle) {
+                    idle.addFirst(connection);
+                }
+            } else {
+                discard(connection);
+            }
+        } catch (SQLException e) {
+            discard(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close a connection that is known to be broken and give up its place in the pool.
+     *
+     * @param connection the connection
+     */
+    public void invalidate(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        discard(connection);
+        permits.release();
+    }
+
+    /**
+     * Check if a connection is valid. A successful validation is cached for the validation interval.
+     *
+     * @param connection the connection
+     * @return true if the connection is valid
+     * @throws SQLException if the check fails
+     */
+    public boolean isValid(Connection connection) throws SQLException {
+        if (connection.isClosed()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (validated) {
+            Long last = validated.get(connection);
+            if (last != null && now - last < validationInterval) {
+                return true;
+            }
+        }
+        boolean valid = validate(connection);
+        if (valid) {
+            synchronized (validated) {
+                validated.put(connection, now);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Close all idle connections. Connections that are in use are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        while (true) {
+            Connection connection = poll();
+            if (connection == null) {
+                break;
+            }
+            discard(connection);
+        }
+        databaseMetadata = null;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Validate a connection by a round trip to the database. Drivers that do not implement
+     * validation are assumed to have a valid connection.
+     *
+     * @param connection the connection
+     * @return true if the connection is valid
+     * @throws SQLException if the check fails
+     */
+    public static boolean validate(Connection connection) throws SQLException {
+        try {
+            return connection.isValid(5);
+        } catch (AbstractMethodError e) {
+            // old/buggy JDBC driver do not implement isValid()
+            logger.debug(e.getMessage());
+        } catch (SQLFeatureNotSupportedException e) {
+            // Example: postgresql does implement but not support isValid()
+            logger.debug(e.getMessage());
+        }
+        return true;
+    }
+
+    private Connection poll() {
+        synchronized (idle) {
+            return idle.pollFirst();
+        }
+    }
+
+    private void discard(Connection connection) {
+        synchronized (validated) {
+            validated.remove(connection);
+        }
+        StatementCache statementCache;
+        synchronized (statementCaches) {
+            statementCache = statementCaches.remove(connection);
+        }
+        if (statementCache != null) {
+            statementCache.close();
+        }
+        try {
+            if (!connection.isClosed()) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            logger.warn("while closing pooled connection: " + e.getMessage());
+        }
+    }
+}
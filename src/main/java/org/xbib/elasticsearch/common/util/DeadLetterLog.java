@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A local file of bulk actions that have failed, in bulk format, for replaying them later.
+ *
+ * When the file exceeds the maximum size, it is renamed to file.1, file.1 is renamed to file.2, and so on.
+ * The oldest file is deleted when the maximum number of files is reached.
+ */
+public class DeadLetterLog implements Closeable {
+
+    private final static Logger logger = LogManager.getLogger("importer.jdbc.deadletter");
+
+    private final File file;
+
+    private final long maxSize;
+
+    private final int maxFiles;
+
+    private OutputStream out;
+
+    private long size;
+
+    /**
+     * Create a dead letter log
+     *
+     * @param file     the file
+     * @param maxSize  the size of the file in bytes that causes a rotation
+     * @param maxFiles the number of rotated files to keep
+     */
+    public DeadLetterLog(File file, long maxSize, int maxFiles) {
+        this.file = file;
+        this.maxSize = maxSize;
+        this.maxFiles = maxFiles;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Append bulk actions
+     *
+     * @param b   the bytes of the actions in bulk format
+     * @param off the offset
+     * @param len the length
+     * @throws IOException if the actions can not be written
+     */
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (out == null) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("can not create directory " + parent);
+            }
+            out = new BufferedOutputStream(new FileOutputStream(file, true));
+            size = file.length();
+        }
+        out.write(b, off, len);
+        out.flush();
+        size += len;
+        if (size >= maxSize) {
+            rotate();
+        }
+    }
+
+    /**
+     * The existing files of this log, the oldest first
+     *
+     * @return the files
+     */
+    public List<File> getFiles() {
+        List<File> files = new ArrayList<>();
+        for (File f : names()) {
+            if (f.exists()) {
+                files.add(f);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Add the actions of all files of this log to a bulk writer, and delete each file after its actions are
+     * acknowledged. The files are moved away first, so actions failing again are written to a new file.
+     * Files left over by an interrupted or failed replay are replayed first.
+     *
+     * @param writer  the bulk writer, with the content type of this log
+     * @param timeout the maximum time to wait for the acknowledgement of the actions of a file
+     * @return the number of actions
+     * @throws IOException if a file can not be read, contains invalid actions, or its actions are
+     *                     not acknowledged within the timeout
+     */
+    public int replay(BulkWriter writer, TimeValue timeout) throws IOException {
+        int n = 0;
+        for (File f : names()) {
+            File replay = replayFile(f);
+            if (replay.exists()) {
+                n += replay(writer, replay, timeout);
+            }
+        }
+        List<File> files = new ArrayList<>();
+        synchronized (this) {
+            close();
+            for (File f : getFiles()) {
+                File replay = replayFile(f);
+                Files.move(f.toPath(), replay.toPath());
+                files.add(replay);
+            }
+        }
+        for (File f : files) {
+            n += replay(writer, f, timeout);
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private int replay(BulkWriter writer, File f, TimeValue timeout) throws IOException {
+        byte[] data = Files.readAllBytes(f.toPath());
+        int n = 0;
+        if (data.length > 0) {
+            XContentType contentType = XContentFactory.xContentType(data);
+            if (contentType != writer.getContentType()) {
+                throw new IOException("content type of " + f + " is " + contentType +
+                        ", but bulk writer expects " + writer.getContentType());
+            }
+            n = writer.add(data, 0, data.length);
+            boolean acknowledged;
+            try {
+                acknowledged = writer.acknowledged(writer.getPosition()).get(timeout.millis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while replaying " + f, e);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new IOException("actions of " + f + " are not acknowledged within " + timeout
+                        + ", the file is kept for the next replay", e);
+            }
+            if (!acknowledged) {
+                throw new IOException("actions of " + f + " are lost, the file is kept for the next replay");
+            }
+        }
+        Files.delete(f.toPath());
+        logger.info("replayed {} actions from {}", n, f);
+        return n;
+    }
+
+    private void rotate() throws IOException {
+        close();
+        File oldest = rotated(maxFiles);
+        if (oldest.exists()) {
+            Files.delete(oldest.toPath());
+            logger.warn("dead letter file {} deleted", oldest);
+        }
+        for (int i = maxFiles - 1; i > 0; i--) {
+            File f = rotated(i);
+            if (f.exists()) {
+                Files.move(f.toPath(), rotated(i + 1).toPath());
+            }
+        }
+        if (maxFiles > 0) {
+            Files.move(file.toPath(), rotated(1).toPath());
+        } else {
+            Files.delete(file.toPath());
+        }
+    }
+
+    private List<File> names() {
+        List<File> names = new ArrayList<>();
+        for (int i = maxFiles; i > 0; i--) {
+            names.add(rotated(i));
+        }
+        names.add(file);
+        return names;
+    }
+
+    private File rotated(int i) {
+        return new File(file.getPath() + "." + i);
+    }
+
+    private File replayFile(File f) {
+        return new File(f.getPath() + ".replay");
+    }
+}
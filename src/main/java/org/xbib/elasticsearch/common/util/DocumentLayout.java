@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of the documents of a result set, compiled from the key plans of the columns.
+ *
+ * Each distinct field path of the columns gets a slot. Columns with the same path share a slot.
+ * The fields are arranged in a tree of nodes, in the order of their first column, which is the
+ * order the map based merge would produce. Columns that merge into indexed arrays, or paths that
+ * are used both as a field and as an object, can not be laid out, then documents are built as maps.
+ */
+public class DocumentLayout {
+
+    private final int[] slots;
+
+    private final boolean[] sequences;
+
+    private final Node root;
+
+    private final int size;
+
+    private DocumentLayout(int[] slots, boolean[] sequences, Node root, int size) {
+        this.slots = slots;
+        this.sequences = sequences;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Compile the layout of the columns
+     *
+     * @param plans the key plans of the columns
+     * @return the layout, or null if the columns can not be laid out
+     */
+    public static DocumentLayout compile(List<KeyPlan> plans) {
+        int[] slots = new int[plans.size()];
+        boolean[] sequences = new boolean[plans.size()];
+        Map<String, Object> root = new LinkedHashMap<String, Object>();
+        int size = 0;
+        for (int i = 0; i < plans.size(); i++) {
+            KeyPlan plan = plans.get(i);
+            if (plan.getKind() == KeyPlan.Kind.IGNORED) {
+                slots[i] = -1;
+                continue;
+            }
+            Map<String, Object> node = root;
+            while (plan.getKind() == KeyPlan.Kind.PATH) {
+                Object o = node.get(plan.getHead());
+                if (o == null) {
+                    o = new LinkedHashMap<String, Object>();
+                    node.put(plan.getHead(), o);
+                } else if (!(o instanceof Map)) {
+                    return null;
+                }
+                node = cast(o);
+                plan = plan.getNext();
+            }
+            if (plan.getKind() != KeyPlan.Kind.FIELD) {
+                return null;
+            }
+            Object o = node.get(plan.getHead());
+            if (o == null) {
+                o = size++;
+                node.put(plan.getHead(), o);
+            } else if (!(o instanceof Integer)) {
+                return null;
+            }
+            slots[i] = (Integer) o;
+            sequences[i] = plan.isSequence();
+        }
+        return new DocumentLayout(slots, sequences, new Node(root), size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cast(Object o) {
+        return (Map<String, Object>) o;
+    }
+
+    /**
+     * The slot of a column
+     *
+     * @param column the column index
+     * @return the slot, or -1 if the values of the column are not part of the document
+     */
+    public int slot(int column) {
+        return column < slots.length ? slots[column] : -1;
+    }
+
+    /**
+     * Check if the values of a column are split by commas into multiple values
+     *
+     * @param column the column index
+     * @return true if the column is a sequence
+     */
+    public boolean isSequence(int column) {
+        return column < sequences.length && sequences[column];
+    }
+
+    /**
+     * The number of slots
+     *
+     * @return the number of slots
+     */
+    public int size() {
+        return size;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * An object in the layout. The fields of the object are either slots or nested objects.
+     */
+    public static class Node {
+
+        private final String[] names;
+
+        private final int[] slots;
+
+        private final Node[] nodes;
+
+        private Node(Map<String, Object> map) {
+            int n = map.size();
+            this.names = new String[n];
+            this.slots = new int[n];
+            this.nodes = new Node[n];
+            int i = 0;
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                names[i] = entry.getKey();
+                if (entry.getValue() instanceof Integer) {
+                    slots[i] = (Integer) entry.getValue();
+                } else {
+                    slots[i] = -1;
+                    nodes[i] = new Node(cast(entry.getValue()));
+                }
+                i++;
+            }
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String name(int i) {
+            return names[i];
+        }
+
+        /**
+         * The slot of a field
+         *
+         * @param i the field index
+         * @return the slot, or -1 if the field is a nested object
+         */
+        public int slot(int i) {
+            return slots[i];
+        }
+
+        /**
+         * The nested object of a field
+         *
+         * @param i the field index
+         * @return the nested object, or null if the field is a slot
+         */
+        public Node node(int i) {
+            return nodes[i];
+        }
+    }
+}
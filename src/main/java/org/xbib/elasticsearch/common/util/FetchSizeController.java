@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+/**
+ * Adapts the JDBC fetch size to the width of the rows.
+ *
+ * The rows of one fetch are a window. At the end of each window, the average decoded size of a row
+ * is updated, and the fetch size is set so that a fetch transfers about the target number of bytes.
+ * The fetch size is bounded by the free heap, so that the rows of a fetch never take more than a
+ * quarter of it. If the slowest row of the window, which is the row that waited for the round trip,
+ * took longer than the maximum latency, the fetch size is not increased.
+ */
+public class FetchSizeController {
+
+    private final static int MIN_FETCH_SIZE = 1;
+
+    private final static int MAX_FETCH_SIZE = 65536;
+
+    private final long targetBytes;
+
+    private final long maxLatency;
+
+    private int fetchSize;
+
+    private double rowSize;
+
+    private int rows;
+
+    private long bytes;
+
+    private long latency;
+
+    private long lastLatency;
+
+    /**
+     * Create a fetch size controller
+     *
+     * @param fetchSize   the fetch size for the first window
+     * @param targetBytes the number of bytes a fetch should transfer
+     * @param maxLatency  the maximum time of a fetch round trip in nanoseconds
+     */
+    public FetchSizeController(int fetchSize, long targetBytes, long maxLatency) {
+        this.fetchSize = Math.max(MIN_FETCH_SIZE, Math.min(fetchSize, MAX_FETCH_SIZE));
+        this.targetBytes = targetBytes;
+        this.maxLatency = maxLatency;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * The average decoded size of a row
+     *
+     * @return the row size in bytes, or 0 if no window is complete yet
+     */
+    public double getRowSize() {
+        return rowSize;
+    }
+
+    /**
+     * The round trip time of the last complete window
+     *
+     * @return the latency in nanoseconds
+     */
+    public long getLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * Record a row
+     *
+     * @param size  the decoded size of the row in bytes
+     * @param nanos the time taken to move the cursor to the row
+     * @return true if the fetch size has changed
+     */
+    public boolean row(long size, long nanos) {
+        rows++;
+        bytes += size;
+        if (nanos > latency) {
+            latency = nanos;
+        }
+        if (rows < fetchSize) {
+            return false;
+        }
+        double avg = Math.max(1.0d, (double) bytes / rows);
+        rowSize = rowSize == 0.0d ? avg : (rowSize + avg) / 2;
+        lastLatency = latency;
+        rows = 0;
+        bytes = 0L;
+        latency = 0L;
+        long n = (long) (targetBytes / rowSize);
+        n = Math.min(n, (long) (headroom() / 4 / rowSize));
+        if (n > fetchSize && lastLatency > maxLatency) {
+            n = fetchSize;
+        }
+        int newFetchSize = (int) Math.max(MIN_FETCH_SIZE, Math.min(n, MAX_FETCH_SIZE));
+        if (newFetchSize == fetchSize) {
+            return false;
+        }
+        fetchSize = newFetchSize;
+        return true;
+    }
+
+    /**
+     * Reset the window, at the start of a result set. The row size is kept.
+     */
+    public void reset() {
+        rows = 0;
+        bytes = 0L;
+        latency = 0L;
+    }
+
+    protected long headroom() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+}
@@ -0,0 +1,590 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * A geometry value that is written as a GeoJSON object into a document.
+ *
+ * Geometries are decoded from WKT strings, from WKB, from the extended WKB of PostGIS with an SRID,
+ * and from the internal format of MySQL, which is WKB after a four byte SRID. The coordinates are
+ * kept in a flat array, together with the number of elements of each nested level, and are written
+ * as tokens when the document is built. Only the x and y coordinates are kept, the SRID is dropped.
+ *
+ * Example of the format used for points:
+ *
+ * { "type": "Point", "coordinates": [100.0, 0.0] }
+ */
+public class GeoShape implements ToXContent {
+
+    /**
+     * The geometry types, with the number of nested levels of their coordinates
+     */
+    public enum Type {
+        POINT("Point", 0),
+        LINESTRING("LineString", 1),
+        POLYGON("Polygon", 2),
+        MULTIPOINT("MultiPoint", 1),
+        MULTILINESTRING("MultiLineString", 2),
+        MULTIPOLYGON("MultiPolygon", 3);
+
+        private final String name;
+
+        private final int depth;
+
+        Type(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+    }
+
+    private final static Type[] WKB_TYPES = {
+            null, Type.POINT, Type.LINESTRING, Type.POLYGON, Type.MULTIPOINT, Type.MULTILINESTRING, Type.MULTIPOLYGON
+    };
+
+    private final static int EWKB_Z = 0x80000000;
+
+    private final static int EWKB_M = 0x40000000;
+
+    private final static int EWKB_SRID = 0x20000000;
+
+    private final Type type;
+
+    /**
+     * The x and y coordinates
+     */
+    private final double[] coordinates;
+
+    /**
+     * The number of elements of the nested levels, in the order they are written
+     */
+    private final int[] counts;
+
+    private GeoShape(Type type, double[] coordinates, int[] counts) {
+        this.type = type;
+        this.coordinates = coordinates;
+        this.counts = counts;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Decode a geometry value. Strings are decoded if they are WKT. If the value is known to be a
+     * geometry, byte arrays are decoded as WKB, strings of hex digits as hex encoded WKB, and other
+     * objects, like driver specific geometry objects, by their string form.
+     *
+     * @param value  the value
+     * @param binary true if the value is known to be a geometry and may be WKB
+     * @return the geometry, or null if the value is not a geometry
+     */
+    public static GeoShape decode(Object value, boolean binary) {
+        if (value instanceof String) {
+            String s = (String) value;
+            if (isWkt(s)) {
+                return fromWkt(s);
+            }
+            return binary && isHex(s) ? fromWkb(hex(s)) : null;
+        }
+        if (!binary) {
+            return null;
+        }
+        if (value instanceof byte[]) {
+            return fromWkb((byte[]) value);
+        }
+        return value != null ? decode(value.toString(), true) : null;
+    }
+
+    /**
+     * Check if a string starts like WKT or EWKT of a supported geometry type
+     *
+     * @param s the string
+     * @return true if the string looks like WKT
+     */
+    public static boolean isWkt(String s) {
+        int i = skipSrid(s);
+        if (i >= s.length() || !Character.isLetter(s.charAt(i))) {
+            return false;
+        }
+        int j = i;
+        while (j < s.length() && Character.isLetter(s.charAt(j))) {
+            j++;
+        }
+        if (type(s, i, j - i) == null) {
+            return false;
+        }
+        while (j < s.length() && (s.charAt(j) == ' ' || Character.isLetter(s.charAt(j)))) {
+            j++;
+        }
+        return j < s.length() && s.charAt(j) == '(';
+    }
+
+    /**
+     * Decode WKT or EWKT
+     *
+     * @param s the WKT string
+     * @return the geometry, or null if the geometry is empty
+     * @throws IllegalArgumentException if the string is not valid WKT of a supported geometry type
+     */
+    public static GeoShape fromWkt(String s) {
+        return new WktReader(s).read();
+    }
+
+    /**
+     * Decode WKB, extended WKB with an SRID, or the MySQL geometry format
+     *
+     * @param b the bytes
+     * @return the geometry, or null if the geometry is empty
+     * @throws IllegalArgumentException if the bytes are not a valid geometry of a supported type
+     */
+    public static GeoShape fromWkb(byte[] b) {
+        try {
+            return new WkbReader(b, 0).read();
+        } catch (IllegalArgumentException e) {
+            // MySQL: four byte SRID before the WKB
+            if (b.length > 4 && (b[4] == 0 || b[4] == 1)) {
+                return new WkbReader(b, 4).read();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject().field("type", type.getName()).field("coordinates");
+        int[] pos = new int[2];
+        if (type == Type.POINT) {
+            writeCoordinate(builder, pos);
+        } else {
+            write(builder, type.getDepth(), pos);
+        }
+        return builder.endObject();
+    }
+
+    private void write(XContentBuilder builder, int depth, int[] pos) throws IOException {
+        if (depth == 0) {
+            writeCoordinate(builder, pos);
+            return;
+        }
+        int n = counts[pos[1]++];
+        builder.startArray();
+        for (int i = 0; i < n; i++) {
+            write(builder, depth - 1, pos);
+        }
+        builder.endArray();
+    }
+
+    private void writeCoordinate(XContentBuilder builder, int[] pos) throws IOException {
+        builder.startArray().value(coordinates[pos[0]]).value(coordinates[pos[0] + 1]).endArray();
+        pos[0] += 2;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof GeoShape)) {
+            return false;
+        }
+        GeoShape shape = (GeoShape) o;
+        return type == shape.type && Arrays.equals(coordinates, shape.coordinates) && Arrays.equals(counts, shape.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * type.hashCode() + Arrays.hashCode(coordinates)) + Arrays.hashCode(counts);
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return toXContent(jsonBuilder(), EMPTY_PARAMS).string();
+        } catch (IOException e) {
+            return type.getName();
+        }
+    }
+
+    private static Type type(String s, int offset, int length) {
+        for (Type type : Type.values()) {
+            if (type.name().length() == length && s.regionMatches(true, offset, type.name(), 0, length)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Skip the SRID prefix of EWKT, like SRID=4326;
+     */
+    private static int skipSrid(String s) {
+        int i = 0;
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        if (s.regionMatches(true, i, "SRID=", 0, 5)) {
+            int j = s.indexOf(';', i);
+            return j < 0 ? s.length() : j + 1;
+        }
+        return i;
+    }
+
+    private static boolean isHex(String s) {
+        int len = s.length();
+        if (len < 18 || (len & 1) != 0 || s.charAt(0) != '0') {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] hex(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) ((Character.digit(s.charAt(2 * i), 16) << 4) | Character.digit(s.charAt(2 * i + 1), 16));
+        }
+        return b;
+    }
+
+    /**
+     * Collects coordinates and counts while reading a geometry
+     */
+    private static class Collector {
+
+        double[] coordinates = new double[16];
+
+        int size;
+
+        int[] counts = new int[4];
+
+        int countSize;
+
+        void coordinate(double x, double y) {
+            if (size + 2 > coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+            }
+            coordinates[size++] = x;
+            coordinates[size++] = y;
+        }
+
+        /**
+         * Reserve a count, it is set when the elements of the level are read
+         */
+        int count() {
+            if (countSize == counts.length) {
+                counts = Arrays.copyOf(counts, counts.length * 2);
+            }
+            return countSize++;
+        }
+
+        GeoShape shape(Type type) {
+            return new GeoShape(type, Arrays.copyOf(coordinates, size), Arrays.copyOf(counts, countSize));
+        }
+    }
+
+    private static class WktReader extends Collector {
+
+        private final String s;
+
+        private int pos;
+
+        WktReader(String s) {
+            this.s = s;
+            this.pos = skipSrid(s);
+        }
+
+        GeoShape read() {
+            String word = word();
+            Type type = type(word, 0, word.length());
+            if (type == null) {
+                throw error("unsupported geometry type");
+            }
+            // dimension of Z, M, ZM geometries is taken from the coordinates
+            skipSpace();
+            if (pos < s.length() && Character.isLetter(s.charAt(pos))) {
+                word = word();
+                if ("EMPTY".equalsIgnoreCase(word)) {
+                    return null;
+                }
+                if (!"Z".equalsIgnoreCase(word) && !"M".equalsIgnoreCase(word) && !"ZM".equalsIgnoreCase(word)) {
+                    throw error("unexpected " + word);
+                }
+            }
+            if (type == Type.POINT) {
+                expect('(');
+                coordinate();
+                expect(')');
+            } else {
+                list(type.getDepth());
+            }
+            skipSpace();
+            if (pos < s.length()) {
+                throw error("unexpected trailing characters");
+            }
+            return shape(type);
+        }
+
+        private void list(int depth) {
+            if (depth == 0) {
+                // MultiPoint members may have parentheses or not
+                if (peek() == '(') {
+                    pos++;
+                    coordinate();
+                    expect(')');
+                } else {
+                    coordinate();
+                }
+                return;
+            }
+            int count = count();
+            int n = 0;
+            expect('(');
+            do {
+                list(depth - 1);
+                n++;
+            } while (accept(','));
+            expect(')');
+            counts[count] = n;
+        }
+
+        private void coordinate() {
+            double x = number();
+            double y = number();
+            // z, m
+            while (peek() != ',' && peek() != ')') {
+                number();
+            }
+            coordinate(x, y);
+        }
+
+        private double number() {
+            skipSpace();
+            int start = pos;
+            while (pos < s.length() && "+-.0123456789eE".indexOf(s.charAt(pos)) >= 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("number expected");
+            }
+            return Double.parseDouble(s.substring(start, pos));
+        }
+
+        private String word() {
+            skipSpace();
+            int start = pos;
+            while (pos < s.length() && Character.isLetter(s.charAt(pos))) {
+                pos++;
+            }
+            return s.substring(start, pos);
+        }
+
+        private char peek() {
+            skipSpace();
+            if (pos >= s.length()) {
+                throw error("unexpected end");
+            }
+            return s.charAt(pos);
+        }
+
+        private boolean accept(char ch) {
+            if (peek() == ch) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char ch) {
+            if (!accept(ch)) {
+                throw error("'" + ch + "' expected");
+            }
+        }
+
+        private void skipSpace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(String.format(Locale.ROOT, "invalid WKT at position %d: %s", pos, message));
+        }
+    }
+
+    private static class WkbReader extends Collector {
+
+        private final byte[] b;
+
+        private int pos;
+
+        private boolean littleEndian;
+
+        /**
+         * The number of coordinates of a point of the geometry whose header was read last
+         */
+        private int dimensions;
+
+        WkbReader(byte[] b, int offset) {
+            this.b = b;
+            this.pos = offset;
+        }
+
+        GeoShape read() {
+            Type type = type();
+            boolean empty = type == Type.POINT ? point(dimensions) : geometry(type, dimensions);
+            if (pos != b.length) {
+                throw new IllegalArgumentException("invalid WKB: " + (b.length - pos) + " trailing bytes");
+            }
+            return empty ? null : shape(type);
+        }
+
+        /**
+         * Read the header of a geometry: byte order, type, and SRID
+         */
+        private Type type() {
+            byte order = readByte();
+            if (order != 0 && order != 1) {
+                throw new IllegalArgumentException("invalid WKB byte order " + order);
+            }
+            littleEndian = order == 1;
+            int code = readInt();
+            boolean z = (code & EWKB_Z) != 0;
+            boolean m = (code & EWKB_M) != 0;
+            if ((code & EWKB_SRID) != 0) {
+                readInt();
+            }
+            code &= 0x0fffffff;
+            // ISO WKB: 1000 Z, 2000 M, 3000 ZM
+            int iso = code / 1000;
+            code = code % 1000;
+            if (iso > 3 || code < 1 || code >= WKB_TYPES.length) {
+                throw new IllegalArgumentException("unsupported WKB geometry type " + code);
+            }
+            dimensions = 2 + (z || iso == 1 || iso == 3 ? 1 : 0) + (m || iso == 2 || iso == 3 ? 1 : 0);
+            return WKB_TYPES[code];
+        }
+
+        /**
+         * Read the coordinates of a geometry, after the header
+         *
+         * @return true if the geometry is empty
+         */
+        private boolean geometry(Type type, int dimensions) {
+            int n = readCount();
+            int count = count();
+            counts[count] = n;
+            for (int i = 0; i < n; i++) {
+                switch (type) {
+                    case LINESTRING:
+                        coordinate(dimensions);
+                        break;
+                    case POLYGON:
+                        geometry(Type.LINESTRING, dimensions);
+                        break;
+                    default:
+                        // the elements of multi geometries have a header
+                        Type element = type();
+                        if (!type.name().equals("MULTI" + element.name())) {
+                            throw new IllegalArgumentException("invalid WKB element " + element + " in " + type);
+                        }
+                        if (element != Type.POINT) {
+                            geometry(element, this.dimensions);
+                        } else if (point(this.dimensions)) {
+                            throw new IllegalArgumentException("invalid WKB: empty point in " + type);
+                        }
+                        break;
+                }
+            }
+            return n == 0;
+        }
+
+        /**
+         * @return true if the point is empty
+         */
+        private boolean point(int dimensions) {
+            int start = size;
+            coordinate(dimensions);
+            if (Double.isNaN(coordinates[start]) && Double.isNaN(coordinates[start + 1])) {
+                size = start;
+                return true;
+            }
+            return false;
+        }
+
+        private void coordinate(int dimensions) {
+            double x = Double.longBitsToDouble(readLong());
+            double y = Double.longBitsToDouble(readLong());
+            for (int i = 2; i < dimensions; i++) {
+                readLong();
+            }
+            coordinate(x, y);
+        }
+
+        private int readCount() {
+            int n = readInt();
+            // each element has at least four bytes
+            if (n < 0 || n > (b.length - pos) / 4) {
+                throw new IllegalArgumentException("invalid WKB count " + n);
+            }
+            return n;
+        }
+
+        private byte readByte() {
+            if (pos >= b.length) {
+                throw new IllegalArgumentException("invalid WKB: unexpected end");
+            }
+            return b[pos++];
+        }
+
+        private int readInt() {
+            if (pos + 4 > b.length) {
+                throw new IllegalArgumentException("invalid WKB: unexpected end");
+            }
+            int v;
+            if (littleEndian) {
+                v = (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8 | (b[pos + 2] & 0xff) << 16 | (b[pos + 3] & 0xff) << 24;
+            } else {
+                v = (b[pos] & 0xff) << 24 | (b[pos + 1] & 0xff) << 16 | (b[pos + 2] & 0xff) << 8 | (b[pos + 3] & 0xff);
+            }
+            pos += 4;
+            return v;
+        }
+
+        private long readLong() {
+            long hi = readInt() & 0xffffffffL;
+            long lo = readInt() & 0xffffffffL;
+            return littleEndian ? lo << 32 | hi : hi << 32 | lo;
+        }
+    }
+}
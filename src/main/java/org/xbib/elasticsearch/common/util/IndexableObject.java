@@ -15,7 +15,11 @@
  */
 package org.xbib.elasticsearch.common.util;
 
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
 
 /**
@@ -97,10 +101,38 @@ public interface IndexableObject {
 
     IndexableObject source(Map<String, Object> source);
 
+    /**
+     * Set the source as raw JSON, which is written to the document as it is
+     *
+     * @param source the raw JSON object
+     * @return this object
+     */
+    IndexableObject rawSource(RawJson source);
+
     Map<String, Object> source();
 
     String build() throws IOException;
 
+    /**
+     * Build the source in a content type, as bytes that can be passed to a request without a string.
+     * JSON is built on a single line.
+     *
+     * @param contentType the content type, e.g. JSON, SMILE, or CBOR
+     * @return the source bytes
+     * @throws IOException if the source can not be built
+     */
+    BytesReference build(XContentType contentType) throws IOException;
+
+    /**
+     * Write the source in a content type to a stream. JSON is written on a single line, so it can be
+     * used as a source line of the bulk format.
+     *
+     * @param contentType the content type
+     * @param out         the stream
+     * @throws IOException if the source can not be written
+     */
+    void build(XContentType contentType, OutputStream out) throws IOException;
+
     boolean isEmpty();
 
 }
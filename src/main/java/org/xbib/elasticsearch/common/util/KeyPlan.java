@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The compiled form of a column label, for merging values into a structured object.
+ *
+ * A label is compiled once per result set. The plan records if the label is a control key, and the
+ * path the label describes: a plain or sequence field like {@code a} or {@code a[]}, an indexed array
+ * like {@code a[b]} that merges into the last map of a list, or a dotted path like {@code a.b} with
+ * the plan of the tail.
+ */
+public class KeyPlan {
+
+    private final static Pattern p = Pattern.compile("^(.*)\\[(.*?)\\]$");
+
+    private final static Set<String> controlKeys = ControlKeys.makeSet();
+
+    /**
+     * The kind of path of a label
+     */
+    public enum Kind {
+        IGNORED, FIELD, INDEXED, PATH
+    }
+
+    private final String key;
+
+    private final ControlKeys control;
+
+    private final Kind kind;
+
+    private final String head;
+
+    private final boolean isSequence;
+
+    private final String index;
+
+    private final boolean indexHasDelimiter;
+
+    private final KeyPlan next;
+
+    private KeyPlan(String key, ControlKeys control, Kind kind, String head, boolean isSequence,
+                    String index, boolean indexHasDelimiter, KeyPlan next) {
+        this.key = key;
+        this.control = control;
+        this.kind = kind;
+        this.head = head;
+        this.isSequence = isSequence;
+        this.index = index;
+        this.indexHasDelimiter = indexHasDelimiter;
+        this.next = next;
+    }
+
+    /**
+     * Compile a label
+     *
+     * @param key       the label
+     * @param delimiter the delimiter between the key names in the path
+     * @return the plan
+     */
+    public static KeyPlan compile(String key, char delimiter) {
+        ControlKeys control = null;
+        for (ControlKeys k : ControlKeys.values()) {
+            if (k.name().equalsIgnoreCase(key)) {
+                control = k;
+                break;
+            }
+        }
+        if (controlKeys.contains(key)) {
+            return new KeyPlan(key, control, Kind.IGNORED, null, false, null, false, null);
+        }
+        int i = key.indexOf(delimiter);
+        boolean isSequence = false;
+        Matcher matcher = p.matcher(key);
+        boolean matches = matcher.matches();
+        if (matches) {
+            isSequence = key.indexOf('[') < i;
+        }
+        if (i <= 0 || isSequence) {
+            String head = matches ? matcher.group(1) : key;
+            String index = matches ? matcher.group(2) : null;
+            if (index == null || index.isEmpty()) {
+                return new KeyPlan(key, control, Kind.FIELD, head, matches, null, false, null);
+            }
+            return new KeyPlan(key, control, Kind.INDEXED, head, true, index, index.indexOf(delimiter) >= 0,
+                    compile(index, delimiter));
+        }
+        String head = key.substring(0, i);
+        matcher = p.matcher(head);
+        if (matcher.matches()) {
+            head = matcher.group(1);
+        }
+        return new KeyPlan(key, control, Kind.PATH, head, false, null, false,
+                compile(key.substring(i + 1), delimiter));
+    }
+
+    /**
+     * The label
+     *
+     * @return the label
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The control key of the label, the case of the label is ignored
+     *
+     * @return the control key, or null if the label is not a control key
+     */
+    public ControlKeys getControl() {
+        return control;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * The key in the map at this level of the path
+     *
+     * @return the head key
+     */
+    public String getHead() {
+        return head;
+    }
+
+    public boolean isSequence() {
+        return isSequence;
+    }
+
+    /**
+     * The key inside the brackets of an indexed array
+     *
+     * @return the index key
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    public boolean indexHasDelimiter() {
+        return indexHasDelimiter;
+    }
+
+    /**
+     * The plan of the index key of an indexed array, or of the tail of a path
+     *
+     * @return the next plan
+     */
+    public KeyPlan getNext() {
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
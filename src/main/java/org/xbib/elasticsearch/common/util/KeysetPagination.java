@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+/**
+ * Keyset (seek) pagination. A statement is executed repeatedly, each page selects the rows
+ * with a key greater than the last key of the previous page, in key order.
+ * The last key of a page is the checkpoint for resuming the statement.
+ */
+public class KeysetPagination {
+
+    private KeysetPagination() {
+    }
+
+    /**
+     * Build the statement for a page. If it is not the first page, the last key of the previous
+     * page must be bound as the last parameter of the statement.
+     *
+     * @param sql   the SQL statement
+     * @param key   the key column
+     * @param first true if this is the first page
+     * @return the SQL statement for selecting a page
+     */
+    public static String pageSQL(String sql, String key, boolean first) {
+        String column = column(key);
+        return "select * from (" + sql + ") keyset_page"
+                + (first ? "" : " where " + column + " > ?")
+                + " order by " + column;
+    }
+
+    /**
+     * The column of a key in a derived table, without qualifier, but with quotes. A qualifier
+     * like the table alias in "o.id" is not valid outside the statement.
+     *
+     * @param key the key column
+     * @return the column
+     */
+    public static String column(String key) {
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '[') {
+                quote = ']';
+            } else if (c == '.') {
+                start = i + 1;
+            }
+        }
+        return key.substring(start).trim();
+    }
+
+    /**
+     * The column label of a key, without qualifier and quotes
+     *
+     * @param key the key column
+     * @return the column label
+     */
+    public static String label(String key) {
+        String s = column(key);
+        if (s.length() > 1 && (s.charAt(0) == '"' || s.charAt(0) == '`' || s.charAt(0) == '[')) {
+            s = s.substring(1, s.length() - 1);
+        }
+        return s;
+    }
+
+    /**
+     * Encode a key value for persisting it as a checkpoint
+     *
+     * @param value the key value
+     * @return the type and the string value of the key
+     */
+    public static String[] encode(Object value) {
+        if (value instanceof java.util.Date) {
+            return new String[]{"timestamp", Long.toString(((java.util.Date) value).getTime())};
+        } else if (value instanceof Double || value instanceof Float) {
+            return new String[]{"double", value.toString()};
+        } else if (value instanceof BigDecimal) {
+            return new String[]{"decimal", ((BigDecimal) value).toPlainString()};
+        } else if (value instanceof Number) {
+            return new String[]{"long", value.toString()};
+        }
+        return new String[]{"string", value.toString()};
+    }
+
+    /**
+     * Decode a key value of a checkpoint
+     *
+     * @param type  the type of the key
+     * @param value the string value of the key
+     * @return the key value
+     */
+    public static Object decode(String type, String value) {
+        if (value == null) {
+            return null;
+        }
+        if ("timestamp".equals(type)) {
+            return new Timestamp(Long.parseLong(value));
+        } else if ("double".equals(type)) {
+            return Double.parseDouble(value);
+        } else if ("decimal".equals(type)) {
+            return new BigDecimal(value);
+        } else if ("long".equals(type)) {
+            return Long.parseLong(value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads large object values from streams in fixed-size chunks.
+ *
+ * The size of a value is limited. A value with a known length is read directly into an array of
+ * exactly that length, without chunk buffers, also for character values. A value above the limit is truncated, skipped, or rejected, depending on
+ * the policy, and the stream is not read beyond the limit. The limit is in bytes for binary values
+ * and in characters for character values. The chunk buffers are reused, so a reader must only
+ * be used by one thread.
+ */
+public class LobReader {
+
+    private final static Logger logger = LogManager.getLogger("importer.jdbc.lob");
+
+    /**
+     * What to do with a value above the size limit
+     */
+    public enum Policy {
+        TRUNCATE, SKIP, FAIL
+    }
+
+    private final static int CHUNK_SIZE = 8192;
+
+    /**
+     * The maximum array size supported by the JVM
+     */
+    private final static long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final long maxSize;
+
+    private final Policy policy;
+
+    private final byte[] bytes = new byte[CHUNK_SIZE];
+
+    private final char[] chars = new char[CHUNK_SIZE];
+
+    /**
+     * Create a large object reader
+     *
+     * @param maxSize the maximum size of a value, or -1 for no limit
+     * @param policy  the policy for values above the maximum size
+     */
+    public LobReader(long maxSize, Policy policy) {
+        this.maxSize = maxSize;
+        this.policy = policy;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Read a binary value
+     *
+     * @param in     the stream of the value, or null
+     * @param length the length of the value if known, or -1
+     * @param field  the field name, for messages
+     * @return the value, or null if the value is null or skipped
+     * @throws IOException if the value can not be read, or is above the limit and the policy is to fail
+     */
+    public byte[] read(InputStream in, long length, String field) throws IOException {
+        if (in == null) {
+            return null;
+        }
+        try {
+            long limit = limit();
+            if (length > limit && !truncates()) {
+                overflow(field, length);
+                return null;
+            }
+            if (length >= 0) {
+                byte[] b = new byte[(int) Math.min(length, limit)];
+                int n = 0;
+                int len;
+                while (n < b.length && (len = in.read(b, n, b.length - n)) != -1) {
+                    n += len;
+                }
+                if (length > limit) {
+                    truncated(field, length);
+                }
+                return n < b.length ? Arrays.copyOf(b, n) : b;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK_SIZE);
+            long n = 0L;
+            int len;
+            while ((len = in.read(bytes, 0, (int) Math.min(CHUNK_SIZE, limit - n + 1))) != -1) {
+                if (n + len > limit) {
+                    if (!truncates()) {
+                        overflow(field, n + len);
+                        return null;
+                    }
+                    out.write(bytes, 0, (int) (limit - n));
+                    truncated(field, n + len);
+                    break;
+                }
+                out.write(bytes, 0, len);
+                n += len;
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a character value
+     *
+     * @param reader the reader of the value, or null
+     * @param length the length of the value if known, or -1
+     * @param field  the field name, for messages
+     * @return the value, or null if the value is null or skipped
+     * @throws IOException if the value can not be read, or is above the limit and the policy is to fail
+     */
+    public String read(Reader reader, long length, String field) throws IOException {
+        if (reader == null) {
+            return null;
+        }
+        try {
+            long limit = limit();
+            if (length > limit && !truncates()) {
+                overflow(field, length);
+                return null;
+            }
+            if (length >= 0) {
+                char[] c = new char[(int) Math.min(length, limit)];
+                int n = 0;
+                int len;
+                while (n < c.length && (len = reader.read(c, n, c.length - n)) != -1) {
+                    n += len;
+                }
+                if (length > limit) {
+                    truncated(field, length);
+                }
+                return new String(c, 0, n);
+            }
+            StringBuilder sb = new StringBuilder(CHUNK_SIZE);
+            long n = 0L;
+            int len;
+            while ((len = reader.read(chars, 0, (int) Math.min(CHUNK_SIZE, limit - n + 1))) != -1) {
+                if (n + len > limit) {
+                    if (!truncates()) {
+                        overflow(field, n + len);
+                        return null;
+                    }
+                    sb.append(chars, 0, (int) (limit - n));
+                    truncated(field, n + len);
+                    break;
+                }
+                sb.append(chars, 0, len);
+                n += len;
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private long limit() {
+        return maxSize >= 0 ? Math.min(maxSize, MAX_ARRAY_SIZE) : MAX_ARRAY_SIZE;
+    }
+
+    private void overflow(String field, long length) throws IOException {
+        if (policy == Policy.SKIP && maxSize >= 0) {
+            logger.debug("skipping value of field {}, size {} is larger than {}", field, length, maxSize);
+            return;
+        }
+        throw new IOException("can't process value of field " + field + ", size " + length
+                + " is larger than " + limit());
+    }
+
+    /**
+     * Without a size limit, values are never truncated, a value that is too large for an array is rejected
+     */
+    private boolean truncates() {
+        return policy == Policy.TRUNCATE && maxSize >= 0;
+    }
+
+    private void truncated(String field, long length) {
+        logger.debug("truncated value of field {} from size {} to {}", field, length, maxSize);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map in access order that evicts the least recently used entry when it grows beyond a maximum size.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 6155304547261842312L;
+
+    private final int maxSize;
+
+    public LruMap(int maxSize) {
+        super(16, 0.75f, true);
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        if (size() <= maxSize) {
+            return false;
+        }
+        evicted(eldest);
+        return true;
+    }
+
+    /**
+     * Called when an entry is evicted. The default does nothing.
+     *
+     * @param eldest the evicted entry
+     */
+    protected void evicted(Map.Entry<K, V> eldest) {
+    }
+}
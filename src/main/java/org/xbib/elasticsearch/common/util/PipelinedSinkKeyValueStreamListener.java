@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xbib.elasticsearch.common.keyvalue.KeyValueStreamListener;
+import org.xbib.elasticsearch.common.metrics.SourceMetric;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A key/value stream listener that runs in three stages. The reader stage is the thread
+ * that reads the result set and calls this listener, it only hands over the row values.
+ * The assembler stage merges the rows into structured objects, and the sink stage pushes
+ * the objects to the sink. The stages run in their own threads, connected by bounded ring
+ * buffers, so the database cursor does not stall while the sink waits for a bulk response.
+ *
+ * The stage threads are started by {@link #begin()} and stopped by {@link #end()}, which
+ * returns after all objects of the key/value sequence have been written to the sink.
+ * If a stage fails, the error is thrown to the reader stage.
+ */
+public class PipelinedSinkKeyValueStreamListener<K, V> extends SinkKeyValueStreamListener<K, V> {
+
+    private final static Logger logger = LogManager.getLogger("importer.jdbc.pipeline");
+
+    private final static Object END = new Object();
+
+    private final int capacity;
+
+    private SourceMetric metric;
+
+    private RingBuffer<Object> rows;
+
+    private RingBuffer<Object> documents;
+
+    private Thread assembler;
+
+    private Thread writer;
+
+    private CountDownLatch done;
+
+    private volatile Throwable failure;
+
+    private volatile boolean aborted;
+
+    public PipelinedSinkKeyValueStreamListener(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Set the source metric for the queue depth gauges of the stages
+     *
+     * @param metric the source metric
+     * @return this listener
+     */
+    public PipelinedSinkKeyValueStreamListener<K, V> metric(SourceMetric metric) {
+        this.metric = metric;
+        return this;
+    }
+
+    @Override
+    public KeyValueStreamListener<K, V> begin() throws IOException {
+        if (assembler != null) {
+            return this;
+        }
+        rows = new RingBuffer<Object>(capacity);
+        documents = new RingBuffer<Object>(capacity);
+        done = new CountDownLatch(1);
+        failure = null;
+        aborted = false;
+        assembler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                assemble();
+            }
+        }, "pipeline-assembler");
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "pipeline-sink");
+        assembler.setDaemon(true);
+        writer.setDaemon(true);
+        assembler.start();
+        writer.start();
+        return super.begin();
+    }
+
+    @Override
+    public KeyValueStreamListener<K, V> keys(List<K> keys) throws IOException {
+        return keys(keys, null, null);
+    }
+
+    @Override
+    public KeyValueStreamListener<K, V> keys(List<K> keys, Collection<String> jsonKeys, Collection<String> geoKeys)
+            throws IOException {
+        if (assembler == null) {
+            begin();
+        }
+        put(rows, new Keys<K>(new ArrayList<K>(keys), jsonKeys, geoKeys));
+        return this;
+    }
+
+    /**
+     * Receive values. The values are copied, because the reader may reuse the list for the next row.
+     *
+     * @param values the values
+     * @return this listener
+     * @throws IOException if a stage has failed
+     */
+    @Override
+    public KeyValueStreamListener<K, V> values(List<V> values) throws IOException {
+        if (assembler == null) {
+            begin();
+        }
+        if (metric != null) {
+            metric.getRowQueueDepth().inc();
+        }
+        put(rows, new ArrayList<V>(values));
+        return this;
+    }
+
+    /**
+     * End of the key/value sequence. Wait until all objects are written to the sink and stop the stages.
+     *
+     * @return this listener
+     * @throws IOException if a stage has failed
+     */
+    @Override
+    public KeyValueStreamListener<K, V> end() throws IOException {
+        if (assembler == null) {
+            return this;
+        }
+        try {
+            put(rows, END);
+            while (!done.await(100L, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+            checkFailure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for pipeline", e);
+        } finally {
+            close();
+        }
+        return this;
+    }
+
+    /**
+     * Called by the assembler stage for each complete object
+     *
+     * @param object the object
+     * @return this listener
+     * @throws IOException if the sink stage has failed
+     */
+    @Override
+    public SinkKeyValueStreamListener<K, V> end(IndexableObject object) throws IOException {
+        if (object.isEmpty()) {
+            return this;
+        }
+        if (metric != null) {
+            metric.getDocumentQueueDepth().inc();
+        }
+        put(documents, object);
+        return this;
+    }
+
+    /**
+     * Stop the stage threads. Objects that are not written yet are discarded.
+     */
+    public void close() {
+        if (assembler == null) {
+            return;
+        }
+        aborted = true;
+        join(assembler);
+        join(writer);
+        assembler = null;
+        writer = null;
+        if (metric != null) {
+            metric.getRowQueueDepth().dec(rows.size());
+            metric.getDocumentQueueDepth().dec(documents.size());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assemble() {
+        try {
+            while (true) {
+                Object o = take(rows);
+                if (o == null) {
+                    return;
+                }
+                if (o == END) {
+                    super.end();
+                    put(documents, END);
+                    return;
+                }
+                if (o instanceof Keys) {
+                    Keys<K> k = (Keys<K>) o;
+                    super.keys(k.keys, k.jsonKeys, k.geoKeys);
+                } else {
+                    if (metric != null) {
+                        metric.getRowQueueDepth().dec();
+                    }
+                    super.values((List<V>) o);
+                }
+            }
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                Object o = take(documents);
+                if (o == null) {
+                    return;
+                }
+                if (o == END) {
+                    done.countDown();
+                    return;
+                }
+                if (metric != null) {
+                    metric.getDocumentQueueDepth().dec();
+                }
+                write((IndexableObject) o);
+            }
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void put(RingBuffer<Object> buffer, Object o) throws IOException {
+        int spins = 0;
+        while (!buffer.offer(o)) {
+            checkFailure();
+            if (aborted) {
+                throw new IOException("pipeline aborted");
+            }
+            backoff(++spins);
+        }
+    }
+
+    private Object take(RingBuffer<Object> buffer) {
+        int spins = 0;
+        Object o;
+        while ((o = buffer.poll()) == null) {
+            if (aborted || failure != null) {
+                return null;
+            }
+            backoff(++spins);
+        }
+        return o;
+    }
+
+    private void fail(Throwable t) {
+        logger.error("pipeline stage failed: " + t.getMessage(), t);
+        if (failure == null) {
+            failure = t;
+        }
+        if (done != null) {
+            done.countDown();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            throw new IOException(t);
+        }
+    }
+
+    private static void backoff(int spins) {
+        if (spins < 100) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(100000L);
+        }
+    }
+
+    private static void join(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Keys<K> {
+
+        private final List<K> keys;
+
+        private final Collection<String> jsonKeys;
+
+        private final Collection<String> geoKeys;
+
+        Keys(List<K> keys, Collection<String> jsonKeys, Collection<String> geoKeys) {
+            this.keys = keys;
+            this.jsonKeys = jsonKeys;
+            this.geoKeys = geoKeys;
+        }
+    }
+}
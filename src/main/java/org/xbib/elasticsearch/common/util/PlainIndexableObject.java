@@ -15,14 +15,18 @@
  */
 package org.xbib.elasticsearch.common.util;
 
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.elasticsearch.common.xcontent.XContentFactory.contentBuilder;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 /**
@@ -36,6 +40,8 @@ public class PlainIndexableObject implements IndexableObject, ToXContent, Compar
 
     private Map<String, Object> core;
 
+    private RawJson raw;
+
     private final Params params;
 
     public PlainIndexableObject() {
@@ -106,11 +112,32 @@ public class PlainIndexableObject implements IndexableObject, ToXContent, Compar
     @Override
     public IndexableObject source(Map<String, Object> source) {
         this.core = source;
+        this.raw = null;
         return this;
     }
 
+    @Override
+    public IndexableObject rawSource(RawJson source) {
+        this.raw = source;
+        this.core = new LinkedHashMap<String, Object>();
+        return this;
+    }
+
+    /**
+     * The source as a map. A raw JSON source is parsed into the map.
+     *
+     * @return the source
+     */
     @Override
     public Map<String, Object> source() {
+        if (raw != null) {
+            try {
+                core = raw.map();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            raw = null;
+        }
         return core;
     }
 
@@ -121,13 +148,40 @@ public class PlainIndexableObject implements IndexableObject, ToXContent, Compar
      */
     @Override
     public String build() throws IOException {
+        if (raw != null) {
+            return raw.toString();
+        }
         XContentBuilder builder = jsonBuilder();
         toXContent(builder, params);
         return builder.string();
     }
 
+    @Override
+    public BytesReference build(XContentType contentType) throws IOException {
+        if (raw != null && raw.isSingleLine() && contentType == XContentType.JSON) {
+            return raw.bytes();
+        }
+        XContentBuilder builder = contentBuilder(contentType);
+        toXContent(builder, params);
+        return builder.bytes();
+    }
+
+    @Override
+    public void build(XContentType contentType, OutputStream out) throws IOException {
+        if (raw != null && raw.isSingleLine() && contentType == XContentType.JSON) {
+            raw.bytes().writeTo(out);
+            return;
+        }
+        XContentBuilder builder = contentBuilder(contentType, out);
+        toXContent(builder, params);
+        builder.flush();
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        if (raw != null) {
+            return raw.toXContent(builder, params);
+        }
         toXContent(builder, params, core);
         return builder;
     }
@@ -153,6 +207,11 @@ public class PlainIndexableObject implements IndexableObject, ToXContent, Compar
             if (params.paramAsBoolean("ignore_null", false) && (o == null || (o instanceof Values) && ((Values) o).isNull())) {
                 continue;
             }
+            RawJson json = RawJson.single(o, params.paramAsBoolean("force_array", false));
+            if (json != null) {
+                json.toXContent(builder, k.getKey());
+                continue;
+            }
             builder.field(k.getKey());
             if (o instanceof Values) {
                 Values v = (Values) o;
@@ -218,12 +277,12 @@ public class PlainIndexableObject implements IndexableObject, ToXContent, Compar
 
     @Override
     public boolean isEmpty() {
-        return optype() == null && index() == null && type() == null && id() == null && core.isEmpty();
+        return optype() == null && index() == null && type() == null && id() == null && raw == null && core.isEmpty();
     }
 
     @Override
     public String toString() {
-        return "[" + optype() + "/" + index() + "/" + type() + "/" + id() + "]->" + core;
+        return "[" + optype() + "/" + index() + "/" + type() + "/" + id() + "]->" + (raw != null ? raw : core);
     }
 
     @Override
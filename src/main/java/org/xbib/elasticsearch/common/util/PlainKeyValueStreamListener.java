@@ -15,31 +15,25 @@
  */
 package org.xbib.elasticsearch.common.util;
 
-import com.spatial4j.core.context.SpatialContext;
-import com.spatial4j.core.context.jts.JtsSpatialContext;
-import com.spatial4j.core.shape.Shape;
 import org.elasticsearch.common.xcontent.ToXContent;
-import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
 import org.xbib.elasticsearch.common.keyvalue.KeyValueStreamListener;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener<K, V> {
 
-    private final static Pattern p = Pattern.compile("^(.*)\\[(.*?)\\]$");
-
     /**
      * The current structured object
      */
@@ -54,6 +48,18 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
      * attributes.
      */
     private List<K> keys;
+    /**
+     * The compiled keys
+     */
+    private List<KeyPlan> plans;
+    /**
+     * The layout of the documents, or null if documents are built as maps
+     */
+    private DocumentLayout layout;
+    /**
+     * The parameters of new objects
+     */
+    private ToXContent.Params params;
     /**
      * The delimiter between the key names in the path, used for string split.
      * Should not be modified.
@@ -68,6 +74,86 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
 
     private boolean shouldDetectJson = true;
 
+    /**
+     * The keys of the columns that are parsed for JSON, or null if columns are sampled
+     */
+    private Set<String> jsonColumns;
+
+    /**
+     * The number of non-null values of a column that are sampled for JSON
+     */
+    private int jsonSampleSize = 100;
+
+    /**
+     * How JSON values are passed through as raw JSON, or null if JSON values are parsed
+     */
+    private RawJson.Mode jsonPassthrough;
+
+    /**
+     * The JSON detection state of the columns: {@link #JSON_CHECK}, {@link #JSON_NEVER}, or the number of
+     * values that are still sampled
+     */
+    private int[] jsonStates;
+
+    private final static int JSON_CHECK = -1;
+
+    private final static int JSON_NEVER = 0;
+
+    /**
+     * The keys of the columns that hold geometries, or null if columns are sampled
+     */
+    private Set<String> geoColumns;
+
+    /**
+     * The number of non-null values of a column that are sampled for WKT
+     */
+    private int geoSampleSize = 100;
+
+    /**
+     * The geometry detection state of the columns: {@link #GEO_BINARY}, {@link #GEO_CHECK}, {@link #GEO_NEVER},
+     * or the number of values that are still sampled
+     */
+    private int[] geoStates;
+
+    /**
+     * The column holds geometries, as WKT or WKB
+     */
+    private final static int GEO_BINARY = -2;
+
+    /**
+     * The column holds WKT
+     */
+    private final static int GEO_CHECK = -1;
+
+    private final static int GEO_NEVER = 0;
+
+    /**
+     * The number of rows merged into the object that has not ended yet
+     */
+    private int pendingRows;
+
+    /**
+     * The memory limit for grouping rows by document, or -1 if only consecutive rows are merged
+     */
+    private long groupMemoryLimit = -1L;
+
+    private File groupSpillDirectory;
+
+    /**
+     * The rows that are grouped by document, or null if rows are not grouped
+     */
+    private RowGroupBuffer groups;
+
+    /**
+     * The positions of the columns that identify the document of a row
+     */
+    private int[] groupColumns;
+
+    /**
+     * True while grouped rows are passed
+     */
+    private boolean draining;
+
     /**
      * Set custom delimiter
      *
@@ -81,6 +167,7 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
 
     public PlainKeyValueStreamListener shouldIgnoreNull(boolean shouldIgnoreNull) {
         this.shouldIgnoreNull = shouldIgnoreNull;
+        this.params = null;
         return this;
     }
 
@@ -94,6 +181,89 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
         return this;
     }
 
+    /**
+     * Set the keys of the columns that hold JSON. Only these columns are parsed for JSON.
+     *
+     * @param jsonColumns the keys of the JSON columns, or null if columns should be sampled
+     * @return this listener
+     */
+    public PlainKeyValueStreamListener jsonColumns(Collection<String> jsonColumns) {
+        this.jsonColumns = jsonColumns != null ? new HashSet<String>(jsonColumns) : null;
+        return this;
+    }
+
+    /**
+     * Set the number of non-null values of a column that are sampled for JSON. If none of them
+     * is a JSON object or array, the column is no longer parsed.
+     *
+     * @param jsonSampleSize the number of values, or 0 if all values should be parsed
+     * @return this listener
+     */
+    public PlainKeyValueStreamListener jsonSampleSize(int jsonSampleSize) {
+        this.jsonSampleSize = jsonSampleSize;
+        return this;
+    }
+
+    /**
+     * Pass JSON values and sources through as raw JSON instead of parsing them into maps and lists.
+     *
+     * @param jsonPassthrough how raw JSON is checked, or null if JSON values are parsed
+     * @return this listener
+     */
+    public PlainKeyValueStreamListener jsonPassthrough(RawJson.Mode jsonPassthrough) {
+        this.jsonPassthrough = jsonPassthrough;
+        return this;
+    }
+
+    /**
+     * Set the keys of the columns that hold geometries. Only these columns are decoded as WKT or WKB.
+     *
+     * @param geoColumns the keys of the geometry columns, or null if columns should be sampled
+     * @return this listener
+     */
+    public PlainKeyValueStreamListener geoColumns(Collection<String> geoColumns) {
+        this.geoColumns = geoColumns != null ? new HashSet<String>(geoColumns) : null;
+        return this;
+    }
+
+    /**
+     * Set the number of non-null values of a column that are sampled for WKT. If none of them
+     * is WKT, the column is no longer decoded.
+     *
+     * @param geoSampleSize the number of values, or 0 if all values should be decoded
+     * @return this listener
+     */
+    public PlainKeyValueStreamListener geoSampleSize(int geoSampleSize) {
+        this.geoSampleSize = geoSampleSize;
+        return this;
+    }
+
+    /**
+     * The number of most recent rows that belong to an object that has not ended yet.
+     * All rows received before these rows are part of ended objects.
+     *
+     * @return the number of pending rows
+     */
+    public int getPendingRows() {
+        return groups != null ? pendingRows + groups.size() : pendingRows;
+    }
+
+    /**
+     * Group rows by document, so that rows of a document are merged even if they are not consecutive.
+     * Rows are held until the end of the result set, then the rows of each document are merged.
+     * Rows above the memory limit are spilled to files.
+     *
+     * @param memoryLimit    the estimated size in bytes of the rows held in memory, or -1 if only
+     *                       consecutive rows are merged
+     * @param spillDirectory the directory for spilled rows, or null for the temporary directory
+     * @return this listener
+     */
+    public PlainKeyValueStreamListener groupById(long memoryLimit, File spillDirectory) {
+        this.groupMemoryLimit = memoryLimit;
+        this.groupSpillDirectory = spillDirectory;
+        return this;
+    }
+
     /**
      * @return this value listener
      * @throws java.io.IOException when beginning the object gives an error
@@ -116,8 +286,68 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
      */
     @Override
     public KeyValueStreamListener<K, V> keys(List<K> keys) throws IOException {
+        return keys(keys, null, null);
+    }
+
+    /**
+     * Set the keys, together with the keys of the columns that are known to hold JSON or geometries,
+     * for example because of their column type.
+     *
+     * @param keys     the keys
+     * @param jsonKeys the keys of the columns that hold JSON, or null
+     * @param geoKeys  the keys of the columns that hold geometries, or null
+     * @return this value listener
+     * @throws java.io.IOException if the keys can not be set
+     */
+    public KeyValueStreamListener<K, V> keys(List<K> keys, Collection<String> jsonKeys, Collection<String> geoKeys)
+            throws IOException {
+        // rows grouped under the previous keys
+        drain();
         this.keys = keys;
+        this.plans = new ArrayList<KeyPlan>(keys.size());
+        this.jsonStates = new int[keys.size()];
+        this.geoStates = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i).toString();
+            plans.add(KeyPlan.compile(key, delimiter));
+            if (jsonColumns != null) {
+                jsonStates[i] = jsonColumns.contains(key) ? JSON_CHECK : JSON_NEVER;
+            } else if ((jsonKeys != null && jsonKeys.contains(key)) || jsonSampleSize <= 0) {
+                jsonStates[i] = JSON_CHECK;
+            } else {
+                jsonStates[i] = jsonSampleSize;
+            }
+            if (!shouldDetectGeo) {
+                geoStates[i] = GEO_NEVER;
+            } else if (geoColumns != null) {
+                geoStates[i] = geoColumns.contains(key) ? GEO_BINARY : GEO_NEVER;
+            } else if (geoKeys != null && geoKeys.contains(key)) {
+                geoStates[i] = GEO_BINARY;
+            } else {
+                geoStates[i] = geoSampleSize > 0 ? geoSampleSize : GEO_CHECK;
+            }
+        }
+        this.layout = DocumentLayout.compile(plans);
         this.shouldAutoGenID = shouldAutoGenID();
+        this.groupColumns = null;
+        if (groupMemoryLimit >= 0 && !shouldAutoGenID) {
+            List<Integer> list = new ArrayList<Integer>();
+            for (int i = 0; i < plans.size(); i++) {
+                KeyPlan plan = plans.get(i);
+                if (plan.getKind() == KeyPlan.Kind.IGNORED && (plan.getControl() == ControlKeys._optype
+                        || plan.getControl() == ControlKeys._index || plan.getControl() == ControlKeys._type
+                        || plan.getControl() == ControlKeys._id)) {
+                    list.add(i);
+                }
+            }
+            groupColumns = new int[list.size()];
+            for (int i = 0; i < groupColumns.length; i++) {
+                groupColumns[i] = list.get(i);
+            }
+            if (groups == null) {
+                groups = new RowGroupBuffer(groupMemoryLimit, groupSpillDirectory);
+            }
+        }
         return this;
     }
 
@@ -130,6 +360,13 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
      */
     @Override
     public KeyValueStreamListener<K, V> values(List<V> values) throws IOException {
+        if (groupColumns != null && !draining) {
+            String key = groupKey(values);
+            if (key != null) {
+                groups.add(key, new ArrayList<Object>(values));
+                return this;
+            }
+        }
         boolean hasSource = false;
         if (current == null) {
             current = newObject();
@@ -138,50 +375,139 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
             prev = newObject();
         }
         // execute meta operations
-        for (int i = 0; i < keys.size() && i < values.size(); i++) {
+        for (int i = 0; i < plans.size() && i < values.size(); i++) {
+            KeyPlan plan = plans.get(i);
+            if (plan.getControl() == null) {
+                continue;
+            }
             // v may be null, then continue
             V v = values.get(i);
             if (v == null) {
                 continue;
             }
-            K k = keys.get(i);
-            map(k, v, current);
-            if (ControlKeys._source.name().equals(k)) {
+            map(plan, v, current);
+            if (plan.getControl() == ControlKeys._source && plan.getKind() == KeyPlan.Kind.IGNORED) {
                 hasSource = true;
             }
         }
         if (hasSource) {
             end(current);
             current = newObject();
+            pendingRows = 0;
             return this;
         }
         // switch to next structured object if current is not equal to previous
         if (!current.equals(prev) || current.isEmpty() || shouldAutoGenID) {
-            prev.source(current.source()); // "steal" source
+            moveSource(current, prev); // "steal" source
             end(prev); // here, the element is being prepared for bulk indexing
             prev = current;
             current = newObject();
+            pendingRows = 1;
+        } else {
+            pendingRows++;
         }
         // create current object from values by sequentially merging the values
-        for (int i = 0; i < keys.size() && i < values.size(); i++) {
+        SlotIndexableObject slotted = null;
+        if (current instanceof SlotIndexableObject && ((SlotIndexableObject) current).getLayout() == layout
+                && !((SlotIndexableObject) current).hasSourceMap()) {
+            slotted = (SlotIndexableObject) current;
+        }
+        for (int i = 0; i < plans.size() && i < values.size(); i++) {
+            KeyPlan plan = plans.get(i);
+            if (plan.getKind() == KeyPlan.Kind.IGNORED) {
+                continue;
+            }
             Object v = null;
-            try {
-                String s = values.get(i).toString();
-                // geo content?
-                if (shouldDetectGeo && s.startsWith("POLYGON(") || s.startsWith("POINT(")) {
-                    SpatialContext ctx = JtsSpatialContext.GEO;
-                    Shape shape = ctx.readShapeFromWkt(s);
-                    XContentBuilder builder = jsonBuilder();
-                    builder.startObject();
-                    GeoJSONShapeSerializer.serialize(shape, builder);
-                    builder.endObject();
-                    s = builder.string();
+            if (values.get(i) != null) {
+                if (geoStates[i] != GEO_NEVER) {
+                    v = detectGeo(i, values.get(i));
                 }
-                // JSON content?
-                if (shouldDetectJson) {
-                    XContentParser parser = JsonXContent.jsonXContent.createParser(s);
+                if (v == null && shouldDetectJson && jsonStates[i] != JSON_NEVER) {
+                    try {
+                        v = detectJson(i, values.get(i).toString());
+                    } catch (Exception e) {
+                        // ignore
+                    }
+                }
+            }
+            if(v == null || (v instanceof Map && ((Map) v).isEmpty())) {
+                v = values.get(i);
+            }
+            if (slotted != null) {
+                slotted.add(i, v);
+            } else {
+                Map<String, Object> m = merge(current.source(), plan, v);
+                current.source(m);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * The key of the document of a row
+     *
+     * @param values the values of the row
+     * @return the key, or null if the row has no document ID
+     */
+    private String groupKey(List<V> values) {
+        StringBuilder sb = new StringBuilder();
+        boolean id = false;
+        for (int i : groupColumns) {
+            V v = i < values.size() ? values.get(i) : null;
+            if (plans.get(i).getControl() == ControlKeys._id) {
+                if (v == null) {
+                    return null;
+                }
+                id = true;
+            }
+            sb.append(v).append('\u0000');
+        }
+        return id ? sb.toString() : null;
+    }
+
+    /**
+     * Merge the grouped rows into documents
+     *
+     * @throws IOException if the rows can not be read or merged
+     */
+    @SuppressWarnings({"unchecked"})
+    private void drain() throws IOException {
+        if (groups == null || groups.size() == 0) {
+            return;
+        }
+        draining = true;
+        try {
+            groups.drain(new RowGroupBuffer.RowHandler() {
+                @Override
+                public void row(List<Object> row) throws IOException {
+                    values((List<V>) row);
+                }
+            });
+        } finally {
+            draining = false;
+        }
+    }
+
+    /**
+     * Parse a value of a column as JSON. Only values that start like a JSON object or array are parsed.
+     * While a column is sampled, the column is parsed from now on if the value is JSON, and
+     * not parsed any longer when the last sample is not JSON. With JSON passthrough, the value
+     * is only checked and kept as raw JSON.
+     *
+     * @param i the column index
+     * @param s the value
+     * @return the JSON object or array, or null if the value is not a JSON object or array
+     */
+    private Object detectJson(int i, String s) {
+        Object v = null;
+        if (jsonPassthrough != null) {
+            v = RawJson.of(s, jsonPassthrough);
+        } else if (isJsonStart(s)) {
+            try {
+                XContentParser parser = JsonXContent.jsonXContent.createParser(s);
+                try {
                     XContentParser.Token token = parser.currentToken();
-                    if(token == null) {
+                    if (token == null) {
                         token = parser.nextToken();
                     }
                     if (token == XContentParser.Token.START_OBJECT) {
@@ -189,42 +515,86 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
                     } else if (token == XContentParser.Token.START_ARRAY) {
                         v = parser.list();
                     }
+                } finally {
+                    parser.close();
                 }
             } catch (Exception e) {
-                // ignore
+                // not JSON
             }
-            if(v == null || (v instanceof Map && ((Map) v).isEmpty())) {
-                v = values.get(i);
+        }
+        int state = jsonStates[i];
+        if (state > 0) {
+            jsonStates[i] = v != null ? JSON_CHECK : state - 1;
+        }
+        return v;
+    }
+
+    /**
+     * Decode a value of a column as a geometry. While a column is sampled, only WKT is decoded, the column
+     * is decoded from now on if the value is WKT, and not decoded any longer when the last sample is not WKT.
+     * Values that can not be decoded are kept as they are.
+     *
+     * @param i the column index
+     * @param o the value
+     * @return the geometry, or null if the value is not a geometry
+     */
+    private Object detectGeo(int i, Object o) {
+        int state = geoStates[i];
+        Object v = null;
+        try {
+            v = GeoShape.decode(o, state == GEO_BINARY);
+        } catch (IllegalArgumentException e) {
+            // not a valid geometry
+        }
+        if (state > 0) {
+            geoStates[i] = v != null ? GEO_CHECK : state - 1;
+        }
+        return v;
+    }
+
+    private static boolean isJsonStart(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                return ch == '{' || ch == '[';
             }
-            Map<String, Object> m = merge(current.source(), keys.get(i), v);
-            current.source(m);
         }
-        return this;
+        return false;
     }
 
-    protected void map(K k, V v, IndexableObject current) throws IOException {
-        if (ControlKeys._optype.name().equalsIgnoreCase(k.toString())) {
-            current.optype(v.toString());
-        } else if (ControlKeys._index.name().equalsIgnoreCase(k.toString())) {
-            current.index(v.toString());
-        } else if (ControlKeys._type.name().equalsIgnoreCase(k.toString())) {
-            current.type(v.toString());
-        } else if (ControlKeys._id.name().equalsIgnoreCase(k.toString())) {
-            current.id(v.toString());
-        } else if (ControlKeys._version.name().equalsIgnoreCase(k.toString())) {
-            current.meta(ControlKeys._version.name(), v.toString());
-        } else if (ControlKeys._routing.name().equalsIgnoreCase(k.toString())) {
-            current.meta(ControlKeys._routing.name(), v.toString());
-        } else if (ControlKeys._parent.name().equalsIgnoreCase(k.toString())) {
-            current.meta(ControlKeys._parent.name(), v.toString());
-        } else if (ControlKeys._timestamp.name().equalsIgnoreCase(k.toString())) {
-            current.meta(ControlKeys._timestamp.name(), v.toString());
-        } else if (ControlKeys._ttl.name().equalsIgnoreCase(k.toString())) {
-            current.meta(ControlKeys._ttl.name(), v.toString());
-        } else if (ControlKeys._job.name().equalsIgnoreCase(k.toString())) {
-            current.meta(ControlKeys._job.name(), v.toString());
-        } else if (ControlKeys._source.name().equalsIgnoreCase(k.toString())) {
-            current.source(JsonXContent.jsonXContent.createParser(v.toString()).map());
+    protected void map(KeyPlan plan, V v, IndexableObject current) throws IOException {
+        switch (plan.getControl()) {
+            case _optype:
+                current.optype(v.toString());
+                break;
+            case _index:
+                current.index(v.toString());
+                break;
+            case _type:
+                current.type(v.toString());
+                break;
+            case _id:
+                current.id(v.toString());
+                break;
+            case _version:
+            case _routing:
+            case _parent:
+            case _timestamp:
+            case _ttl:
+            case _job:
+                current.meta(plan.getControl().name(), v.toString());
+                break;
+            case _source:
+                if (jsonPassthrough != null) {
+                    RawJson json = RawJson.of(v, jsonPassthrough);
+                    if (json == null || !json.isObject()) {
+                        throw new IOException("_source is not a JSON object: " + v);
+                    }
+                    current.rawSource(json);
+                } else {
+                    current.source(JsonXContent.jsonXContent.createParser(v.toString()).map());
+                }
+                break;
         }
     }
 
@@ -235,12 +605,14 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
      * @throws java.io.IOException if this method fails
      */
     public KeyValueStreamListener<K, V> end() throws IOException {
+        drain();
         if (prev != null) {
-            prev.source(current.source());
+            moveSource(current, prev);
             end(prev);
         }
         prev = newObject();
         current = newObject();
+        pendingRows = 0;
         return this;
     }
 
@@ -266,31 +638,33 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
      * a head key position. Then, the prefix given in the path is considered
      * illegal.
      */
-    private final static Set<String> controlKeys = ControlKeys.makeSet();
+    protected Map<String, Object> merge(Map<String, Object> map, Object k, Object value) {
+        return merge(map, KeyPlan.compile(k.toString(), delimiter), value);
+    }
 
+    /**
+     * Merge key/value pair to a map holding a JSON object, by following the compiled path of the key.
+     *
+     * @param map   the map
+     * @param plan  the compiled key
+     * @param value the value
+     * @return the map
+     */
     @SuppressWarnings({"unchecked"})
-    protected Map<String, Object> merge(Map<String, Object> map, Object k, Object value) {
-        String key = k.toString();
-        if (controlKeys.contains(key)) {
-            return map;
-        }
-        int i = key.indexOf(delimiter);
-        String index = null;
-        boolean isSequence = false;
-        Matcher matcher = p.matcher(key);
-        if (matcher.matches()) {
-            isSequence = key.indexOf("[") < i;
-        }
-        if (i <= 0 || isSequence) {
-            isSequence = matcher.matches();
-            String head = key;
-            if (isSequence) {
-                head = matcher.group(1);
-                index = matcher.group(2);
-            }
-            if (index == null || index.isEmpty()) {
-                map.put(head, new Values(map.get(head), value, isSequence));
-            } else {
+    protected Map<String, Object> merge(Map<String, Object> map, KeyPlan plan, Object value) {
+        String head = plan.getHead();
+        switch (plan.getKind()) {
+            case IGNORED:
+                break;
+            case FIELD:
+                Object values = map.get(head);
+                if (values instanceof Values) {
+                    ((Values) values).add(value, plan.isSequence());
+                } else {
+                    map.put(head, new Values(values, value, plan.isSequence()));
+                }
+                break;
+            case INDEXED: {
                 if (!map.containsKey(head)) {
                     map.put(head, new LinkedList());
                 }
@@ -300,52 +674,41 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
                     int j = l.isEmpty() ? -1 : l.size() - 1;
                     if (j >= 0) {
                         Map<String, Object> m = (Map<String, Object>) l.get(j);
-                        int delimiterOffset = index.indexOf(delimiter);
-                        if (delimiterOffset >= 0) {
-                            if (!containsKeyInDotNotation(index, m)) {
-                                l.set(j, merge(m, index, value)); // append
-                            } else {
-                                l.add(merge(new LinkedHashMap(), index, value));
-                            }
+                        boolean contains = plan.indexHasDelimiter() ?
+                                containsKeyInDotNotation(plan.getIndex(), m) : m.containsKey(plan.getIndex());
+                        if (!contains) {
+                            l.set(j, merge(m, plan.getNext(), value)); // append
                         } else {
-                            if (!m.containsKey(index)) {
-                                l.set(j, merge(m, index, value)); // append
-                            } else {
-                                l.add(merge(new LinkedHashMap(), index, value));
-                            }
+                            l.add(merge(new LinkedHashMap(), plan.getNext(), value));
                         }
                     } else {
-                        l.add(merge(new LinkedHashMap(), index, value));
+                        l.add(merge(new LinkedHashMap(), plan.getNext(), value));
                     }
                 }
+                break;
             }
-        } else {
-            String head = key.substring(0, i);
-            matcher = p.matcher(head);
-            isSequence = matcher.matches();
-            if (isSequence) {
-                head = matcher.group(1);
-            }
-            String tail = key.substring(i + 1);
-            if (map.containsKey(head)) {
-                Object o = map.get(head);
-                if (o instanceof Map) {
-                    merge((Map<String, Object>) o, tail, value);
-                } else if (o instanceof Values) {
-                    // head of Values a Map?
-                    o = ((Values) o).getValues()[0];
+            case PATH: {
+                if (map.containsKey(head)) {
+                    Object o = map.get(head);
                     if (o instanceof Map) {
-                        merge((Map<String, Object>) o, tail, value);
+                        merge((Map<String, Object>) o, plan.getNext(), value);
+                    } else if (o instanceof Values) {
+                        // head of Values a Map?
+                        o = ((Values) o).getValues()[0];
+                        if (o instanceof Map) {
+                            merge((Map<String, Object>) o, plan.getNext(), value);
+                        } else {
+                            throw new IllegalArgumentException("illegal head: " + head);
+                        }
                     } else {
                         throw new IllegalArgumentException("illegal head: " + head);
                     }
                 } else {
-                    throw new IllegalArgumentException("illegal head: " + head);
+                    Map<String, Object> m = new LinkedHashMap<String, Object>();
+                    map.put(head, m);
+                    merge(m, plan.getNext(), value);
                 }
-            } else {
-                Map<String, Object> m = new LinkedHashMap<String, Object>();
-                map.put(head, m);
-                merge(m, tail, value);
+                break;
             }
         }
         return map;
@@ -357,16 +720,33 @@ public class PlainKeyValueStreamListener<K, V> implements KeyValueStreamListener
      * @return a new structured object
      */
     private IndexableObject newObject() {
-        Map<String,String> map = new HashMap<>();
-        map.put("ignore_null", Boolean.toString(shouldIgnoreNull));
-        map.put("force_array", "false");
-        return new PlainIndexableObject(new ToXContent.MapParams(map));
+        if (params == null) {
+            Map<String,String> map = new HashMap<>();
+            map.put("ignore_null", Boolean.toString(shouldIgnoreNull));
+            map.put("force_array", "false");
+            params = new ToXContent.MapParams(map);
+        }
+        return layout != null ? new SlotIndexableObject(layout, params) : new PlainIndexableObject(params);
+    }
+
+    /**
+     * Move the source of an object to another object
+     *
+     * @param from the object that gives the source
+     * @param to   the object that takes the source
+     */
+    private void moveSource(IndexableObject from, IndexableObject to) {
+        if (from instanceof SlotIndexableObject && to instanceof SlotIndexableObject) {
+            ((SlotIndexableObject) to).source((SlotIndexableObject) from);
+        } else {
+            to.source(from.source());
+        }
     }
 
     private boolean shouldAutoGenID() {
         boolean b = true;
-        for (K key : keys) {
-            if (ControlKeys._id.name().equals(key)) {
+        for (KeyPlan plan : plans) {
+            if (plan.getControl() == ControlKeys._id && plan.getKind() == KeyPlan.Kind.IGNORED) {
                 b = false;
                 break;
             }
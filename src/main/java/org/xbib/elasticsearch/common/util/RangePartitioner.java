@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Splits the value range of a numeric or date column into disjoint partitions,
+ * and rewrites an SQL statement so that it selects a single partition.
+ *
+ * The lower bound of a partition is inclusive, the upper bound is exclusive,
+ * except for the last partition, where the upper bound is inclusive.
+ */
+public class RangePartitioner {
+
+    private RangePartitioner() {
+    }
+
+    /**
+     * Build a statement that selects the minimum and maximum value of a column
+     *
+     * @param sql    the SQL statement
+     * @param key    the split column
+     * @return the SQL statement for selecting the value range
+     */
+    public static String rangeSQL(String sql, String key) {
+        String column = KeysetPagination.column(key);
+        return "select min(" + column + "), max(" + column + ") from (" + sql + ") range_partition";
+    }
+
+    /**
+     * Build a statement that selects a partition. The lower and upper bound must be bound
+     * as the last two parameters of the statement.
+     *
+     * @param sql    the SQL statement
+     * @param key    the split column
+     * @param last   true if this is the last partition with inclusive upper bound
+     * @return the SQL statement for selecting a partition
+     */
+    public static String partitionSQL(String sql, String key, boolean last) {
+        String column = KeysetPagination.column(key);
+        return "select * from (" + sql + ") range_partition where " + column + " >= ? and " + column
+                + (last ? " <= ?" : " < ?");
+    }
+
+    /**
+     * Split a value range into partitions. The minimum and the maximum are the lower bound of the first
+     * partition and the upper bound of the last partition as they are, so no value is lost by a conversion,
+     * e.g. the nanoseconds of a timestamp, or the digits of a decimal.
+     *
+     * @param min   the minimum value, a number or a date
+     * @param max   the maximum value, a number or a date
+     * @param count the requested number of partitions
+     * @return the list of partitions, empty if there is no value range
+     */
+    public static List<Range> split(Object min, Object max, int count) {
+        List<Range> ranges = new LinkedList<Range>();
+        if (min == null || max == null || count < 1) {
+            return ranges;
+        }
+        if (min instanceof java.util.Date && max instanceof java.util.Date) {
+            BigInteger lo = BigInteger.valueOf(((java.util.Date) min).getTime());
+            BigInteger hi = BigInteger.valueOf(((java.util.Date) max).getTime());
+            List<BigInteger> bounds = split(lo, hi, count);
+            for (int i = 0; i < bounds.size() - 1; i++) {
+                ranges.add(new Range(new Timestamp(bounds.get(i).longValue()),
+                        new Timestamp(bounds.get(i + 1).longValue()), i == bounds.size() - 2));
+            }
+        } else if (min instanceof Number && max instanceof Number) {
+            if (isIntegral((Number) min) && isIntegral((Number) max)) {
+                List<BigInteger> bounds = split(toBigInteger((Number) min), toBigInteger((Number) max), count);
+                for (int i = 0; i < bounds.size() - 1; i++) {
+                    ranges.add(new Range(toValue(bounds.get(i)), toValue(bounds.get(i + 1)), i == bounds.size() - 2));
+                }
+            } else {
+                double lo = ((Number) min).doubleValue();
+                double hi = ((Number) max).doubleValue();
+                int n = lo < hi ? count : 1;
+                double step = (hi - lo) / n;
+                for (int i = 0; i < n; i++) {
+                    boolean last = i == n - 1;
+                    ranges.add(new Range(lo + i * step, last ? hi : lo + (i + 1) * step, last));
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("can not split range of " + min.getClass().getName()
+                    + " and " + max.getClass().getName() + ", only numbers and dates are allowed");
+        }
+        if (!ranges.isEmpty()) {
+            Range first = ranges.remove(0);
+            ranges.add(0, new Range(min, first.getUpper(), first.isLast()));
+            Range last = ranges.remove(ranges.size() - 1);
+            ranges.add(new Range(last.getLower(), max, last.isLast()));
+        }
+        return ranges;
+    }
+
+    /**
+     * Split a range of integral values
+     *
+     * @return the bounds of the partitions, from the minimum to the maximum
+     */
+    private static List<BigInteger> split(BigInteger lo, BigInteger hi, int count) {
+        List<BigInteger> list = new LinkedList<BigInteger>();
+        if (lo.compareTo(hi) > 0) {
+            return list;
+        }
+        BigInteger width = hi.subtract(lo).add(BigInteger.ONE);
+        BigInteger n = BigInteger.valueOf(count).min(width);
+        BigInteger step = width.add(n).subtract(BigInteger.ONE).divide(n);
+        BigInteger lower = lo;
+        list.add(lower);
+        for (int i = 0; i < n.intValue(); i++) {
+            BigInteger upper = lower.add(step);
+            if (i == n.intValue() - 1 || upper.compareTo(hi) > 0) {
+                list.add(hi);
+                break;
+            }
+            list.add(upper);
+            lower = upper;
+        }
+        return list;
+    }
+
+    private static boolean isIntegral(Number number) {
+        if (number instanceof BigDecimal) {
+            BigDecimal bd = (BigDecimal) number;
+            return bd.signum() == 0 || bd.scale() <= 0 || bd.stripTrailingZeros().scale() <= 0;
+        }
+        return !(number instanceof Double || number instanceof Float);
+    }
+
+    private static BigInteger toBigInteger(Number number) {
+        if (number instanceof BigDecimal) {
+            return ((BigDecimal) number).toBigIntegerExact();
+        }
+        if (number instanceof BigInteger) {
+            return (BigInteger) number;
+        }
+        return BigInteger.valueOf(number.longValue());
+    }
+
+    /**
+     * A bound as long if possible, otherwise as decimal, because JDBC drivers can not bind a BigInteger
+     */
+    private static Object toValue(BigInteger value) {
+        return value.bitLength() < 64 ? (Object) value.longValue() : new BigDecimal(value);
+    }
+
+    /**
+     * A partition of a value range
+     */
+    public static class Range {
+
+        private final Object lower;
+
+        private final Object upper;
+
+        private final boolean last;
+
+        public Range(Object lower, Object upper, boolean last) {
+            this.lower = lower;
+            this.upper = upper;
+            this.last = last;
+        }
+
+        public Object getLower() {
+            return lower;
+        }
+
+        public Object getUpper() {
+            return upper;
+        }
+
+        public boolean isLast() {
+            return last;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + lower + "," + upper + (last ? "]" : ")");
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A JSON object or array that is embedded into a document as it is, without parsing it into a map
+ * and serializing the map again.
+ *
+ * The JSON is checked once, when it is read. An object is written as a raw field, so its bytes are
+ * copied into the document. An array, or a value that is not a field of its own, is copied token by token.
+ * JSON with line breaks is also copied token by token, because a document in the bulk format must be
+ * on a single line.
+ */
+public class RawJson implements ToXContent {
+
+    /**
+     * How raw JSON is checked
+     */
+    public enum Mode {
+        /**
+         * Parse all tokens, no objects are built
+         */
+        VALIDATE,
+        /**
+         * Only check that brackets and quotes are balanced
+         */
+        SCAN
+    }
+
+    private final byte[] bytes;
+
+    private final boolean object;
+
+    private final boolean singleLine;
+
+    private RawJson(byte[] bytes, boolean object) {
+        this.bytes = bytes;
+        this.object = object;
+        this.singleLine = !hasLineBreak(bytes);
+    }
+
+    /**
+     * Check a value and take it as raw JSON
+     *
+     * @param value the value, a string or UTF-8 bytes
+     * @param mode  how the value is checked
+     * @return the raw JSON, or null if the value is not a JSON object or array
+     */
+    public static RawJson of(Object value, Mode mode) {
+        byte[] b = value instanceof byte[] ? (byte[]) value : value.toString().getBytes(StandardCharsets.UTF_8);
+        int i = skipWhitespace(b, 0);
+        if (i == b.length || (b[i] != '{' && b[i] != '[')) {
+            return null;
+        }
+        boolean valid = mode == Mode.SCAN ? scan(b, i) : validate(b);
+        return valid ? new RawJson(b, b[i] == '{') : null;
+    }
+
+    /**
+     * Check if this is a JSON object
+     *
+     * @return true for an object, false for an array
+     */
+    public boolean isObject() {
+        return object;
+    }
+
+    /**
+     * Check if the JSON has no line breaks, so the bytes can be used in the bulk format
+     *
+     * @return true if the JSON is on a single line
+     */
+    public boolean isSingleLine() {
+        return singleLine;
+    }
+
+    public BytesReference bytes() {
+        return new BytesArray(bytes);
+    }
+
+    /**
+     * Parse the JSON into a map, for consumers that need the source as a map
+     *
+     * @return the map
+     * @throws IOException if the JSON is not an object or can not be parsed
+     */
+    public Map<String, Object> map() throws IOException {
+        XContentParser parser = JsonXContent.jsonXContent.createParser(bytes);
+        try {
+            return parser.map();
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Write this JSON as a field. Objects on a single line are copied as raw bytes.
+     *
+     * @param builder the builder
+     * @param name    the field name
+     * @throws IOException if the JSON can not be written
+     */
+    public void toXContent(XContentBuilder builder, String name) throws IOException {
+        if (object && singleLine) {
+            builder.rawField(name, bytes());
+        } else {
+            builder.field(name);
+            toXContent(builder, EMPTY_PARAMS);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        XContentParser parser = JsonXContent.jsonXContent.createParser(bytes);
+        try {
+            parser.nextToken();
+            builder.copyCurrentStructure(parser);
+        } finally {
+            parser.close();
+        }
+        return builder;
+    }
+
+    /**
+     * The raw JSON of a value that is written as a single field value
+     *
+     * @param o          the value, maybe in {@link Values}
+     * @param forceArray true if single values are written as arrays
+     * @return the raw JSON, or null if the value is not a single raw JSON value
+     */
+    static RawJson single(Object o, boolean forceArray) {
+        if (forceArray) {
+            return null;
+        }
+        if (o instanceof Values) {
+            Object[] values = ((Values) o).getValues();
+            o = values.length == 1 ? values[0] : null;
+        }
+        return o instanceof RawJson ? (RawJson) o : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RawJson && Arrays.equals(bytes, ((RawJson) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean hasLineBreak(byte[] b) {
+        for (byte c : b) {
+            if (c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean validate(byte[] b) {
+        try {
+            XContentParser parser = JsonXContent.jsonXContent.createParser(b);
+            try {
+                parser.nextToken();
+                parser.skipChildren();
+                return parser.nextToken() == null;
+            } finally {
+                parser.close();
+            }
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check that the brackets outside of strings are balanced, and nothing follows the root value
+     */
+    private static boolean scan(byte[] b, int start) {
+        byte[] stack = new byte[16];
+        int depth = 0;
+        boolean string = false;
+        int i = start;
+        for (; i < b.length; i++) {
+            byte c = b[i];
+            if (string) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    string = false;
+                }
+            } else if (c == '"') {
+                string = true;
+            } else if (c == '{' || c == '[') {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = c == '{' ? (byte) '}' : (byte) ']';
+            } else if (c == '}' || c == ']') {
+                if (depth == 0 || stack[--depth] != c) {
+                    return false;
+                }
+                if (depth == 0) {
+                    break;
+                }
+            }
+        }
+        return depth == 0 && !string && i < b.length && skipWhitespace(b, i + 1) == b.length;
+    }
+
+    private static int skipWhitespace(byte[] b, int i) {
+        while (i < b.length && (b[i] == ' ' || b[i] == '\t' || b[i] == '\n' || b[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free ring buffer for exactly one producer thread and one consumer thread.
+ *
+ * The capacity is rounded up to a power of two. The producer publishes an element by advancing
+ * the tail, the consumer frees a slot by advancing the head, so no locks are needed.
+ *
+ * @param <T> the element type
+ */
+public class RingBuffer<T> {
+
+    private final AtomicReferenceArray<T> elements;
+
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();
+
+    private final AtomicLong tail = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.elements = new AtomicReferenceArray<T>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Add an element, called by the producer thread only
+     *
+     * @param element the element, not null
+     * @return true if the element was added, false if the buffer is full
+     */
+    public boolean offer(T element) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+        elements.lazySet((int) t & mask, element);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Remove an element, called by the consumer thread only
+     *
+     * @return the element, or null if the buffer is empty
+     */
+    public T poll() {
+        long h = head.get();
+        if (h >= tail.get()) {
+            return null;
+        }
+        int index = (int) h & mask;
+        T element = elements.get(index);
+        elements.lazySet(index, null);
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    /**
+     * The number of elements in the buffer. The value is a snapshot if producer or consumer are active.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        long h = head.get();
+        long t = tail.get();
+        return (int) Math.max(0L, t - h);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Groups rows by a key, so that rows of the same document can be merged even if they do not arrive
+ * one after another.
+ *
+ * The rows are kept in a hash table under a memory limit. When the estimated size of the rows exceeds
+ * the limit, the groups are sorted by key and written as a run to a file in the spill directory.
+ * When the rows are drained, the runs and the groups in memory are merged by key. The rows of a
+ * key are passed in the order they were added. Without runs, the groups are passed in the order of
+ * their first row.
+ *
+ * Values of types that have no spill encoding are spilled as strings.
+ */
+public class RowGroupBuffer implements Closeable {
+
+    private final static Logger logger = LogManager.getLogger("importer.jdbc.group");
+
+    /**
+     * Receives the rows of the groups
+     */
+    public interface RowHandler {
+        void row(List<Object> row) throws IOException;
+    }
+
+    private final static int ROW_OVERHEAD = 64;
+
+    private final static int NULL = 0;
+    private final static int STRING = 1;
+    private final static int INTEGER = 2;
+    private final static int LONG = 3;
+    private final static int DOUBLE = 4;
+    private final static int FLOAT = 5;
+    private final static int BOOLEAN = 6;
+    private final static int BYTES = 7;
+    private final static int DECIMAL = 8;
+    private final static int BIGINTEGER = 9;
+    private final static int SHORT = 10;
+    private final static int DATE = 11;
+    private final static int LIST = 12;
+    private final static int MAP = 13;
+    private final static int ARRAY = 14;
+
+    private final long memoryLimit;
+
+    private final File spillDirectory;
+
+    private final Map<String, List<List<Object>>> groups = new LinkedHashMap<String, List<List<Object>>>();
+
+    private final List<File> runs = new ArrayList<File>();
+
+    private long memory;
+
+    private int size;
+
+    /**
+     * Create a row group buffer
+     *
+     * @param memoryLimit    the estimated size in bytes of the rows kept in memory
+     * @param spillDirectory the directory for the runs, or null for the default temporary directory
+     */
+    public RowGroupBuffer(long memoryLimit, File spillDirectory) {
+        this.memoryLimit = memoryLimit;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Add a row
+     *
+     * @param key the key of the group
+     * @param row the row values, the list is kept
+     * @throws IOException if the groups can not be spilled
+     */
+    public void add(String key, List<Object> row) throws IOException {
+        List<List<Object>> group = groups.get(key);
+        if (group == null) {
+            group = new ArrayList<List<Object>>(2);
+            groups.put(key, group);
+            memory += ROW_OVERHEAD + estimate(key);
+        }
+        group.add(row);
+        size++;
+        memory += ROW_OVERHEAD;
+        for (Object o : row) {
+            memory += estimate(o);
+        }
+        if (memory > memoryLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * The number of rows in the buffer
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of runs spilled to files
+     *
+     * @return the number of runs
+     */
+    public int getRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Pass all rows, grouped by key, and empty the buffer
+     *
+     * @param handler the row handler
+     * @throws IOException if the runs can not be read or the handler fails
+     */
+    public void drain(RowHandler handler) throws IOException {
+        try {
+            if (runs.isEmpty()) {
+                for (List<List<Object>> group : groups.values()) {
+                    for (List<Object> row : group) {
+                        handler.row(row);
+                    }
+                }
+                return;
+            }
+            merge(handler);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Discard the rows and delete the runs
+     */
+    @Override
+    public void close() {
+        groups.clear();
+        memory = 0L;
+        size = 0;
+        for (File file : runs) {
+            if (!file.delete()) {
+                logger.warn("can't delete {}", file);
+            }
+        }
+        runs.clear();
+    }
+
+    private void spill() throws IOException {
+        File file = File.createTempFile("jdbc-group-", ".run", spillDirectory);
+        file.deleteOnExit();
+        runs.add(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        try {
+            for (Map.Entry<String, List<List<Object>>> me : sorted()) {
+                writeString(out, me.getKey());
+                out.writeInt(me.getValue().size());
+                for (List<Object> row : me.getValue()) {
+                    out.writeInt(row.size());
+                    for (Object o : row) {
+                        write(out, o);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        logger.debug("spilled {} rows in {} groups to {}", size, groups.size(), file);
+        groups.clear();
+        memory = 0L;
+    }
+
+    private List<Map.Entry<String, List<List<Object>>>> sorted() {
+        List<Map.Entry<String, List<List<Object>>>> list =
+                new ArrayList<Map.Entry<String, List<List<Object>>>>(groups.entrySet());
+        Collections.sort(list, new Comparator<Map.Entry<String, List<List<Object>>>>() {
+            @Override
+            public int compare(Map.Entry<String, List<List<Object>>> e1, Map.Entry<String, List<List<Object>>> e2) {
+                return e1.getKey().compareTo(e2.getKey());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Merge the runs and the groups in memory by key. For equal keys, the earlier run comes first,
+     * and the groups in memory come last.
+     */
+    private void merge(RowHandler handler) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size() + 1, new Comparator<Run>() {
+            @Override
+            public int compare(Run r1, Run r2) {
+                int c = r1.key.compareTo(r2.key);
+                return c != 0 ? c : Integer.compare(r1.order, r2.order);
+            }
+        });
+        List<Run> all = new ArrayList<Run>(runs.size() + 1);
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                all.add(new FileRun(i, runs.get(i)));
+            }
+            all.add(new MemoryRun(runs.size(), sorted()));
+            for (Run run : all) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                for (List<Object> row : run.rows) {
+                    handler.row(row);
+                }
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (Run run : all) {
+                run.close();
+            }
+        }
+    }
+
+    private abstract static class Run implements Closeable {
+
+        final int order;
+
+        String key;
+
+        List<List<Object>> rows;
+
+        Run(int order) {
+            this.order = order;
+        }
+
+        /**
+         * Move to the next group
+         *
+         * @return false if there are no more groups
+         */
+        abstract boolean next() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static class MemoryRun extends Run {
+
+        private final List<Map.Entry<String, List<List<Object>>>> groups;
+
+        private int i;
+
+        MemoryRun(int order, List<Map.Entry<String, List<List<Object>>>> groups) {
+            super(order);
+            this.groups = groups;
+        }
+
+        @Override
+        boolean next() {
+            if (i >= groups.size()) {
+                return false;
+            }
+            Map.Entry<String, List<List<Object>>> me = groups.get(i++);
+            key = me.getKey();
+            rows = me.getValue();
+            return true;
+        }
+    }
+
+    private static class FileRun extends Run {
+
+        private final DataInputStream in;
+
+        FileRun(int order, File file) throws IOException {
+            super(order);
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        }
+
+        @Override
+        boolean next() throws IOException {
+            try {
+                key = readString(in);
+            } catch (EOFException e) {
+                return false;
+            }
+            int n = in.readInt();
+            rows = new ArrayList<List<Object>>(n);
+            for (int i = 0; i < n; i++) {
+                int m = in.readInt();
+                List<Object> row = new ArrayList<Object>(m);
+                for (int j = 0; j < m; j++) {
+                    row.add(read(in));
+                }
+                rows.add(row);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Estimate the heap size of a value
+     *
+     * @param o the value
+     * @return the estimated size in bytes
+     */
+    static long estimate(Object o) {
+        if (o == null) {
+            return 8;
+        }
+        if (o instanceof String) {
+            return 48 + 2 * ((String) o).length();
+        }
+        if (o instanceof byte[]) {
+            return 24 + ((byte[]) o).length;
+        }
+        if (o instanceof Number || o instanceof Boolean) {
+            return 24;
+        }
+        if (o instanceof List) {
+            long n = 40;
+            for (Object v : (List) o) {
+                n += 8 + estimate(v);
+            }
+            return n;
+        }
+        if (o instanceof Map) {
+            long n = 64;
+            for (Object me : ((Map) o).entrySet()) {
+                n += 40 + estimate(((Map.Entry) me).getKey()) + estimate(((Map.Entry) me).getValue());
+            }
+            return n;
+        }
+        if (o instanceof Object[]) {
+            long n = 24;
+            for (Object v : (Object[]) o) {
+                n += 8 + estimate(v);
+            }
+            return n;
+        }
+        return 64;
+    }
+
+    private static void write(DataOutputStream out, Object o) throws IOException {
+        if (o == null) {
+            out.writeByte(NULL);
+        } else if (o instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) o);
+        } else if (o instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) o);
+        } else if (o instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) o);
+        } else if (o instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) o);
+        } else if (o instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) o);
+        } else if (o instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) o);
+        } else if (o instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeInt(((byte[]) o).length);
+            out.write((byte[]) o);
+        } else if (o instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            writeString(out, o.toString());
+        } else if (o instanceof BigInteger) {
+            out.writeByte(BIGINTEGER);
+            writeString(out, o.toString());
+        } else if (o instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) o);
+        } else if (o instanceof Date) {
+            // java.sql.Date, Time, and Timestamp come back as java.util.Date
+            out.writeByte(DATE);
+            out.writeLong(((Date) o).getTime());
+        } else if (o instanceof List) {
+            out.writeByte(LIST);
+            out.writeInt(((List) o).size());
+            for (Object v : (List) o) {
+                write(out, v);
+            }
+        } else if (o instanceof Map) {
+            out.writeByte(MAP);
+            out.writeInt(((Map) o).size());
+            for (Object e : ((Map) o).entrySet()) {
+                Map.Entry me = (Map.Entry) e;
+                writeString(out, String.valueOf(me.getKey()));
+                write(out, me.getValue());
+            }
+        } else if (o instanceof Object[]) {
+            out.writeByte(ARRAY);
+            out.writeInt(((Object[]) o).length);
+            for (Object v : (Object[]) o) {
+                write(out, v);
+            }
+        } else {
+            out.writeByte(STRING);
+            writeString(out, o.toString());
+        }
+    }
+
+    private static Object read(DataInputStream in) throws IOException {
+        int type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case BOOLEAN:
+                return in.readBoolean();
+            case BYTES: {
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                return b;
+            }
+            case DECIMAL:
+                return new BigDecimal(readString(in));
+            case BIGINTEGER:
+                return new BigInteger(readString(in));
+            case SHORT:
+                return in.readShort();
+            case DATE:
+                return new Date(in.readLong());
+            case LIST: {
+                int n = in.readInt();
+                List<Object> list = new ArrayList<Object>(n);
+                for (int i = 0; i < n; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            }
+            case MAP: {
+                int n = in.readInt();
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                for (int i = 0; i < n; i++) {
+                    String key = readString(in);
+                    map.put(key, read(in));
+                }
+                return map;
+            }
+            case ARRAY: {
+                Object[] array = new Object[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = read(in);
+                }
+                return array;
+            }
+            default:
+                throw new IOException("invalid spill value type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -16,6 +16,7 @@
 package org.xbib.elasticsearch.common.util;
 
 import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 
 import java.io.FileInputStream;
@@ -46,6 +47,18 @@ public class SQLCommand {
 
     private boolean callable;
 
+    private String partitionColumn;
+
+    private int partitions = 1;
+
+    private String pageKey;
+
+    private int pageSize;
+
+    private int batchSize;
+
+    private TimeValue batchInterval = TimeValue.timeValueSeconds(1);
+
     public SQLCommand setSQL(String sql) throws IOException {
         if (sql.endsWith(".sql")) {
             Reader r = new InputStreamReader(new FileInputStream(sql), "UTF-8");
@@ -109,6 +122,110 @@ public class SQLCommand {
         return p3 < 0 || p1 < p2 && p1 < p3;
     }
 
+    /**
+     * Set the column for splitting the statement into range partitions.
+     *
+     * @param partitionColumn the numeric or date column for range partitioning
+     * @return this command
+     */
+    public SQLCommand setPartitionColumn(String partitionColumn) {
+        this.partitionColumn = partitionColumn;
+        return this;
+    }
+
+    public String getPartitionColumn() {
+        return partitionColumn;
+    }
+
+    /**
+     * Set the number of range partitions. Each partition is fetched by its own connection and thread.
+     *
+     * @param partitions the number of partitions
+     * @return this command
+     */
+    public SQLCommand setPartitions(int partitions) {
+        this.partitions = partitions;
+        return this;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public boolean isPartitioned() {
+        return partitionColumn != null && partitions > 1 && !callable && isQuery();
+    }
+
+    /**
+     * Set the key column for keyset pagination. The key must be unique for each row.
+     *
+     * @param pageKey the key column
+     * @return this command
+     */
+    public SQLCommand setPageKey(String pageKey) {
+        this.pageKey = pageKey;
+        return this;
+    }
+
+    public String getPageKey() {
+        return pageKey;
+    }
+
+    /**
+     * Set the maximum number of rows of a page in keyset pagination.
+     *
+     * @param pageSize the page size
+     * @return this command
+     */
+    public SQLCommand setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isPaged() {
+        return pageKey != null && pageSize > 0 && !callable && isQuery();
+    }
+
+    /**
+     * Set the batch size of a write statement. A batched write statement is executed once for each row
+     * fetched by the query statements, the parameters are bound from the row. The rows are collected
+     * and executed in batches after the sink has acknowledged the documents of the rows.
+     *
+     * @param batchSize the maximum number of rows in a batch, or 0 for no batching
+     * @return this command
+     */
+    public SQLCommand setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the maximum time a row may wait in a batch before the batch is executed.
+     *
+     * @param batchInterval the batch interval
+     * @return this command
+     */
+    public SQLCommand setBatchInterval(TimeValue batchInterval) {
+        this.batchInterval = batchInterval;
+        return this;
+    }
+
+    public TimeValue getBatchInterval() {
+        return batchInterval;
+    }
+
+    public boolean isBatched() {
+        return batchSize > 0 && !callable && !isQuery();
+    }
+
     /**
      * A register is for parameters of a callable statement.
      *
@@ -154,6 +271,24 @@ public class SQLCommand {
                     if (m.containsKey("register")) {
                         command.setRegister(XContentMapValues.nodeMapValue(m.get("register"), null));
                     }
+                    if (m.containsKey("partition_column")) {
+                        command.setPartitionColumn(XContentMapValues.nodeStringValue(m.get("partition_column"), null));
+                    }
+                    if (m.containsKey("partitions")) {
+                        command.setPartitions(XContentMapValues.nodeIntegerValue(m.get("partitions"), 1));
+                    }
+                    if (m.containsKey("page_key")) {
+                        command.setPageKey(XContentMapValues.nodeStringValue(m.get("page_key"), null));
+                    }
+                    if (m.containsKey("page_size")) {
+                        command.setPageSize(XContentMapValues.nodeIntegerValue(m.get("page_size"), 0));
+                    }
+                    if (m.containsKey("batch_size")) {
+                        command.setBatchSize(XContentMapValues.nodeIntegerValue(m.get("batch_size"), 0));
+                    }
+                    if (m.containsKey("batch_interval")) {
+                        command.setBatchInterval(XContentMapValues.nodeTimeValue(m.get("batch_interval"), TimeValue.timeValueSeconds(1)));
+                    }
                 } else if (entry instanceof String) {
                     command.setSQL((String) entry);
                 }
@@ -166,7 +301,10 @@ public class SQLCommand {
     }
 
     public String toString() {
-        return "statement=" + sql + " parameter=" + params + " write=" + write + " callable=" + callable;
+        return "statement=" + sql + " parameter=" + params + " write=" + write + " callable=" + callable
+                + (partitionColumn != null ? " partition_column=" + partitionColumn + " partitions=" + partitions : "")
+                + (pageKey != null ? " page_key=" + pageKey + " page_size=" + pageSize : "")
+                + (batchSize > 0 ? " batch_size=" + batchSize + " batch_interval=" + batchInterval : "");
     }
 
 }
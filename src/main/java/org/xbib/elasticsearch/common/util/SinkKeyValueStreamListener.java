@@ -17,7 +17,9 @@ package org.xbib.elasticsearch.common.util;
 
 import org.xbib.elasticsearch.jdbc.strategy.Sink;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 
 /**
  * This class consumes pairs from a key/value stream
@@ -47,6 +49,36 @@ public class SinkKeyValueStreamListener<K, V> extends PlainKeyValueStreamListene
         return this;
     }
 
+    public SinkKeyValueStreamListener<K, V> jsonColumns(Collection<String> jsonColumns) {
+        super.jsonColumns(jsonColumns);
+        return this;
+    }
+
+    public SinkKeyValueStreamListener<K, V> jsonSampleSize(int jsonSampleSize) {
+        super.jsonSampleSize(jsonSampleSize);
+        return this;
+    }
+
+    public SinkKeyValueStreamListener<K, V> jsonPassthrough(RawJson.Mode jsonPassthrough) {
+        super.jsonPassthrough(jsonPassthrough);
+        return this;
+    }
+
+    public SinkKeyValueStreamListener<K, V> geoColumns(Collection<String> geoColumns) {
+        super.geoColumns(geoColumns);
+        return this;
+    }
+
+    public SinkKeyValueStreamListener<K, V> geoSampleSize(int geoSampleSize) {
+        super.geoSampleSize(geoSampleSize);
+        return this;
+    }
+
+    public SinkKeyValueStreamListener<K, V> groupById(long memoryLimit, File spillDirectory) {
+        super.groupById(memoryLimit, spillDirectory);
+        return this;
+    }
+
     /**
      * The object is complete. Push it to the sink.
      *
@@ -58,7 +90,22 @@ public class SinkKeyValueStreamListener<K, V> extends PlainKeyValueStreamListene
         if (object.isEmpty()) {
             return this;
         }
-        if (output != null) {
+        write(object);
+        return this;
+    }
+
+    /**
+     * Write an object to the sink. A sink may be shared by more than one listener,
+     * so the index operations are serialized on the sink.
+     *
+     * @param object the object
+     * @throws java.io.IOException if this method fails
+     */
+    protected void write(IndexableObject object) throws IOException {
+        if (output == null) {
+            return;
+        }
+        synchronized (output) {
             if (object.optype() == null) {
                 output.index(object, false);
             } else if ("index".equals(object.optype())) {
@@ -73,7 +120,6 @@ public class SinkKeyValueStreamListener<K, V> extends PlainKeyValueStreamListene
                 throw new IllegalArgumentException("unknown optype: " + object.optype());
             }
         }
-        return this;
     }
 
 }
@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.contentBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * An indexable object that stores the fields of a document in the slots of a document layout.
+ *
+ * A slot holds a single value as it is, and only values merged from several rows are collected
+ * in {@link Values}. The document is serialized by walking the layout, so no maps are built.
+ * If the source is requested as a map, or set from a map, the object falls back to the map, and
+ * is serialized like a {@link PlainIndexableObject}.
+ */
+public class SlotIndexableObject implements IndexableObject, ToXContent, Comparable<IndexableObject> {
+
+    /**
+     * Marks a slot holding a null value, an empty slot holds no value at all
+     */
+    private final static Object NULL = new Object();
+
+    private final DocumentLayout layout;
+
+    private final Params params;
+
+    private final boolean ignoreNull;
+
+    private final boolean forceArray;
+
+    private String optype;
+
+    private String index;
+
+    private String type;
+
+    private String id;
+
+    private Map<String, String> meta;
+
+    private Object[] slots;
+
+    private Map<String, Object> source;
+
+    private RawJson raw;
+
+    public SlotIndexableObject(DocumentLayout layout, Params params) {
+        this.layout = layout;
+        this.params = params;
+        this.ignoreNull = params.paramAsBoolean("ignore_null", false);
+        this.forceArray = params.paramAsBoolean("force_array", false);
+    }
+
+    public DocumentLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public IndexableObject optype(String optype) {
+        this.optype = optype;
+        return this;
+    }
+
+    @Override
+    public String optype() {
+        return optype;
+    }
+
+    @Override
+    public IndexableObject index(String index) {
+        this.index = index;
+        return this;
+    }
+
+    @Override
+    public String index() {
+        return index;
+    }
+
+    @Override
+    public IndexableObject type(String type) {
+        this.type = type;
+        return this;
+    }
+
+    @Override
+    public String type() {
+        return type;
+    }
+
+    @Override
+    public IndexableObject id(String id) {
+        this.id = id;
+        return this;
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public IndexableObject meta(String key, String value) {
+        if (ControlKeys._optype.name().equals(key)) {
+            optype = value;
+        } else if (ControlKeys._index.name().equals(key)) {
+            index = value;
+        } else if (ControlKeys._type.name().equals(key)) {
+            type = value;
+        } else if (ControlKeys._id.name().equals(key)) {
+            id = value;
+        } else {
+            if (meta == null) {
+                meta = new LinkedHashMap<String, String>();
+            }
+            meta.put(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public String meta(String key) {
+        if (ControlKeys._optype.name().equals(key)) {
+            return optype;
+        } else if (ControlKeys._index.name().equals(key)) {
+            return index;
+        } else if (ControlKeys._type.name().equals(key)) {
+            return type;
+        } else if (ControlKeys._id.name().equals(key)) {
+            return id;
+        }
+        return meta != null ? meta.get(key) : null;
+    }
+
+    /**
+     * Merge a value of a column into its slot
+     *
+     * @param column the column index
+     * @param value  the value
+     */
+    @SuppressWarnings("unchecked")
+    public void add(int column, Object value) {
+        int slot = layout.slot(column);
+        if (slot < 0) {
+            return;
+        }
+        boolean sequence = layout.isSequence(column);
+        if (slots == null) {
+            slots = new Object[layout.size()];
+        }
+        Object o = slots[slot];
+        boolean single = !sequence && !(value instanceof Object[]);
+        if (o == null) {
+            slots[slot] = single ? (value != null ? value : NULL) : new Values(null, value, sequence);
+        } else if (o instanceof Values) {
+            ((Values) o).add(value, sequence);
+        } else if (single && o == NULL) {
+            // a null value is replaced by the first non-null value
+            if (value != null) {
+                slots[slot] = value;
+            }
+        } else if (!single || (value != null && !value.equals(o))) {
+            slots[slot] = new Values(new Values(null, o == NULL ? null : o, false), value, sequence);
+        }
+    }
+
+    /**
+     * Take over the source of another object
+     *
+     * @param object the other object
+     * @return this object
+     */
+    public SlotIndexableObject source(SlotIndexableObject object) {
+        if (object.layout == layout) {
+            this.slots = object.slots;
+            this.source = object.source;
+            this.raw = object.raw;
+        } else if (object.raw != null) {
+            rawSource(object.raw);
+        } else {
+            this.slots = null;
+            this.source = object.source();
+            this.raw = null;
+        }
+        return this;
+    }
+
+    @Override
+    public IndexableObject source(Map<String, Object> source) {
+        this.source = source;
+        this.slots = null;
+        this.raw = null;
+        return this;
+    }
+
+    @Override
+    public IndexableObject rawSource(RawJson source) {
+        this.raw = source;
+        this.source = null;
+        this.slots = null;
+        return this;
+    }
+
+    /**
+     * The source as a map. From now on, this object keeps its source in the map.
+     *
+     * @return the source
+     */
+    @Override
+    public Map<String, Object> source() {
+        if (raw != null) {
+            try {
+                source = raw.map();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            raw = null;
+        } else if (source == null) {
+            source = toMap();
+            slots = null;
+        }
+        return source;
+    }
+
+    /**
+     * Check if this object is a map, not slots of the layout
+     *
+     * @return true if the source is a map
+     */
+    public boolean hasSourceMap() {
+        return source != null || raw != null;
+    }
+
+    @Override
+    public String build() throws IOException {
+        if (raw != null) {
+            return raw.toString();
+        }
+        XContentBuilder builder = jsonBuilder();
+        toXContent(builder, params);
+        return builder.string();
+    }
+
+    @Override
+    public BytesReference build(XContentType contentType) throws IOException {
+        if (raw != null && raw.isSingleLine() && contentType == XContentType.JSON) {
+            return raw.bytes();
+        }
+        XContentBuilder builder = contentBuilder(contentType);
+        toXContent(builder, params);
+        return builder.bytes();
+    }
+
+    @Override
+    public void build(XContentType contentType, OutputStream out) throws IOException {
+        if (raw != null && raw.isSingleLine() && contentType == XContentType.JSON) {
+            raw.bytes().writeTo(out);
+            return;
+        }
+        XContentBuilder builder = contentBuilder(contentType, out);
+        toXContent(builder, params);
+        builder.flush();
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        if (raw != null) {
+            return raw.toXContent(builder, params);
+        }
+        if (source != null) {
+            PlainIndexableObject object = new PlainIndexableObject(this.params);
+            object.source(source);
+            return object.toXContent(builder, params);
+        }
+        toXContent(builder, layout.getRoot());
+        return builder;
+    }
+
+    private void toXContent(XContentBuilder builder, DocumentLayout.Node node) throws IOException {
+        builder.startObject();
+        if (slots != null) {
+            for (int i = 0; i < node.size(); i++) {
+                DocumentLayout.Node child = node.node(i);
+                if (child != null) {
+                    if (isPresent(child)) {
+                        builder.field(node.name(i));
+                        toXContent(builder, child);
+                    }
+                    continue;
+                }
+                Object o = slots[node.slot(i)];
+                if (o == null || (ignoreNull && (o == NULL || (o instanceof Values && ((Values) o).isNull())))) {
+                    continue;
+                }
+                RawJson json = RawJson.single(o, forceArray);
+                if (json != null) {
+                    json.toXContent(builder, node.name(i));
+                    continue;
+                }
+                builder.field(node.name(i));
+                if (o instanceof Values) {
+                    ((Values) o).toXContent(builder, params);
+                } else if (forceArray) {
+                    builder.startArray().value(o == NULL ? null : o).endArray();
+                } else {
+                    builder.value(o == NULL ? null : o);
+                }
+            }
+        }
+        builder.endObject();
+    }
+
+    private boolean isPresent(DocumentLayout.Node node) {
+        for (int i = 0; i < node.size(); i++) {
+            DocumentLayout.Node child = node.node(i);
+            if (child != null ? isPresent(child) : slots[node.slot(i)] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        if (slots != null) {
+            toMap(layout.getRoot(), map);
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void toMap(DocumentLayout.Node node, Map<String, Object> map) {
+        for (int i = 0; i < node.size(); i++) {
+            DocumentLayout.Node child = node.node(i);
+            if (child != null) {
+                if (isPresent(child)) {
+                    Map<String, Object> m = new LinkedHashMap<String, Object>();
+                    toMap(child, m);
+                    map.put(node.name(i), m);
+                }
+                continue;
+            }
+            Object o = slots[node.slot(i)];
+            if (o != null) {
+                map.put(node.name(i), o instanceof Values ? o : new Values(null, o == NULL ? null : o, false));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return optype == null && index == null && type == null && id == null && raw == null &&
+                (source != null ? source.isEmpty() : slots == null || !isPresent(layout.getRoot()));
+    }
+
+    @Override
+    public String toString() {
+        return "[" + optype + "/" + index + "/" + type + "/" + id + "]->" + (raw != null ? raw : source != null ? source : toMap());
+    }
+
+    @Override
+    public int compareTo(IndexableObject o) {
+        if (o == null) {
+            return -1;
+        }
+        String s1 = optype() + '/' + index() + '/' + type() + '/' + id();
+        String s2 = o.optype() + '/' + o.index() + '/' + o.type() + '/' + o.id();
+        return s1.compareTo(s2);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof IndexableObject)) {
+            return false;
+        }
+        IndexableObject object = (IndexableObject) o;
+        return equal(id, object.id()) && equal(type, object.type())
+                && equal(index, object.index()) && equal(optype, object.optype());
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 17;
+        h = h * 37 + (optype != null ? optype.hashCode() : 0);
+        h = h * 37 + (index != null ? index.hashCode() : 0);
+        h = h * 37 + (type != null ? type.hashCode() : 0);
+        h = h * 37 + (id != null ? id.hashCode() : 0);
+        return h;
+    }
+
+    private static boolean equal(String s1, String s2) {
+        return s1 == s2 || (s1 != null && s1.equals(s2));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A least-recently-used cache of prepared statements of a single connection.
+ *
+ * A statement taken from the cache must be given back by {@link #release(Statement)} instead of being closed.
+ * While a cached statement is in use, a second request for the same SQL gets a new statement
+ * that is not cached. Evicted statements are closed.
+ */
+public class StatementCache {
+
+    private final static Logger logger = LogManager.getLogger("importer.jdbc.statementcache");
+
+    private final Connection connection;
+
+    private final Map<String, PreparedStatement> statements;
+
+    private final Set<Statement> inUse = Collections.newSetFromMap(new IdentityHashMap<Statement, Boolean>());
+
+    private final Set<Statement> cached = Collections.newSetFromMap(new IdentityHashMap<Statement, Boolean>());
+
+    private long hits;
+
+    private long misses;
+
+    public StatementCache(Connection connection, final int size) {
+        this.connection = connection;
+        this.statements = new StatementMap(size);
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Get a prepared statement from the cache, or prepare a new one
+     *
+     * @param sql         the SQL statement
+     * @param type        the result set type
+     * @param concurrency the result set concurrency
+     * @return the prepared statement
+     * @throws SQLException when SQL execution gives an error
+     */
+    public synchronized PreparedStatement prepare(String sql, int type, int concurrency) throws SQLException {
+        String key = type + ":" + concurrency + ":" + sql;
+        PreparedStatement statement = statements.get(key);
+        if (statement != null && !inUse.contains(statement) && !statement.isClosed()) {
+            hits++;
+            inUse.add(statement);
+            return statement;
+        }
+        misses++;
+        PreparedStatement newStatement = connection.prepareStatement(sql, type, concurrency);
+        if (statement == null || statement.isClosed()) {
+            if (statement != null) {
+                cached.remove(statement);
+            }
+            statements.put(key, newStatement);
+            cached.add(newStatement);
+        }
+        inUse.add(newStatement);
+        return newStatement;
+    }
+
+    /**
+     * Give back a statement. A cached statement is kept open for reuse, others are closed.
+     *
+     * @param statement the statement
+     * @return true if the statement was taken from this cache
+     * @throws SQLException when SQL execution gives an error
+     */
+    public synchronized boolean release(Statement statement) throws SQLException {
+        if (!inUse.remove(statement)) {
+            return false;
+        }
+        if (cached.contains(statement) && !statement.isClosed()) {
+            if (statement instanceof PreparedStatement) {
+                ((PreparedStatement) statement).clearParameters();
+            }
+        } else {
+            close(statement);
+        }
+        return true;
+    }
+
+    /**
+     * Close all statements of the cache
+     */
+    public synchronized void close() {
+        for (PreparedStatement statement : statements.values()) {
+            close(statement);
+        }
+        statements.clear();
+        cached.clear();
+        logger.debug("statement cache closed, {} hits, {} misses", hits, misses);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private void close(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.warn("while closing cached statement: " + e.getMessage());
+        }
+    }
+
+    private class StatementMap extends LruMap<String, PreparedStatement> {
+
+        private static final long serialVersionUID = -3318233364429717364L;
+
+        StatementMap(int size) {
+            super(size);
+        }
+
+        @Override
+        protected void evicted(Map.Entry<String, PreparedStatement> eldest) {
+            PreparedStatement statement = eldest.getValue();
+            if (inUse.contains(statement)) {
+                // closed when released
+                cached.remove(statement);
+            } else {
+                close(statement);
+            }
+        }
+    }
+}
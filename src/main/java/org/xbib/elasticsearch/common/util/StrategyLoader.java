@@ -16,9 +16,11 @@
 package org.xbib.elasticsearch.common.util;
 
 import org.xbib.elasticsearch.jdbc.strategy.Context;
+import org.xbib.elasticsearch.jdbc.strategy.Dialect;
 import org.xbib.elasticsearch.jdbc.strategy.JDBCSource;
 import org.xbib.elasticsearch.jdbc.strategy.Source;
 import org.xbib.elasticsearch.jdbc.strategy.Sink;
+import org.xbib.elasticsearch.jdbc.strategy.dialect.StandardDialect;
 import org.xbib.elasticsearch.jdbc.strategy.standard.StandardContext;
 import org.xbib.elasticsearch.jdbc.strategy.standard.StandardSource;
 import org.xbib.elasticsearch.jdbc.strategy.standard.StandardSink;
@@ -95,4 +97,21 @@ public class StrategyLoader {
         return new StandardSink();
     }
 
+    /**
+     * Load the dialect of a JDBC driver
+     *
+     * @param name the dialect name, or null for the dialect that accepts the URL
+     * @param url  the JDBC URL
+     * @return the dialect, or the StandardDialect
+     */
+    public static Dialect newDialect(String name, String url) {
+        ServiceLoader<Dialect> loader = ServiceLoader.load(Dialect.class);
+        for (Dialect dialect : loader) {
+            if (name != null ? name.equals(dialect.name()) : url != null && dialect.accepts(url)) {
+                return dialect;
+            }
+        }
+        return new StandardDialect();
+    }
+
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import java.util.Map;
+
+/**
+ * A least-recently-used dictionary of the string values of a column, so that repeated values
+ * share one string instance in the buffered documents.
+ *
+ * The first values of a column are a sample. If less than half of the sampled values are repeated,
+ * the column is not of low cardinality, the dictionary is cleared, and values are passed as they are.
+ */
+public class StringDictionary {
+
+    private final Map<String, String> strings;
+
+    private final int sampleSize;
+
+    private boolean enabled = true;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Create a dictionary
+     *
+     * @param size       the maximum number of strings, the least recently used strings are evicted
+     * @param sampleSize the number of values sampled before the dictionary is given up, or 0 if it is never given up
+     */
+    public StringDictionary(final int size, int sampleSize) {
+        this.strings = new LruMap<String, String>(size);
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Get the dictionary instance of a string
+     *
+     * @param s the string, or null
+     * @return the string instance in the dictionary, or the string if it is not in the dictionary
+     */
+    public String intern(String s) {
+        if (s == null || !enabled) {
+            return s;
+        }
+        String t = strings.get(s);
+        if (t != null) {
+            hits++;
+        } else {
+            misses++;
+            strings.put(s, s);
+            t = s;
+        }
+        if (hits + misses == sampleSize && hits * 2 < sampleSize) {
+            enabled = false;
+            strings.clear();
+        }
+        return t;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+}
@@ -19,21 +19,42 @@ import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * This class represents one or many values. Each value is represented at most
  * once. New values are appended.
+ *
+ * A few values are kept in an array and checked for duplicates by scanning the array.
+ * Above a small threshold, the values are also kept in a hash set, so that a field collecting
+ * the values of many joined rows is not quadratic.
  */
 public class Values<O extends Object> implements ToXContent {
 
     /**
-     * The values are implemented as an object array
+     * The number of values above which duplicates are found with a hash set
+     */
+    private final static int HASH_THRESHOLD = 8;
+
+    private final static Object[] EMPTY = new Object[0];
+
+    /**
+     * The values are implemented as an object array, only the first size elements are used
      */
     @SuppressWarnings({"unchecked"})
-    private O[] values = (O[]) new Object[0];
+    private O[] values = (O[]) EMPTY;
+
+    private int size;
+
+    private Set<Object> set;
 
     /**
-     * Create new Values from an existing values by appending a value.
+     * Create new Values from an existing values by appending a value. The existing values are
+     * taken over and must not be used any longer.
      *
      * @param old      existing values or null if values should be created
      * @param value    a new value
@@ -42,21 +63,58 @@ public class Values<O extends Object> implements ToXContent {
     @SuppressWarnings({"unchecked"})
     public Values(Object old, O value, boolean sequence) {
         if (old instanceof Values) {
-            O[] vals = (O[]) ((Values) old).getValues();
-            if (vals != null) {
-                this.values = vals;
-            }
+            Values<O> v = (Values<O>) old;
+            this.values = v.values;
+            this.size = v.size;
+            this.set = v.set;
         }
-        O[] newValues;
+        add(value, sequence);
+    }
+
+    /**
+     * Append a value
+     *
+     * @param value    a new value
+     * @param sequence true if value should be splitted by commas to multiple values
+     */
+    @SuppressWarnings({"unchecked"})
+    public void add(O value, boolean sequence) {
         if (sequence && value != null) {
-            newValues = (O[]) value.toString().split(",");
+            addSequence(value.toString());
         } else if (value instanceof Object[]) {
-            newValues = (O[]) value;
+            for (O v : (O[]) value) {
+                addValue(v);
+            }
         } else {
-            newValues = (O[]) new Object[]{value};
+            addValue(value);
+        }
+    }
+
+    /**
+     * Append the comma-separated values of a string. Like {@link String#split(String)}, trailing empty
+     * values are dropped.
+     *
+     * @param s the string
+     */
+    @SuppressWarnings({"unchecked"})
+    private void addSequence(String s) {
+        if (s.isEmpty()) {
+            addValue((O) s);
+            return;
         }
-        for (O v : newValues) {
-            addValue(v);
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) == ',') {
+            end--;
+        }
+        int start = 0;
+        while (end > 0) {
+            int i = s.indexOf(',', start);
+            if (i < 0 || i >= end) {
+                addValue((O) s.substring(start, end));
+                break;
+            }
+            addValue((O) s.substring(start, i));
+            start = i + 1;
         }
     }
 
@@ -67,30 +125,44 @@ public class Values<O extends Object> implements ToXContent {
      */
     @SuppressWarnings({"unchecked"})
     public void addValue(O v) {
-        int l = this.values.length;
-        for (O aValue : this.values) {
-            if (v != null && v.equals(aValue)) {
-                //value already found, do nothing
-                return;
+        if (size == 0) {
+            this.values = (O[]) new Object[]{v};
+            this.size = 1;
+            return;
+        }
+        // never add a null value to an existing list of values
+        if (v == null || contains(v)) {
+            return;
+        }
+        if (size == 1 && this.values[0] == null) {
+            // if there's one existing value and it's null, replace it with the new one
+            this.values[0] = v;
+            return;
+        }
+        if (size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, size < HASH_THRESHOLD ? size + 1 : size * 2);
+        }
+        this.values[size++] = v;
+        if (set != null) {
+            set.add(v);
+        } else if (size > HASH_THRESHOLD) {
+            set = new HashSet<Object>(size * 2);
+            for (int i = 0; i < size; i++) {
+                set.add(this.values[i]);
             }
         }
-        if (l == 0) {
-            this.values = (O[]) new Object[]{v};
-        } else {
-            // never add a null value to an existing list of values
-            if (v != null) {
-                if (l == 1 && this.values[0] == null) {
-                    // if there's one existing value and it's null, replace it with the new one
-                    this.values = (O[]) new Object[]{v};
-                } else {
-                    // otherwise copy the existing value(s) and add the new one
-                    O[] oldValues = this.values;
-                    this.values = (O[]) new Object[l + 1];
-                    System.arraycopy(oldValues, 0, this.values, 0, l);
-                    this.values[l] = v;
-                }
+    }
+
+    private boolean contains(O v) {
+        if (set != null) {
+            return set.contains(v);
+        }
+        for (int i = 0; i < size; i++) {
+            if (v.equals(this.values[i])) {
+                return true;
             }
         }
+        return false;
     }
 
     /**
@@ -99,26 +171,26 @@ public class Values<O extends Object> implements ToXContent {
      * @return the values
      */
     public O[] getValues() {
-        return this.values;
+        return size == this.values.length ? this.values : Arrays.copyOf(this.values, size);
     }
 
     public boolean isNull() {
-        return this.values.length == 0 || (this.values.length == 1 && this.values[0] == null);
+        return size == 0 || (size == 1 && this.values[0] == null);
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        if (this.values.length > 1) {
+        if (size > 1) {
             sb.append('[');
         }
-        for (int i = 0; i < this.values.length; i++) {
+        for (int i = 0; i < size; i++) {
             if (i > 0) {
                 sb.append(',');
             }
             sb.append(format(this.values[i]));
         }
-        if (this.values.length > 1) {
+        if (size > 1) {
             sb.append(']');
         }
         return sb.toString();
@@ -144,12 +216,10 @@ public class Values<O extends Object> implements ToXContent {
             return Boolean.toString((Boolean) o);
         }
         if (o instanceof Float) {
-            // suppress scientific notation
-            return String.format("%.12f", (Float) o);
+            return format(((Float) o).doubleValue());
         }
         if (o instanceof Double) {
-            // suppress scientific notation
-            return String.format("%.12f", (Double) o);
+            return format(((Double) o).doubleValue());
         }
         // stringify
         String t = o.toString();
@@ -157,19 +227,37 @@ public class Values<O extends Object> implements ToXContent {
         return '"' + t + '"';
     }
 
+    /**
+     * Format a floating point number with twelve fraction digits, like "%.12f", without scientific notation,
+     * but without the cost of a formatter.
+     *
+     * @param d the number
+     * @return the formatted number
+     */
+    private static String format(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return Double.toString(d);
+        }
+        BigDecimal bd = BigDecimal.valueOf(d).setScale(12, RoundingMode.HALF_UP);
+        String s = bd.toPlainString();
+        // keep the sign of numbers that round to zero
+        return bd.signum() == 0 && Double.doubleToRawLongBits(d) < 0 ? "-" + s : s;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
-        if (this.values.length == 0) {
+        if (size == 0) {
             builder.nullValue();
             return builder;
         }
-        if (this.values.length > 1 || params.paramAsBoolean("force_array", false)) {
+        boolean isArray = size > 1 || params.paramAsBoolean("force_array", false);
+        if (isArray) {
             builder.startArray();
         }
-        for (O aValue : this.values) {
-            builder.value(aValue);
+        for (int i = 0; i < size; i++) {
+            builder.value(this.values[i]);
         }
-        if (this.values.length > 1 || params.paramAsBoolean("force_array", false)) {
+        if (isArray) {
             builder.endArray();
         }
         return builder;
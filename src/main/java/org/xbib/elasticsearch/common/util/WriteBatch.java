@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The pending parameter rows of a batched write statement.
+ *
+ * A row is added for each row fetched by a query statement. The batch is due when enough rows are
+ * pending or when the oldest pending row has waited longer than the batch interval. Rows that
+ * belong to a document which has not been passed to the sink yet are held back, they can only
+ * be drained after the document is complete. Drained rows wait for the acknowledgement of the sink
+ * position that was reached when they were drained.
+ */
+public class WriteBatch {
+
+    /**
+     * Marks a parameter that is not bound from the row but from a variable at execution time
+     */
+    public final static Object UNBOUND = new Object();
+
+    private final int size;
+
+    private final long interval;
+
+    private final LinkedList<Object[]> rows = new LinkedList<Object[]>();
+
+    private final LinkedList<Object[]> unacknowledged = new LinkedList<Object[]>();
+
+    private final LinkedList<Long> positions = new LinkedList<Long>();
+
+    private long since;
+
+    /**
+     * Create a write batch
+     *
+     * @param size     the maximum number of rows in a batch
+     * @param interval the maximum time in milliseconds a row may wait
+     */
+    public WriteBatch(int size, long interval) {
+        if (size < 1) {
+            throw new IllegalArgumentException("batch size must be greater than 0");
+        }
+        this.size = size;
+        this.interval = interval;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Add the parameter values of a row
+     *
+     * @param row the parameter values, {@link #UNBOUND} for parameters not bound from the row
+     */
+    public synchronized void add(Object[] row) {
+        if (rows.isEmpty()) {
+            since = System.currentTimeMillis();
+        }
+        rows.add(row);
+    }
+
+    /**
+     * Check if the batch should be executed
+     *
+     * @param held the number of most recent rows that must be held back
+     * @return true if the batch is full or the interval has passed
+     */
+    public synchronized boolean isDue(int held) {
+        int n = rows.size() - held;
+        return n > 0 && (n >= size || System.currentTimeMillis() - since >= interval);
+    }
+
+    /**
+     * Remove the pending rows, except the most recent rows that must be held back
+     *
+     * @param held the number of most recent rows that must be held back
+     * @return the removed rows
+     */
+    public synchronized List<Object[]> drain(int held) {
+        int n = rows.size() - held;
+        if (n <= 0) {
+            return new ArrayList<Object[]>();
+        }
+        List<Object[]> list = new ArrayList<Object[]>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(rows.removeFirst());
+        }
+        since = System.currentTimeMillis();
+        return list;
+    }
+
+    public synchronized int pending() {
+        return rows.size();
+    }
+
+    /**
+     * Keep drained rows until the documents up to a sink position are acknowledged
+     *
+     * @param drained  the drained rows
+     * @param position the sink position after the documents of the rows
+     */
+    public synchronized void await(List<Object[]> drained, long position) {
+        for (Object[] row : drained) {
+            unacknowledged.add(row);
+            positions.add(position);
+        }
+    }
+
+    /**
+     * The sink positions the drained rows are waiting for, in ascending order
+     *
+     * @return the positions
+     */
+    public synchronized List<Long> getPositions() {
+        List<Long> list = new ArrayList<Long>();
+        for (Long position : positions) {
+            if (list.isEmpty() || list.get(list.size() - 1) < position) {
+                list.add(position);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Remove the drained rows waiting for a sink position or an earlier one
+     *
+     * @param position the sink position
+     * @return the removed rows
+     */
+    public synchronized List<Object[]> acknowledge(long position) {
+        List<Object[]> list = new ArrayList<Object[]>();
+        while (!positions.isEmpty() && positions.getFirst() <= position) {
+            positions.removeFirst();
+            list.add(unacknowledged.removeFirst());
+        }
+        return list;
+    }
+
+    public synchronized int unacknowledged() {
+        return unacknowledged.size();
+    }
+}
@@ -80,6 +80,13 @@ public interface Context<S extends Source, T extends Sink> {
 
     State getState();
 
+    /**
+     * If the sink, the source, and their connections are kept between the runs of a scheduled job
+     *
+     * @return true if the runtime is kept alive
+     */
+    boolean isKeepAlive();
+
     void log();
 
     void shutdown();
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.jdbc.strategy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A dialect knows what a JDBC driver requires for streaming large result sets
+ * with constant memory, and prepares the connections of a source accordingly.
+ */
+public interface Dialect {
+
+    /**
+     * The name of the dialect
+     *
+     * @return the name
+     */
+    String name();
+
+    /**
+     * Check if this dialect is for a JDBC URL
+     *
+     * @param url the JDBC URL
+     * @return true if this dialect is for the URL
+     */
+    boolean accepts(String url);
+
+    /**
+     * The fetch size if no fetch size is configured
+     *
+     * @param url                  the JDBC URL
+     * @param connectionProperties the configured connection properties, or null
+     * @return the fetch size
+     */
+    int getDefaultFetchSize(String url, Map<String, Object> connectionProperties);
+
+    /**
+     * Add the connection properties that the driver requires for streaming result sets
+     * of read connections. Configured properties are not overwritten.
+     *
+     * @param url        the JDBC URL
+     * @param properties the connection properties
+     * @param fetchSize  the fetch size
+     */
+    void addStreamingProperties(String url, Properties properties, int fetchSize);
+
+    /**
+     * Prepare a read connection for streaming result sets
+     *
+     * @param connection the connection
+     * @param autocommit the configured autocommit mode
+     * @throws SQLException if the connection can not be prepared
+     */
+    void prepareForReading(Connection connection, boolean autocommit) throws SQLException;
+
+    /**
+     * Prepare a write connection
+     *
+     * @param connection the connection
+     * @param autocommit the configured autocommit mode
+     * @throws SQLException if the connection can not be prepared
+     */
+    void prepareForWriting(Connection connection, boolean autocommit) throws SQLException;
+
+    /**
+     * The SQL statements that are executed on each read connection, before the configured session SQL
+     *
+     * @return the session SQL statements
+     */
+    List<String> getSessionSQL();
+
+    /**
+     * Check if the driver supports query timeouts on statements
+     *
+     * @return true if query timeouts are supported
+     */
+    boolean supportsQueryTimeout();
+}
@@ -17,8 +17,13 @@ package org.xbib.elasticsearch.jdbc.strategy;
 
 import org.elasticsearch.common.unit.TimeValue;
 import org.xbib.elasticsearch.common.keyvalue.KeyValueStreamListener;
+import org.xbib.elasticsearch.common.util.ConnectionPool;
+import org.xbib.elasticsearch.common.util.FetchSizeController;
+import org.xbib.elasticsearch.common.util.LobReader;
+import org.xbib.elasticsearch.common.util.RawJson;
 import org.xbib.elasticsearch.common.util.SQLCommand;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
@@ -180,6 +185,69 @@ public interface JDBCSource<C extends Context> extends Source<C> {
      */
     JDBCSource<C> shouldDetectJson(boolean shouldDetectJson);
 
+    /**
+     * Set the columns that are parsed for JSON. If not set, columns with a JSON type are parsed,
+     * and the other columns are sampled
+     *
+     * @param jsonColumns the column keys, or null
+     * @return this context
+     */
+    JDBCSource<C> setJsonColumns(List<String> jsonColumns);
+
+    /**
+     * Set the number of non-null values of a column that are sampled for JSON
+     *
+     * @param jsonSampleSize the number of values, or 0 if all values should be parsed
+     * @return this context
+     */
+    JDBCSource<C> setJsonSampleSize(int jsonSampleSize);
+
+    /**
+     * Pass JSON values and sources through as raw JSON, without parsing them into objects
+     *
+     * @param jsonPassthrough how raw JSON is checked, or null if JSON is parsed
+     * @return this context
+     */
+    JDBCSource<C> setJsonPassthrough(RawJson.Mode jsonPassthrough);
+
+    /**
+     * Set the columns that are decoded as geometries, from WKT or WKB. If not set, columns with a
+     * geometry type are decoded, and the other columns are sampled for WKT
+     *
+     * @param geoColumns the column keys, or null
+     * @return this context
+     */
+    JDBCSource<C> setGeoColumns(List<String> geoColumns);
+
+    /**
+     * Set the number of non-null values of a column that are sampled for WKT
+     *
+     * @param geoSampleSize the number of values, or 0 if all values should be decoded
+     * @return this context
+     */
+    JDBCSource<C> setGeoSampleSize(int geoSampleSize);
+
+    /**
+     * Group the rows of a result set by document ID, so that the rows of a document are merged
+     * even if the result set is not ordered by ID
+     *
+     * @param memoryLimit    the estimated size in bytes of the rows held in memory, or -1 if only
+     *                       consecutive rows are merged
+     * @param spillDirectory the directory for rows above the memory limit, or null for the temporary directory
+     * @return this source
+     */
+    JDBCSource<C> setGroupById(long memoryLimit, File spillDirectory);
+
+    /**
+     * Share the instances of repeated string values of character columns by a dictionary per column
+     *
+     * @param size       the maximum number of strings per column, or 0 if no dictionary is used
+     * @param sampleSize the number of values of a column that are sampled, the dictionary of a column is
+     *                   dropped if less than half of them are repeated
+     * @return this source
+     */
+    JDBCSource<C> setStringDictionary(int size, int sampleSize);
+
     /**
      * Should result set metadata be used in parameter variables
      *
@@ -228,6 +296,67 @@ public interface JDBCSource<C extends Context> extends Source<C> {
      */
     JDBCSource<C> shouldTreatBinaryAsString(boolean shouldTreatBinaryAsString);
 
+    /**
+     * Set the connection pools for reading and writing. If set, connections are taken from the pools
+     * and returned to them after fetch, instead of being opened and closed.
+     *
+     * @param readPool  the connection pool for reading, or null
+     * @param writePool the connection pool for writing, or null
+     * @return this source
+     */
+    /**
+     * Set the dialect of the JDBC driver
+     *
+     * @param dialect the dialect
+     * @return this source
+     */
+    JDBCSource<C> setDialect(Dialect dialect);
+
+    /**
+     * Set SQL statements that are executed on each read connection, e.g. for session settings
+     *
+     * @param sessionSQL the SQL statements
+     * @return this source
+     */
+    JDBCSource<C> setSessionSQL(List<String> sessionSQL);
+
+    JDBCSource<C> setConnectionPools(ConnectionPool readPool, ConnectionPool writePool);
+
+    /**
+     * Set the maximum number of prepared statements cached per connection
+     *
+     * @param statementCacheSize the statement cache size, 0 for no caching
+     * @return this source
+     */
+    JDBCSource<C> setStatementCacheSize(int statementCacheSize);
+
+    /**
+     * Set the queue size of the pipeline stages. If greater than 0, result sets are read,
+     * assembled into objects, and pushed to the sink in a pipeline of three threads.
+     *
+     * @param pipelineQueueSize the queue size, 0 for no pipeline
+     * @return this source
+     */
+    JDBCSource<C> setPipelineQueueSize(int pipelineQueueSize);
+
+    /**
+     * Set the size limit for large object values. BLOB, CLOB, and long binary or character values are read
+     * in chunks, and a value above the limit is truncated, skipped, or rejected.
+     *
+     * @param lobMaxSize the maximum size in bytes or characters, or -1 for no limit
+     * @param lobPolicy  the policy for values above the limit
+     * @return this source
+     */
+    JDBCSource<C> setLobLimit(long lobMaxSize, LobReader.Policy lobPolicy);
+
+    /**
+     * Set a controller that adapts the fetch size to the row width. The controller overrides the fixed fetch size.
+     *
+     * @param fetchSizeController the fetch size controller, or null for a fixed fetch size
+     * @return this source
+     */
+    JDBCSource<C> setFetchSizeController(FetchSizeController fetchSizeController);
+
     /**
      * Get a connection for reading data
      *
@@ -447,4 +576,13 @@ public interface JDBCSource<C extends Context> extends Source<C> {
      */
     JDBCSource<C> setTimeZone(TimeZone timeZone);
 
+    /**
+     * Set the format of fetched date, time, and timestamp values
+     *
+     * @param timestampFormat "iso" for ISO 8601 strings in the time zone, or "epoch_millis" for
+     *                        milliseconds since the epoch
+     * @return this source
+     */
+    JDBCSource<C> setTimestampFormat(String timestampFormat);
+
 }
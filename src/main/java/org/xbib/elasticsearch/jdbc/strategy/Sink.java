@@ -19,6 +19,7 @@ import org.xbib.elasticsearch.common.metrics.SinkMetric;
 import org.xbib.elasticsearch.common.util.IndexableObject;
 
 import java.io.IOException;
+import java.util.concurrent.Future;
 
 /**
  * The sink is the abstraction of a destination where all the data
@@ -140,6 +141,24 @@ public interface Sink<C extends Context> {
      */
     void flushIngest() throws IOException;
 
+    /**
+     * The position of the last action passed to this sink. Each index, delete, or update operation
+     * advances the position by one.
+     *
+     * @return the position
+     */
+    long getPosition();
+
+    /**
+     * Get a future that completes when all actions up to a position are acknowledged. The future yields
+     * false if an action up to the position has failed and is lost.
+     *
+     * @param position the position
+     * @return the future
+     * @throws IOException when flush fails
+     */
+    Future<Boolean> acknowledged(long position) throws IOException;
+
     /**
      * Shutdown and release all resources, e.g. bulk processor and client
      * @throws IOException when shutdown fails
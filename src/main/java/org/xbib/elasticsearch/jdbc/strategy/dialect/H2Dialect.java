@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.jdbc.strategy.dialect;
+
+/**
+ * H2 buffers a result set in memory up to MAX_MEMORY_ROWS rows, and the rest in a temporary file,
+ * so the standard connection is sufficient. H2 ignores the read-only flag of a connection. The fetch
+ * size only controls the rows per round trip of a server connection.
+ */
+public class H2Dialect extends StandardDialect {
+
+    @Override
+    public String name() {
+        return "h2";
+    }
+
+    @Override
+    public boolean accepts(String url) {
+        return url.startsWith("jdbc:h2:");
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.jdbc.strategy.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * HSQLDB holds cursors over commit by default, so read connections close cursors at commit.
+ * Large results of disk-based databases are kept in memory only up to the session setting
+ * RESULT MEMORY ROWS, which can be set by session SQL.
+ */
+public class HSQLDBDialect extends StandardDialect {
+
+    @Override
+    public String name() {
+        return "hsqldb";
+    }
+
+    @Override
+    public boolean accepts(String url) {
+        return url.startsWith("jdbc:hsqldb:");
+    }
+
+    @Override
+    public void prepareForReading(Connection connection, boolean autocommit) throws SQLException {
+        super.prepareForReading(connection, autocommit);
+        closeCursorsAtCommit(connection);
+    }
+}
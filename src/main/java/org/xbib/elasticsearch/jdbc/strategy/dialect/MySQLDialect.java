@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.jdbc.strategy.dialect;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * MySQL and MariaDB stream a result set row by row only on a read-only connection with a fetch size of
+ * Integer.MIN_VALUE. A positive fetch size is honored only with server-side cursors, by useCursorFetch=true.
+ */
+public class MySQLDialect extends StandardDialect {
+
+    @Override
+    public String name() {
+        return "mysql";
+    }
+
+    @Override
+    public boolean accepts(String url) {
+        return url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:");
+    }
+
+    @Override
+    public int getDefaultFetchSize(String url, Map<String, Object> connectionProperties) {
+        return hasProperty(url, connectionProperties, "useCursorFetch") ? 10 : Integer.MIN_VALUE;
+    }
+
+    @Override
+    public void addStreamingProperties(String url, Properties properties, int fetchSize) {
+        if (fetchSize > 0 && !url.contains("useCursorFetch=") && !properties.containsKey("useCursorFetch")) {
+            properties.put("useCursorFetch", "true");
+        }
+    }
+}
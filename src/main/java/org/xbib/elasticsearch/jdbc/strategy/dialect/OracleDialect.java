@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.jdbc.strategy.dialect;
+
+import java.util.Properties;
+
+/**
+ * Oracle fetches defaultRowPrefetch rows per round trip, which is 10 unless set as connection property.
+ */
+public class OracleDialect extends StandardDialect {
+
+    @Override
+    public String name() {
+        return "oracle";
+    }
+
+    @Override
+    public boolean accepts(String url) {
+        return url.startsWith("jdbc:oracle:");
+    }
+
+    @Override
+    public void addStreamingProperties(String url, Properties properties, int fetchSize) {
+        if (fetchSize > 0 && !url.contains("defaultRowPrefetch=") && !properties.containsKey("defaultRowPrefetch")) {
+            properties.put("defaultRowPrefetch", Integer.toString(fetchSize));
+        }
+    }
+}
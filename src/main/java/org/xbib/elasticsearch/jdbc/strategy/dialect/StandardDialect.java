@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.jdbc.strategy.dialect;
+
+import org.xbib.elasticsearch.jdbc.strategy.Dialect;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The dialect for drivers without a dialect of their own. Read connections are read-only
+ * and use the configured autocommit mode.
+ */
+public class StandardDialect implements Dialect {
+
+    @Override
+    public String name() {
+        return "standard";
+    }
+
+    @Override
+    public boolean accepts(String url) {
+        return true;
+    }
+
+    @Override
+    public int getDefaultFetchSize(String url, Map<String, Object> connectionProperties) {
+        return 10;
+    }
+
+    @Override
+    public void addStreamingProperties(String url, Properties properties, int fetchSize) {
+    }
+
+    @Override
+    public void prepareForReading(Connection connection, boolean autocommit) throws SQLException {
+        if (!connection.isReadOnly()) {
+            connection.setReadOnly(true);
+        }
+        if (connection.getAutoCommit() != autocommit) {
+            connection.setAutoCommit(autocommit);
+        }
+    }
+
+    @Override
+    public void prepareForWriting(Connection connection, boolean autocommit) throws SQLException {
+        if (connection.getAutoCommit() != autocommit) {
+            connection.setAutoCommit(autocommit);
+        }
+    }
+
+    @Override
+    public List<String> getSessionSQL() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean supportsQueryTimeout() {
+        return true;
+    }
+
+    /**
+     * Close cursors at commit, so open cursors do not keep locks or server resources beyond the transaction
+     *
+     * @param connection the connection
+     * @throws SQLException if the holdability can not be read
+     */
+    protected static void closeCursorsAtCommit(Connection connection) throws SQLException {
+        try {
+            if (connection.getHoldability() != ResultSet.CLOSE_CURSORS_AT_COMMIT) {
+                connection.setHoldability(ResultSet.CLOSE_CURSORS_AT_COMMIT);
+            }
+        } catch (SQLFeatureNotSupportedException e) {
+            // holdability is optional
+        }
+    }
+
+    protected static boolean hasProperty(String url, Map<String, Object> properties, String key) {
+        return url.contains(key + "=") || (properties != null && properties.containsKey(key));
+    }
+}
@@ -20,14 +20,22 @@ import org.apache.logging.log4j.Logger;
 import org.elasticsearch.common.joda.FormatDateTimeFormatter;
 import org.elasticsearch.common.joda.Joda;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.joda.time.DateTime;
 import org.xbib.elasticsearch.common.metrics.MetricsLogger;
+import org.xbib.elasticsearch.common.metrics.SourceMetric;
+import org.xbib.elasticsearch.common.util.ConnectionPool;
+import org.xbib.elasticsearch.common.util.FetchSizeController;
+import org.xbib.elasticsearch.common.util.KeysetPagination;
+import org.xbib.elasticsearch.common.util.LobReader;
+import org.xbib.elasticsearch.common.util.RawJson;
 import org.xbib.elasticsearch.common.util.LocaleUtil;
 import org.xbib.elasticsearch.common.util.StrategyLoader;
 import org.xbib.elasticsearch.jdbc.strategy.Context;
+import org.xbib.elasticsearch.jdbc.strategy.Dialect;
 import org.xbib.elasticsearch.jdbc.strategy.JDBCSource;
 import org.xbib.elasticsearch.jdbc.strategy.Sink;
 import org.xbib.elasticsearch.common.util.SQLCommand;
@@ -36,14 +44,19 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
@@ -69,6 +82,32 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
 
     private final static List<Future> futures = new LinkedList<>();
 
+    /**
+     * The checkpoints of paged SQL statements, persisted in the state file
+     */
+    private final Map<String, Object> checkpoints = new LinkedHashMap<>();
+
+    /**
+     * The connection pools for reading and writing, they live across runs until shutdown
+     */
+    private ConnectionPool readPool;
+
+    private ConnectionPool writePool;
+
+    /**
+     * The adaptive fetch size controller, it lives across runs, so each run starts with the fetch size learned before
+     */
+    private FetchSizeController fetchSizeController;
+
+    /**
+     * The execution metrics before the current run, restored if the documents of the run are not acknowledged
+     */
+    private DateTime lastExecutionStart;
+
+    private DateTime lastExecutionEnd;
+
+    private int counter;
+
     @Override
     public String strategy() {
         return "standard";
@@ -84,9 +123,27 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
         return state;
     }
 
+    /**
+     * The sink, the source, and the Elasticsearch client are kept between runs if the keep_alive
+     * parameter is set and the job is scheduled
+     *
+     * @return true if the runtime is kept alive
+     */
+    @Override
+    public boolean isKeepAlive() {
+        return settings != null && settings.getAsBoolean("keep_alive", false) &&
+                (settings.getAsArray("schedule").length > 0 ||
+                        settings.getAsTime("interval", TimeValue.timeValueSeconds(0)).millis() > 0L);
+    }
+
     @Override
     public StandardContext setSettings(Settings settings) {
         this.settings = settings;
+        Map<String, Settings> groups = settings.getGroups("checkpoint");
+        for (Map.Entry<String, Settings> entry : groups.entrySet()) {
+            Settings checkpoint = entry.getValue();
+            checkpoints.put(entry.getKey(), KeysetPagination.decode(checkpoint.get("type"), checkpoint.get("value")));
+        }
         if (settings.getAsBoolean("metrics.enabled",false) && futures.isEmpty()) {
             Thread thread = new MetricsThread();
             ScheduledThreadPoolExecutor scheduledthreadPoolExecutor =
@@ -153,6 +210,26 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
         return throwable;
     }
 
+    /**
+     * Set the checkpoint of a paged SQL statement, the last key that has been acknowledged
+     *
+     * @param name  the name of the checkpoint
+     * @param value the last key, or null to remove the checkpoint
+     * @return this context
+     */
+    public synchronized StandardContext setCheckpoint(String name, Object value) {
+        if (value != null) {
+            checkpoints.put(name, value);
+        } else {
+            checkpoints.remove(name);
+        }
+        return this;
+    }
+
+    public synchronized Object getCheckpoint(String name) {
+        return checkpoints.get(name);
+    }
+
     public DateTime getDateOfThrowable() {
         return dateOfThrowable;
     }
@@ -175,11 +252,19 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
     @SuppressWarnings("unchecked")
     public void beforeFetch() throws Exception {
         logger.debug("before fetch");
-        Sink sink = createSink();
-        S source = createSource();
-        prepareContext(source, sink);
-        sink.setContext(this);
-        source.setContext(this);
+        if (sink == null || source == null || !isKeepAlive()) {
+            Sink sink = createSink();
+            S source = createSource();
+            prepareContext(source, sink);
+            sink.setContext(this);
+            source.setContext(this);
+        }
+        SourceMetric metric = source.getMetric();
+        if (metric != null) {
+            lastExecutionStart = metric.getLastExecutionStart();
+            lastExecutionEnd = metric.getLastExecutionEnd();
+            counter = metric.getCounter();
+        }
         getSink().beforeFetch();
         getSource().beforeFetch();
     }
@@ -198,13 +283,22 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
     @Override
     public void afterFetch() throws Exception {
         logger.debug("after fetch");
-        writeState();
         try {
             getSource().afterFetch();
         } catch (Throwable e) {
             setThrowable(e);
             logger.error("after fetch: " + e.getMessage(), e);
         }
+        // the state advances only when the cluster has acknowledged all documents of this run
+        if (isAcknowledged()) {
+            writeState();
+        } else if (source != null && source.getMetric() != null) {
+            logger.warn("documents of this run are not acknowledged, the state is not advanced");
+            SourceMetric metric = source.getMetric();
+            metric.setLastExecutionStart(lastExecutionStart);
+            metric.setLastExecutionEnd(lastExecutionEnd);
+            metric.setCounter(counter);
+        }
         try {
             getSink().afterFetch();
         } catch (Throwable e) {
@@ -233,11 +327,37 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
                 logger.error("sink shutdown: " + e.getMessage(), e);
             }
         }
+        closeConnectionPools();
         logger.info("shutdown completed");
         writeState();
     }
 
-    protected void writeState() {
+    /**
+     * Wait until all actions passed to the sink are acknowledged, at most for the time given
+     * by the max_request_wait parameter
+     *
+     * @return true if all actions are acknowledged
+     */
+    protected boolean isAcknowledged() {
+        if (sink == null) {
+            return true;
+        }
+        TimeValue timeout = settings.getAsTime("max_request_wait", TimeValue.timeValueSeconds(60));
+        try {
+            Object acknowledged = sink.acknowledged(sink.getPosition()).get(timeout.millis(), TimeUnit.MILLISECONDS);
+            return Boolean.TRUE.equals(acknowledged);
+        } catch (TimeoutException e) {
+            logger.warn("documents not acknowledged after {}", timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ExecutionException e) {
+            setThrowable(e);
+            logger.error("acknowledgement: " + e.getMessage(), e);
+        }
+        return false;
+    }
+
+    protected synchronized void writeState() {
         String statefile = settings.get("statefile");
         if (statefile == null || source == null || source.getMetric() == null) {
             return;
@@ -255,6 +375,14 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
                         .put("metrics.lastexecutionstart", formatter.printer().print(source.getMetric().getLastExecutionStart()))
                         .put("metrics.lastexecutionend", formatter.printer().print(source.getMetric().getLastExecutionEnd()))
                         .put("metrics.counter", source.getMetric().getCounter());
+                for (String key : settings.getByPrefix("checkpoint.").getAsMap().keySet()) {
+                    settingsBuilder.remove("checkpoint." + key);
+                }
+                for (Map.Entry<String, Object> entry : checkpoints.entrySet()) {
+                    String[] checkpoint = KeysetPagination.encode(entry.getValue());
+                    settingsBuilder.put("checkpoint." + entry.getKey() + ".type", checkpoint[0])
+                            .put("checkpoint." + entry.getKey() + ".value", checkpoint[1]);
+                }
                 XContentBuilder builder = jsonBuilder().prettyPrint()
                         .startObject()
                         .field("type", "jdbc")
@@ -276,6 +404,53 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
         }
     }
 
+    protected synchronized void createConnectionPools(Map<String, Object> params, Dialect dialect, int fetchSize) {
+        int size = XContentMapValues.nodeIntegerValue(params.get("connection_pool_size"), 0);
+        if (size <= 0 || readPool != null) {
+            return;
+        }
+        TimeValue validationInterval = XContentMapValues.nodeTimeValue(params.get("connection_validation_interval"),
+                TimeValue.timeValueSeconds(30));
+        String url = settings.get("url");
+        Properties properties = null;
+        String user = settings.get("user");
+        if (user != null) {
+            properties = new Properties();
+            properties.put("user", user);
+            String password = settings.get("password");
+            if (password != null) {
+                properties.put("password", password);
+            }
+            Object connectionProperties = params.get("connection_properties");
+            if (connectionProperties instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) connectionProperties).entrySet()) {
+                    properties.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        Properties readProperties = new Properties();
+        if (properties != null) {
+            readProperties.putAll(properties);
+        }
+        dialect.addStreamingProperties(url, readProperties, fetchSize);
+        readPool = new ConnectionPool(url, readProperties.isEmpty() ? null : readProperties, size)
+                .setValidationInterval(validationInterval.millis());
+        writePool = new ConnectionPool(url, properties, size)
+                .setValidationInterval(validationInterval.millis());
+        logger.info("connection pools created, size = {}, validation interval = {}", size, validationInterval);
+    }
+
+    protected synchronized void closeConnectionPools() {
+        if (readPool != null) {
+            readPool.close();
+            readPool = null;
+        }
+        if (writePool != null) {
+            writePool.close();
+            writePool = null;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     protected S createSource() {
         S source = (S) StrategyLoader.newSource(strategy());
@@ -285,11 +460,13 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
         String password = settings.get("password");
         String locale = settings.get("locale", LocaleUtil.fromLocale(Locale.getDefault()));
         String timezone = settings.get("timezone", TimeZone.getDefault().getID());
+        String timestampFormat = settings.get("timestamp_format", "iso");
         source.setUrl(url)
                 .setUser(user)
                 .setPassword(password)
                 .setLocale(LocaleUtil.toLocale(locale))
-                .setTimeZone(TimeZone.getTimeZone(timezone));
+                .setTimeZone(TimeZone.getTimeZone(timezone))
+                .setTimestampFormat(timestampFormat);
         return source;
     }
 
@@ -306,9 +483,20 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
         String rounding = XContentMapValues.nodeStringValue(params.get("rounding"), null);
         int scale = XContentMapValues.nodeIntegerValue(params.get("scale"), 2);
         boolean autocommit = XContentMapValues.nodeBooleanValue(params.get("autocommit"), false);
+        String url = XContentMapValues.nodeStringValue(params.get("url"), null);
+        Map<String, Object> connectionProperties = (Map<String, Object>) params.get("connection_properties");
+        Dialect dialect = StrategyLoader.newDialect(XContentMapValues.nodeStringValue(params.get("dialect"), null), url);
         int fetchsize = 10;
         String fetchSizeStr = XContentMapValues.nodeStringValue(params.get("fetchsize"), null);
-        if ("min".equals(fetchSizeStr)) {
+        if ("adaptive".equals(fetchSizeStr)) {
+            if (fetchSizeController == null) {
+                ByteSizeValue target = ByteSizeValue.parseBytesSizeValue(
+                        XContentMapValues.nodeStringValue(params.get("fetchsize_target"), "1mb"), "fetchsize_target");
+                TimeValue maxLatency = XContentMapValues.nodeTimeValue(params.get("fetchsize_max_latency"),
+                        TimeValue.timeValueSeconds(1));
+                fetchSizeController = new FetchSizeController(fetchsize, target.bytes(), maxLatency.nanos());
+            }
+        } else if ("min".equals(fetchSizeStr)) {
             fetchsize = Integer.MIN_VALUE; // for MySQL streaming mode
         } else if (fetchSizeStr != null) {
             try {
@@ -317,11 +505,8 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
                 // ignore unparseable
             }
         } else {
-            // if MySQL, enable streaming mode hack by default
-            String url = XContentMapValues.nodeStringValue(params.get("url"), null);
-            if (url != null && url.startsWith("jdbc:mysql")) {
-                fetchsize = Integer.MIN_VALUE; // for MySQL streaming mode
-            }
+            // the dialect knows how to stream, e.g. MySQL streaming mode
+            fetchsize = dialect.getDefaultFetchSize(url, connectionProperties);
         }
         int maxrows = XContentMapValues.nodeIntegerValue(params.get("max_rows"), 0);
         int maxretries = XContentMapValues.nodeIntegerValue(params.get("max_retries"), 3);
@@ -331,12 +516,49 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
         boolean shouldIgnoreNull = XContentMapValues.nodeBooleanValue(params.get("ignore_null_values"), false);
         boolean shouldDetectGeo = XContentMapValues.nodeBooleanValue(params.get("detect_geo"), true);
         boolean shouldDetectJson = XContentMapValues.nodeBooleanValue(params.get("detect_json"), true);
+        List<String> jsonColumns = null;
+        if (params.get("detect_json_columns") instanceof List) {
+            jsonColumns = new ArrayList<String>();
+            for (Object column : (List) params.get("detect_json_columns")) {
+                jsonColumns.add(column.toString());
+            }
+        }
+        int jsonSampleSize = XContentMapValues.nodeIntegerValue(params.get("detect_json_sample"), 100);
+        List<String> geoColumns = null;
+        if (params.get("detect_geo_columns") instanceof List) {
+            geoColumns = new ArrayList<String>();
+            for (Object column : (List) params.get("detect_geo_columns")) {
+                geoColumns.add(column.toString());
+            }
+        }
+        String jsonPassthrough = XContentMapValues.nodeStringValue(params.get("json_passthrough"), "none");
+        int geoSampleSize = XContentMapValues.nodeIntegerValue(params.get("detect_geo_sample"), 100);
+        boolean groupById = XContentMapValues.nodeBooleanValue(params.get("group_by_id"), false);
+        String groupMemory = XContentMapValues.nodeStringValue(params.get("group_memory"), "64mb");
+        String groupSpillDir = XContentMapValues.nodeStringValue(params.get("group_spill_dir"), null);
+        boolean stringDictionary = XContentMapValues.nodeBooleanValue(params.get("string_dictionary"), false);
+        int stringDictionarySize = XContentMapValues.nodeIntegerValue(params.get("string_dictionary_size"), 1000);
+        int stringDictionarySample = XContentMapValues.nodeIntegerValue(params.get("string_dictionary_sample"), 1000);
         boolean shouldPrepareDatabaseMetadata = XContentMapValues.nodeBooleanValue(params.get("prepare_database_metadata"), false);
         boolean shouldPrepareResultSetMetadata = XContentMapValues.nodeBooleanValue(params.get("prepare_resultset_metadata"), false);
         Map<String, Object> columnNameMap = (Map<String, Object>) params.get("column_name_map");
         int queryTimeout = XContentMapValues.nodeIntegerValue(params.get("query_timeout"), 1800);
-        Map<String, Object> connectionProperties = (Map<String, Object>) params.get("connection_properties");
         boolean shouldTreatBinaryAsString = XContentMapValues.nodeBooleanValue(params.get("treat_binary_as_string"), false);
+        int statementCacheSize = XContentMapValues.nodeIntegerValue(params.get("statement_cache_size"), 0);
+        boolean pipeline = XContentMapValues.nodeBooleanValue(params.get("pipeline"), false);
+        int pipelineQueueSize = XContentMapValues.nodeIntegerValue(params.get("pipeline_queue_size"), 1024);
+        String lobMaxSize = XContentMapValues.nodeStringValue(params.get("lob_max_size"), null);
+        String lobPolicy = XContentMapValues.nodeStringValue(params.get("lob_policy"), "truncate");
+        List<String> sessionSQL = new ArrayList<String>();
+        Object o = params.get("session_sql");
+        if (o instanceof List) {
+            for (Object sessionStatement : (List) o) {
+                sessionSQL.add(sessionStatement.toString());
+            }
+        } else if (o != null) {
+            sessionSQL.add(o.toString());
+        }
+        createConnectionPools(params, dialect, fetchSizeController != null ? fetchSizeController.getFetchSize() : fetchsize);
         source.setRounding(rounding)
                 .setScale(scale)
                 .setStatements(sql)
@@ -350,12 +572,29 @@ public class StandardContext<S extends JDBCSource> implements Context<S, Sink> {
                 .shouldIgnoreNull(shouldIgnoreNull)
                 .shouldDetectGeo(shouldDetectGeo)
                 .shouldDetectJson(shouldDetectJson)
+                .setJsonColumns(jsonColumns)
+                .setJsonSampleSize(jsonSampleSize)
+                .setJsonPassthrough("none".equals(jsonPassthrough) ? null :
+                        RawJson.Mode.valueOf(jsonPassthrough.toUpperCase(Locale.ROOT)))
+                .setGeoColumns(geoColumns)
+                .setGeoSampleSize(geoSampleSize)
+                .setGroupById(groupById ? ByteSizeValue.parseBytesSizeValue(groupMemory, "group_memory").bytes() : -1L,
+                        groupSpillDir != null ? new File(groupSpillDir) : null)
+                .setStringDictionary(stringDictionary ? stringDictionarySize : 0, stringDictionarySample)
                 .shouldPrepareDatabaseMetadata(shouldPrepareDatabaseMetadata)
                 .shouldPrepareResultSetMetadata(shouldPrepareResultSetMetadata)
                 .setColumnNameMap(columnNameMap)
                 .setQueryTimeout(queryTimeout)
                 .setConnectionProperties(connectionProperties)
-                .shouldTreatBinaryAsString(shouldTreatBinaryAsString);
+                .shouldTreatBinaryAsString(shouldTreatBinaryAsString)
+                .setConnectionPools(readPool, writePool)
+                .setStatementCacheSize(statementCacheSize)
+                .setPipelineQueueSize(pipeline ? pipelineQueueSize : 0)
+                .setFetchSizeController(fetchSizeController)
+                .setDialect(dialect)
+                .setSessionSQL(sessionSQL)
+                .setLobLimit(lobMaxSize != null ? ByteSizeValue.parseBytesSizeValue(lobMaxSize, "lob_max_size").bytes() : -1L,
+                        LobReader.Policy.valueOf(lobPolicy.toUpperCase(Locale.ROOT)));
         setSource(source);
         setSink(sink);
     }
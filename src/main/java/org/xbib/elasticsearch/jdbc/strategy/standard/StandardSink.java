@@ -21,6 +21,7 @@ import org.elasticsearch.action.admin.indices.alias.get.GetAliasesAction;
 import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.common.Strings;
@@ -29,23 +30,31 @@ import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.indices.IndexAlreadyExistsException;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.xbib.elasticsearch.common.metrics.SinkMetric;
+import org.xbib.elasticsearch.common.util.BulkController;
+import org.xbib.elasticsearch.common.util.BulkWriter;
 import org.xbib.elasticsearch.common.util.ControlKeys;
+import org.xbib.elasticsearch.common.util.DeadLetterLog;
 import org.xbib.elasticsearch.common.util.IndexableObject;
 import org.xbib.elasticsearch.helper.client.ClientAPI;
 import org.xbib.elasticsearch.helper.client.ClientBuilder;
 import org.xbib.elasticsearch.jdbc.strategy.Sink;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
@@ -68,6 +77,38 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
 
     protected String id;
 
+    /**
+     * The content type of the document sources in the bulk requests
+     */
+    protected XContentType contentType = XContentType.JSON;
+
+    /**
+     * The writer of bulk actions in bulk format, or null if actions are passed to the client API as requests
+     */
+    protected BulkWriter bulkWriter;
+
+    /**
+     * The log of failed bulk actions, if the bulk writer is used and a dead letter file is configured
+     */
+    protected DeadLetterLog deadLetterLog;
+
+    /**
+     * The position of the last action passed to the bulk processor of the client API
+     */
+    private final AtomicLong position = new AtomicLong();
+
+    /**
+     * The number of failed actions in the sink metric when the bulk processor of the client API was started
+     */
+    private long failedBefore;
+
+    /**
+     * The index name of the settings, with the date pattern applied, and the index it resolves to
+     */
+    private String indexName;
+
+    private String resolvedIndex;
+
     private final static SinkMetric sinkMetric = new SinkMetric().start();
 
     @Override
@@ -96,29 +137,36 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
         Settings settings = context.getSettings();
         String index = settings.get("index", "jdbc");
         String type = settings.get("type", "jdbc");
+        String contentType = settings.get("content_type", "json");
+        this.contentType = XContentType.fromRestContentType(contentType);
+        if (this.contentType == null) {
+            throw new IllegalArgumentException("unknown content type: " + contentType);
+        }
+        int pos = index.indexOf('\'');
+        if (pos >= 0) {
+            SimpleDateFormat formatter = new SimpleDateFormat();
+            formatter.applyPattern(index);
+            index = formatter.format(new Date());
+        }
+        failedBefore = sinkMetric.getFailed().getCount();
         if (clientAPI == null) {
             clientAPI = createClient(settings);
             if (clientAPI.client() != null) {
-                int pos = index.indexOf('\'');
-                if (pos >= 0) {
-                    SimpleDateFormat formatter = new SimpleDateFormat();
-                    formatter.applyPattern(index);
-                    index = formatter.format(new Date());
-                }
-                try {
-                    index = resolveAlias(index);
-                } catch (Exception e) {
-                    logger.warn("can not resolve index {}", index);
-                }
-                setIndex(index);
-                setType(type);
-                try {
-                    createIndex(settings, index, type);
-                } catch (IndexAlreadyExistsException e) {
-                    logger.warn(e.getMessage());
-                }
+                openIndex(settings, index, type);
             }
             clientAPI.waitForCluster("YELLOW", TimeValue.timeValueSeconds(30));
+            if (clientAPI.client() != null && settings.getAsBoolean("bulk_direct", false)) {
+                bulkWriter = createBulkWriter(settings);
+            }
+        } else if (clientAPI.client() != null) {
+            // the client is kept alive from the previous run, open the index only if the name has changed
+            if (!index.equals(indexName)) {
+                openIndex(settings, index, type);
+            } else {
+                setIndex(resolvedIndex);
+                setType(type);
+            }
+            setId(null);
         }
     }
 
@@ -129,6 +177,11 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
         }
         logger.debug("afterFetch: flush");
         flushIngest();
+        if (context.isKeepAlive()) {
+            logger.debug("afterFetch: keeping client alive");
+            return;
+        }
+        closeBulkWriter();
         logger.debug("afterFetch: stop bulk");
         clientAPI.stopBulk(index);
         logger.debug("afterFetch: refresh index");
@@ -147,8 +200,11 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
         try {
             logger.info("shutdown in progress");
             flushIngest();
+            closeBulkWriter();
             clientAPI.stopBulk(index);
+            clientAPI.refreshIndex(index);
             clientAPI.shutdown();
+            clientAPI = null;
         } catch (IOException e) {
             logger.error(e.getMessage(), e);
         }
@@ -201,10 +257,14 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
         if (Strings.hasLength(object.id())) {
             setId(object.id());
         }
+        if (bulkWriter != null) {
+            bulkWriter.index(this.index, this.type, getId(), object);
+            return;
+        }
         IndexRequest request = Requests.indexRequest(this.index)
                 .type(this.type)
                 .id(getId())
-                .source(object.build());
+                .source(object.build(contentType));
         if (object.meta(ControlKeys._version.name()) != null) {
             request.versionType(VersionType.EXTERNAL)
                     .version(Long.parseLong(object.meta(ControlKeys._version.name())));
@@ -222,13 +282,14 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
             request.ttl(Long.parseLong(object.meta(ControlKeys._ttl.name())));
         }
         if (logger.isTraceEnabled()) {
-            logger.trace("adding bulk index action {}", request.source().toUtf8());
+            logger.trace("adding bulk index action {}", XContentHelper.convertToJson(request.source(), false));
         }
+        position.incrementAndGet();
         clientAPI.bulkIndex(request);
     }
 
     @Override
-    public void delete(IndexableObject object) {
+    public void delete(IndexableObject object) throws IOException {
         if (clientAPI == null) {
             return;
         }
@@ -244,6 +305,10 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
         if (getId() == null) {
             return; // skip if no doc is specified to delete
         }
+        if (bulkWriter != null) {
+            bulkWriter.delete(this.index, this.type, getId(), object);
+            return;
+        }
         DeleteRequest request = Requests.deleteRequest(this.index).type(this.type).id(getId());
         if (object.meta(ControlKeys._version.name()) != null) {
             request.versionType(VersionType.EXTERNAL)
@@ -258,6 +323,7 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
         if (logger.isTraceEnabled()) {
             logger.trace("adding bulk delete action {}/{}/{}", request.index(), request.type(), request.id());
         }
+        position.incrementAndGet();
         clientAPI.bulkDelete(request);
     }
 
@@ -278,6 +344,10 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
         if (getId() == null) {
             return; // skip if no doc is specified to delete
         }
+        if (bulkWriter != null) {
+            bulkWriter.update(this.index, this.type, getId(), object);
+            return;
+        }
         UpdateRequest request = new UpdateRequest().index(this.index).type(this.type).id(getId()).doc(object.source());
         request.docAsUpsert(true);
 
@@ -294,6 +364,7 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
         if (logger.isTraceEnabled()) {
             logger.trace("adding bulk update action {}/{}/{}", request.index(), request.type(), request.id());
         }
+        position.incrementAndGet();
         clientAPI.bulkUpdate(request);
     }
 
@@ -302,16 +373,91 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
         if (clientAPI == null) {
             return;
         }
-        clientAPI.flushIngest();
-        // wait for all outstanding bulk requests before continuing. Estimation is 60 seconds
+        if (!flushAndWait()) {
+            logger.warn("bulk responses still outstanding after {}", maxRequestWait());
+        }
+    }
+
+    @Override
+    public long getPosition() {
+        return bulkWriter != null ? bulkWriter.getPosition() : position.get();
+    }
+
+    /**
+     * Get a future that completes when all actions up to a position are acknowledged. With the bulk writer,
+     * the future completes when the bulk responses of the actions have arrived, and actions written to the
+     * dead letter file count as acknowledged. The bulk processor of the client API does not report single
+     * actions, so the sink flushes and waits for all responses, and yields false if actions have failed since
+     * the client was created.
+     *
+     * @param position the position
+     * @return the future
+     * @throws IOException if flush fails
+     */
+    @Override
+    public Future<Boolean> acknowledged(long position) throws IOException {
+        if (bulkWriter != null) {
+            return bulkWriter.acknowledged(position);
+        }
+        PlainActionFuture<Boolean> future = PlainActionFuture.newFuture();
+        if (clientAPI == null) {
+            future.onResponse(position <= 0L);
+        } else {
+            future.onResponse(flushAndWait() && sinkMetric.getFailed().getCount() == failedBefore);
+        }
+        return future;
+    }
+
+    /**
+     * Flush and wait for all outstanding bulk requests before continuing, at most for the time
+     * given by the max_request_wait parameter
+     *
+     * @return true if all responses have arrived
+     * @throws IOException if flush fails
+     */
+    private boolean flushAndWait() throws IOException {
+        if (bulkWriter != null) {
+            bulkWriter.flush();
+        } else {
+            clientAPI.flushIngest();
+        }
         try {
-            clientAPI.waitForResponses(TimeValue.timeValueSeconds(60));
+            if (bulkWriter != null) {
+                return bulkWriter.waitForResponses(maxRequestWait());
+            }
+            clientAPI.waitForResponses(maxRequestWait());
+            return true;
         } catch (InterruptedException e) {
             logger.warn("interrupted while waiting for responses");
             Thread.currentThread().interrupt();
         } catch (ExecutionException e) {
             logger.warn("exception while executing", e);
         }
+        return false;
+    }
+
+    /**
+     * The time to wait for outstanding bulk responses
+     *
+     * @return the time value of the max_request_wait parameter
+     */
+    protected TimeValue maxRequestWait() {
+        return context.getSettings().getAsTime("max_request_wait", TimeValue.timeValueSeconds(60));
+    }
+
+    /**
+     * Submit the actions of the dead letter file again. Actions failing again are written to a new dead
+     * letter file. A file is only deleted after its actions are acknowledged, each file is waited for at
+     * most for the time given by the max_request_wait parameter.
+     *
+     * @return the number of actions
+     * @throws IOException if the dead letter file can not be read, or the actions are not acknowledged in time
+     */
+    public synchronized int replay() throws IOException {
+        if (bulkWriter == null || deadLetterLog == null) {
+            throw new IllegalStateException("replay requires bulk_direct and dead_letter_file");
+        }
+        return deadLetterLog.replay(bulkWriter, maxRequestWait());
     }
 
     private ClientAPI createClient(Settings settings) {
@@ -348,6 +494,77 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
                 .toBulkTransportClient();
     }
 
+    /**
+     * Create a writer that encodes bulk actions in bulk format, with the bulk limits of the client API.
+     * If the bulk writer is adaptive, the limits are the upper bounds of the bulk size and the concurrency.
+     *
+     * @param settings the settings
+     * @return the bulk writer
+     */
+    private BulkWriter createBulkWriter(Settings settings) {
+        int maxActions = settings.getAsInt("max_bulk_actions", 10000);
+        long maxVolume = settings.getAsBytesSize("max_bulk_volume", ByteSizeValue.parseBytesSizeValue("10m", "")).bytes();
+        int maxConcurrentRequests = settings.getAsInt("max_concurrent_bulk_requests", Runtime.getRuntime().availableProcessors() * 2);
+        BulkWriter bulkWriter = new BulkWriter(clientAPI.client(), contentType, maxActions, maxVolume, maxConcurrentRequests,
+                settings.getAsTime("flush_interval", TimeValue.timeValueSeconds(5)));
+        if (settings.get("max_bulk_inflight") != null) {
+            bulkWriter.setMaxInFlightBytes(settings.getAsBytesSize("max_bulk_inflight", null).bytes());
+        }
+        if (settings.getAsBoolean("bulk_adaptive", false)) {
+            bulkWriter.setController(new BulkController(settings.getAsInt("min_bulk_actions", 100), maxActions, maxVolume,
+                    settings.getAsInt("min_concurrent_bulk_requests", 1), maxConcurrentRequests,
+                    settings.getAsTime("bulk_target_latency", TimeValue.timeValueSeconds(1)).nanos()));
+        }
+        bulkWriter.setRetries(settings.getAsInt("max_bulk_retries", 3),
+                settings.getAsTime("bulk_retry_backoff", TimeValue.timeValueMillis(100)),
+                settings.getAsTime("bulk_retry_max_backoff", TimeValue.timeValueSeconds(30)));
+        String deadLetterFile = settings.get("dead_letter_file");
+        if (deadLetterFile != null) {
+            deadLetterLog = new DeadLetterLog(new File(deadLetterFile),
+                    settings.getAsBytesSize("dead_letter_max_size", ByteSizeValue.parseBytesSizeValue("100m", "")).bytes(),
+                    settings.getAsInt("dead_letter_max_files", 5));
+            bulkWriter.setDeadLetterLog(deadLetterLog);
+        }
+        return bulkWriter.setMetric(sinkMetric);
+    }
+
+    private void closeBulkWriter() throws IOException {
+        if (bulkWriter != null) {
+            bulkWriter.close();
+            bulkWriter = null;
+        }
+        if (deadLetterLog != null) {
+            deadLetterLog.close();
+            deadLetterLog = null;
+        }
+    }
+
+    /**
+     * Resolve the index name, set the default index and type, and create the index
+     *
+     * @param settings the settings
+     * @param index    the index name, with the date pattern applied
+     * @param type     the type
+     * @throws IOException if the index can not be created
+     */
+    private void openIndex(Settings settings, String index, String type) throws IOException {
+        String resolved = index;
+        try {
+            resolved = resolveAlias(index);
+        } catch (Exception e) {
+            logger.warn("can not resolve index {}", index);
+        }
+        setIndex(resolved);
+        setType(type);
+        try {
+            createIndex(settings, resolved, type);
+        } catch (IndexAlreadyExistsException e) {
+            logger.warn(e.getMessage());
+        }
+        this.indexName = index;
+        this.resolvedIndex = resolved;
+    }
+
     private void createIndex(Settings settings, String index, String type) throws IOException {
         if (index == null) {
             return;
@@ -369,6 +586,14 @@ public class StandardSink<C extends StandardContext> implements Sink<C> {
                     logger.info("creating index {} type {} with mapping {}", index, type, mappings);
                     clientAPI.newIndex(index, indexSettings, mappings);
                     logger.info("index created");
+                    if (context.isKeepAlive()) {
+                        // the client is not stopped after a run, so the refresh interval of the index is kept
+                        if (indexSettings.get("bulk." + index + ".refresh_interval.start") != null ||
+                                indexSettings.get("bulk." + index + ".refresh_interval.stop") != null) {
+                            logger.warn("keep_alive is set, bulk.{}.refresh_interval.start/stop are ignored", index);
+                        }
+                        return;
+                    }
                     long startRefreshInterval = indexSettings.getAsTime("bulk." + index + ".refresh_interval.start",
                                     TimeValue.timeValueMillis(-1L)).getMillis();
                     long stopRefreshInterval = indexSettings.getAsTime("bulk." + index + ".refresh_interval.stop",
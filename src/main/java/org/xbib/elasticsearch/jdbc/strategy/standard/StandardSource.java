@@ -20,13 +20,31 @@ import org.apache.logging.log4j.Logger;
 import org.elasticsearch.common.unit.TimeValue;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
 import org.xbib.elasticsearch.common.keyvalue.KeyValueStreamListener;
+import org.xbib.elasticsearch.common.util.ConnectionPool;
+import org.xbib.elasticsearch.common.util.ControlKeys;
 import org.xbib.elasticsearch.common.util.ExceptionFormatter;
+import org.xbib.elasticsearch.common.util.FetchSizeController;
+import org.xbib.elasticsearch.common.util.KeysetPagination;
+import org.xbib.elasticsearch.common.util.LobReader;
+import org.xbib.elasticsearch.common.util.PipelinedSinkKeyValueStreamListener;
+import org.xbib.elasticsearch.common.util.PlainKeyValueStreamListener;
+import org.xbib.elasticsearch.common.util.RangePartitioner;
+import org.xbib.elasticsearch.common.util.RawJson;
+import org.xbib.elasticsearch.common.util.StatementCache;
+import org.xbib.elasticsearch.common.util.StringDictionary;
 import org.xbib.elasticsearch.common.metrics.SourceMetric;
+import org.xbib.elasticsearch.jdbc.strategy.Dialect;
 import org.xbib.elasticsearch.jdbc.strategy.JDBCSource;
+import org.xbib.elasticsearch.jdbc.strategy.Sink;
 import org.xbib.elasticsearch.common.util.SinkKeyValueStreamListener;
 import org.xbib.elasticsearch.common.util.SQLCommand;
+import org.xbib.elasticsearch.common.util.WriteBatch;
+import org.xbib.elasticsearch.jdbc.strategy.dialect.StandardDialect;
 
+import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Array;
@@ -37,7 +55,6 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.Date;
 import java.sql.DriverManager;
-import java.sql.NClob;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -53,14 +70,26 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Standard source implementation.
@@ -93,10 +122,25 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
 
     protected DateTimeZone dateTimeZone;
 
+    /**
+     * The formatter for fetched JDBC time values, in the time zone of the source
+     */
+    private DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.dateTime();
+
+    /**
+     * If fetched JDBC time values are passed as milliseconds since the epoch instead of formatted strings
+     */
+    private boolean epochMillis;
+
     private boolean autocommit;
 
     private int fetchSize;
 
+    /**
+     * The controller for an adaptive fetch size, or null for a fixed fetch size
+     */
+    private FetchSizeController fetchSizeController;
+
     private int maxRows;
 
     private int retries = 1;
@@ -117,6 +161,34 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
 
     private boolean shouldDetectJson;
 
+    private List<String> jsonColumns;
+
+    private int jsonSampleSize = 100;
+
+    private RawJson.Mode jsonPassthrough;
+
+    /**
+     * The keys of the columns of the current result set with a JSON column type
+     */
+    private List<String> jsonKeys;
+
+    private List<String> geoColumns;
+
+    private int geoSampleSize = 100;
+
+    /**
+     * The keys of the columns of the current result set with a geometry column type
+     */
+    private List<String> geoKeys;
+
+    private long groupMemoryLimit = -1L;
+
+    private File groupSpillDirectory;
+
+    private int stringDictionarySize;
+
+    private int stringDictionarySample = 1000;
+
     private boolean shouldPrepareResultSetMetadata;
 
     private boolean shouldPrepareDatabaseMetadata;
@@ -141,6 +213,65 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
 
     private boolean shouldTreatBinaryAsString;
 
+    /**
+     * The dialect of the JDBC driver, and the session SQL executed on each read connection
+     */
+    private Dialect dialect = new StandardDialect();
+
+    private List<String> sessionSQL = Collections.emptyList();
+
+    /**
+     * The connection pools that live across runs, or null if connections are not pooled
+     */
+    private ConnectionPool readPool;
+
+    private ConnectionPool writePool;
+
+    private int statementCacheSize;
+
+    private int pipelineQueueSize;
+
+    /**
+     * The size limit for large object values, or -1 for no limit
+     */
+    private long lobMaxSize = -1L;
+
+    private LobReader.Policy lobPolicy = LobReader.Policy.TRUNCATE;
+
+    private LobReader lobReader;
+
+    /**
+     * The prepared statement caches of the current read and write connection, or null
+     */
+    private StatementCache readStatements;
+
+    private StatementCache writeStatements;
+
+    /**
+     * The parameter binders of the SQL commands, compiled once per command
+     */
+    private final Map<SQLCommand, ParameterBinder[]> binders = new IdentityHashMap<SQLCommand, ParameterBinder[]>();
+
+    /**
+     * The pending rows of the batched write statements, shared with the partition sources
+     */
+    private Map<SQLCommand, WriteBatch> writeBatches;
+
+    /**
+     * False for partition sources, they only collect rows, the batches are executed by the source of the run
+     */
+    private boolean shouldExecuteWriteBatches = true;
+
+    /**
+     * The column decoders of the current result set, built once before the rows are fetched
+     */
+    private ColumnDecoder[] decoders;
+
+    /**
+     * The value buffer for the current result set, reused for each row
+     */
+    private List<Object> rowValues;
+
     private final static SourceMetric sourceMetric = new SourceMetric().start();
 
     @Override
@@ -215,9 +346,26 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
         logger.debug("calendar timezone for JDBC timestamps = {}", calendar.getTimeZone().getDisplayName());
         // for formatting fetched JDBC time values
         this.dateTimeZone = DateTimeZone.forTimeZone(timezone);
+        this.dateTimeFormatter = ISODateTimeFormat.dateTime().withZone(dateTimeZone);
+        return this;
+    }
+
+    @Override
+    public StandardSource<C> setTimestampFormat(String timestampFormat) {
+        if ("epoch_millis".equals(timestampFormat)) {
+            this.epochMillis = true;
+        } else if ("iso".equals(timestampFormat)) {
+            this.epochMillis = false;
+        } else {
+            throw new IllegalArgumentException("unknown timestamp format: " + timestampFormat);
+        }
         return this;
     }
 
+    public String getTimestampFormat() {
+        return epochMillis ? "epoch_millis" : "iso";
+    }
+
     public StandardSource<C> setAutoCommit(boolean autocommit) {
         this.autocommit = autocommit;
         return this;
@@ -233,7 +381,13 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
     }
 
     public int getFetchSize() {
-        return fetchSize;
+        return fetchSizeController != null ? fetchSizeController.getFetchSize() : fetchSize;
+    }
+
+    @Override
+    public StandardSource<C> setFetchSizeController(FetchSizeController fetchSizeController) {
+        this.fetchSizeController = fetchSizeController;
+        return this;
     }
 
     public StandardSource<C>  setMaxRows(int maxRows) {
@@ -342,6 +496,78 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
         return shouldDetectJson;
     }
 
+    @Override
+    public StandardSource<C> setJsonColumns(List<String> jsonColumns) {
+        this.jsonColumns = jsonColumns;
+        return this;
+    }
+
+    public List<String> getJsonColumns() {
+        return jsonColumns;
+    }
+
+    @Override
+    public StandardSource<C> setJsonSampleSize(int jsonSampleSize) {
+        this.jsonSampleSize = jsonSampleSize;
+        return this;
+    }
+
+    public int getJsonSampleSize() {
+        return jsonSampleSize;
+    }
+
+    @Override
+    public StandardSource<C> setJsonPassthrough(RawJson.Mode jsonPassthrough) {
+        this.jsonPassthrough = jsonPassthrough;
+        return this;
+    }
+
+    public RawJson.Mode getJsonPassthrough() {
+        return jsonPassthrough;
+    }
+
+    @Override
+    public StandardSource<C> setGeoColumns(List<String> geoColumns) {
+        this.geoColumns = geoColumns;
+        return this;
+    }
+
+    public List<String> getGeoColumns() {
+        return geoColumns;
+    }
+
+    @Override
+    public StandardSource<C> setGeoSampleSize(int geoSampleSize) {
+        this.geoSampleSize = geoSampleSize;
+        return this;
+    }
+
+    public int getGeoSampleSize() {
+        return geoSampleSize;
+    }
+
+    @Override
+    public StandardSource<C> setGroupById(long memoryLimit, File spillDirectory) {
+        this.groupMemoryLimit = memoryLimit;
+        this.groupSpillDirectory = spillDirectory;
+        return this;
+    }
+
+    public long getGroupMemoryLimit() {
+        return groupMemoryLimit;
+    }
+
+    @Override
+    public StandardSource<C> setStringDictionary(int size, int sampleSize) {
+        this.stringDictionarySize = size;
+        this.stringDictionarySample = sampleSize;
+        return this;
+    }
+
+    public int getStringDictionarySize() {
+        return stringDictionarySize;
+    }
+
     public StandardSource<C> shouldPrepareResultSetMetadata(boolean shouldPrepareResultSetMetadata) {
         this.shouldPrepareResultSetMetadata = shouldPrepareResultSetMetadata;
         return this;
@@ -450,6 +676,89 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
         return shouldTreatBinaryAsString;
     }
 
+    @Override
+    public StandardSource<C> setDialect(Dialect dialect) {
+        this.dialect = dialect;
+        return this;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    @Override
+    public StandardSource<C> setSessionSQL(List<String> sessionSQL) {
+        this.sessionSQL = sessionSQL != null ? sessionSQL : Collections.<String>emptyList();
+        return this;
+    }
+
+    public List<String> getSessionSQL() {
+        return sessionSQL;
+    }
+
+    @Override
+    public StandardSource<C> setConnectionPools(ConnectionPool readPool, ConnectionPool writePool) {
+        this.readPool = readPool;
+        this.writePool = writePool;
+        return this;
+    }
+
+    @Override
+    public StandardSource<C> setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    @Override
+    public StandardSource<C> setPipelineQueueSize(int pipelineQueueSize) {
+        this.pipelineQueueSize = pipelineQueueSize;
+        return this;
+    }
+
+    public int getPipelineQueueSize() {
+        return pipelineQueueSize;
+    }
+
+    @Override
+    public StandardSource<C> setLobLimit(long lobMaxSize, LobReader.Policy lobPolicy) {
+        this.lobMaxSize = lobMaxSize;
+        this.lobPolicy = lobPolicy;
+        this.lobReader = null;
+        return this;
+    }
+
+    public long getLobMaxSize() {
+        return lobMaxSize;
+    }
+
+    public LobReader.Policy getLobPolicy() {
+        return lobPolicy;
+    }
+
+    /**
+     * The reader for large object values. The reader reuses its chunk buffers, it is created for each source.
+     *
+     * @return the large object reader
+     */
+    protected LobReader getLobReader() {
+        if (lobReader == null) {
+            lobReader = new LobReader(lobMaxSize, lobPolicy);
+        }
+        return lobReader;
+    }
+
+    public ConnectionPool getReadConnectionPool() {
+        return readPool;
+    }
+
+    public ConnectionPool getWriteConnectionPool() {
+        return writePool;
+    }
+
     /**
      * Get JDBC connection for reading
      *
@@ -458,49 +767,29 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
      */
     @Override
     public synchronized Connection getConnectionForReading() throws SQLException {
-        boolean invalid = readConnection == null || readConnection.isClosed();
-        try {
-            invalid = invalid || !readConnection.isValid(5);
-        } catch (AbstractMethodError e) {
-            // old/buggy JDBC driver
-            logger.debug(e.getMessage());
-        } catch (SQLFeatureNotSupportedException e) {
-            // postgresql does not support isValid()
-            logger.debug(e.getMessage());
+        if (readPool != null) {
+            return getPooledConnectionForReading();
         }
+        boolean invalid = readConnection == null || readConnection.isClosed()
+                || !ConnectionPool.validate(readConnection);
         if (invalid) {
             int retries = getRetries();
             while (retries > 0) {
                 retries--;
                 try {
-                    if (user != null) {
-                        Properties properties = new Properties();
-                        properties.put("user", user);
-                        if (password != null) {
-                            properties.put("password", password);
-                        }
-                        if (getConnectionProperties() != null) {
-                            properties.putAll(getConnectionProperties());
-                        }
-                        readConnection = DriverManager.getConnection(url, properties);
-                    } else {
-                        readConnection = DriverManager.getConnection(url);
-                    }
+                    Properties properties = getProperties();
+                    dialect.addStreamingProperties(url, properties, getFetchSize());
+                    readConnection = properties.isEmpty() ?
+                            DriverManager.getConnection(url) : DriverManager.getConnection(url, properties);
                     DatabaseMetaData metaData = readConnection.getMetaData();
                     if (shouldPrepareDatabaseMetadata()) {
-                        prepare(metaData);
+                        setLastDatabaseMetadata(prepare(metaData));
                     }
                     if (metaData.getTimeDateFunctions().contains("TIMESTAMPDIFF")) {
                         setTimestampDiffSupported(true);
                     }
-                    // "readonly" is required by MySQL for large result streaming
-                    readConnection.setReadOnly(true);
-                    // Postgresql cursor mode condition:
-                    // fetchsize > 0, no scrollable result set, no auto commit, no holdable cursors over commit
-                    // https://github.com/pgjdbc/pgjdbc/blob/master/org/postgresql/jdbc2/AbstractJdbc2Statement.java#L514
-                    //readConnection.setHoldability(ResultSet.HOLD_CURSORS_OVER_COMMIT);
-                    // many drivers don't like autocommit=true
-                    readConnection.setAutoCommit(getAutoCommit());
+                    dialect.prepareForReading(readConnection, getAutoCommit());
+                    executeSessionSQL(readConnection);
                     return readConnection;
                 } catch (SQLException e) {
                     logger.error("while opening read connection: " + url + " " + e.getMessage(), e);
@@ -524,34 +813,21 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
      */
     @Override
     public synchronized Connection getConnectionForWriting() throws SQLException {
-        boolean invalid = writeConnection == null || writeConnection.isClosed();
-        try {
-            invalid = invalid || !writeConnection.isValid(5);
-        } catch (AbstractMethodError e) {
-            // old/buggy JDBC driver do not implement isValid()
-        } catch (SQLFeatureNotSupportedException e) {
-            // Example: postgresql does implement but not support isValid()
+        if (writePool != null) {
+            return getPooledConnectionForWriting();
         }
+        boolean invalid = writeConnection == null || writeConnection.isClosed()
+                || !ConnectionPool.validate(writeConnection);
         if (invalid) {
             int retries = getRetries();
             while (retries > 0) {
                 retries--;
                 try {
-                    if (user != null) {
-                        Properties properties = new Properties();
-                        properties.put("user", user);
-                        if (password != null) {
-                            properties.put("password", password);
-                        }
-                        if (getConnectionProperties() != null) {
-                            properties.putAll(getConnectionProperties());
-                        }
-                        writeConnection = DriverManager.getConnection(url, properties);
-                    } else {
-                        writeConnection = DriverManager.getConnection(url);
-                    }
+                    Properties properties = getProperties();
+                    writeConnection = properties.isEmpty() ?
+                            DriverManager.getConnection(url) : DriverManager.getConnection(url, properties);
                     // many drivers don't like autocommit=true
-                    writeConnection.setAutoCommit(getAutoCommit());
+                    dialect.prepareForWriting(writeConnection, getAutoCommit());
                     return writeConnection;
                 } catch (SQLNonTransientConnectionException e) {
                     // ignore derby drop=true silently
@@ -569,6 +845,136 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
         return writeConnection;
     }
 
+    /**
+     * Get read connection from the connection pool. The connection is kept for the rest of the run,
+     * and validated again only after the validation interval of the pool.
+     *
+     * @return the connection
+     * @throws SQLException when SQL execution gives an error
+     */
+    private Connection getPooledConnectionForReading() throws SQLException {
+        if (readConnection != null) {
+            if (readPool.isValid(readConnection)) {
+                return readConnection;
+            }
+            readPool.invalidate(readConnection);
+            readConnection = null;
+        }
+        int retries = getRetries();
+        while (retries > 0) {
+            retries--;
+            try {
+                Connection connection = readPool.acquire(getMaxRetryWait().millis());
+                Map<String, Object> metadata = readPool.getDatabaseMetadata();
+                if (metadata == null) {
+                    // probe the database only once per pool
+                    metadata = prepare(connection.getMetaData());
+                    readPool.setDatabaseMetadata(metadata);
+                }
+                if (shouldPrepareDatabaseMetadata()) {
+                    setLastDatabaseMetadata(metadata);
+                }
+                Object functions = metadata.get("$meta.db.timedatefunctions");
+                if (functions != null && functions.toString().contains("TIMESTAMPDIFF")) {
+                    setTimestampDiffSupported(true);
+                }
+                dialect.prepareForReading(connection, getAutoCommit());
+                executeSessionSQL(connection);
+                readConnection = connection;
+                return readConnection;
+            } catch (SQLException e) {
+                logger.error("while opening read connection: " + url + " " + e.getMessage(), e);
+                try {
+                    logger.debug("delaying for {} seconds...", getMaxRetryWait().seconds());
+                    Thread.sleep(getMaxRetryWait().millis());
+                } catch (InterruptedException ex) {
+                    // do nothing
+                }
+            }
+        }
+        return readConnection;
+    }
+
+    /**
+     * Get write connection from the connection pool. The connection is kept for the rest of the run,
+     * and validated again only after the validation interval of the pool.
+     *
+     * @return the connection
+     * @throws SQLException when SQL execution gives an error
+     */
+    private Connection getPooledConnectionForWriting() throws SQLException {
+        if (writeConnection != null) {
+            if (writePool.isValid(writeConnection)) {
+                return writeConnection;
+            }
+            writePool.invalidate(writeConnection);
+            writeConnection = null;
+        }
+        int retries = getRetries();
+        while (retries > 0) {
+            retries--;
+            try {
+                Connection connection = writePool.acquire(getMaxRetryWait().millis());
+                dialect.prepareForWriting(connection, getAutoCommit());
+                writeConnection = connection;
+                return writeConnection;
+            } catch (SQLNonTransientConnectionException e) {
+                // ignore derby drop=true silently
+            } catch (SQLException e) {
+                context.setThrowable(e);
+                logger.error("while opening write connection: " + url + " " + e.getMessage(), e);
+                try {
+                    Thread.sleep(getMaxRetryWait().millis());
+                } catch (InterruptedException ex) {
+                    // do nothing
+                }
+            }
+        }
+        return writeConnection;
+    }
+
+    /**
+     * The connection properties, with user and password
+     *
+     * @return the connection properties, empty if there is no user
+     */
+    private Properties getProperties() {
+        Properties properties = new Properties();
+        if (user != null) {
+            properties.put("user", user);
+            if (password != null) {
+                properties.put("password", password);
+            }
+            if (getConnectionProperties() != null) {
+                properties.putAll(getConnectionProperties());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Execute the session SQL of the dialect and the configured session SQL on a read connection
+     *
+     * @param connection the read connection
+     * @throws SQLException when SQL execution gives an error
+     */
+    private void executeSessionSQL(Connection connection) throws SQLException {
+        if (dialect.getSessionSQL().isEmpty() && sessionSQL.isEmpty()) {
+            return;
+        }
+        List<String> list = new ArrayList<String>(dialect.getSessionSQL());
+        list.addAll(sessionSQL);
+        Statement statement = connection.createStatement();
+        try {
+            for (String sql : list) {
+                logger.debug("executing session SQL: {}", sql);
+                statement.execute(sql);
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
     @Override
     public void beforeFetch() throws Exception {
     }
@@ -583,12 +989,27 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
     public void fetch() throws SQLException, IOException {
         logger.debug("fetching, {} SQL commands", getStatements().size());
         DateTime dateTime = new DateTime();
+        writeBatches = new LinkedHashMap<SQLCommand, WriteBatch>();
+        for (SQLCommand command : getStatements()) {
+            if (command.isBatched()) {
+                writeBatches.put(command, new WriteBatch(command.getBatchSize(), command.getBatchInterval().millis()));
+            }
+        }
         try {
             for (SQLCommand command : getStatements()) {
                 try {
                     if (command.isCallable()) {
                         logger.debug("{} executing callable SQL: {}", this, command);
                         executeCallable(command);
+                    } else if (command.isBatched()) {
+                        logger.debug("{} executing batched SQL: {}", this, command);
+                        execute(command, writeBatches.get(command), 0, true);
+                    } else if (command.isPartitioned()) {
+                        logger.debug("{} executing partitioned SQL: {}", this, command);
+                        executePartitioned(command);
+                    } else if (command.isPaged()) {
+                        logger.debug("{} executing paged SQL: {}", this, command);
+                        executePaged(command);
                     } else if (!command.getParameters().isEmpty()) {
                         logger.debug("{} executing SQL with params: {}", this, command);
                         executeWithParameter(command);
@@ -608,6 +1029,15 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
                     if (command.isCallable()) {
                         logger.debug("retrying, executing callable SQL: {}", command);
                         executeCallable(command);
+                    } else if (command.isBatched()) {
+                        logger.debug("retrying, executing batched SQL: {}", command);
+                        execute(command, writeBatches.get(command), 0, true);
+                    } else if (command.isPartitioned()) {
+                        logger.debug("retrying, executing partitioned SQL: {}", command);
+                        executePartitioned(command);
+                    } else if (command.isPaged()) {
+                        logger.debug("retrying, executing paged SQL: {}", command);
+                        executePaged(command);
                     } else if (!command.getParameters().isEmpty()) {
                         logger.debug("retrying, executing SQL with params: {}", command);
                         executeWithParameter(command);
@@ -622,6 +1052,8 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
                     }
                 }
             }
+            // rows fetched after a batched write statement in the list
+            executeWriteBatches();
         } catch (Exception e) {
             if (sourceMetric != null) {
                 sourceMetric.getFailed().inc();
@@ -671,21 +1103,18 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
                 if (connection != null) {
                     logger.debug("{} using read connection {} for executing query", this, connection);
                     statement = connection.createStatement();
-                    try {
-                        statement.setQueryTimeout(getQueryTimeout());
-                    } catch (SQLFeatureNotSupportedException e) {
-                        // Postgresql does not support setQueryTimeout()
-                        logger.warn("driver does not support setQueryTimeout(), skipped");
+                    if (dialect.supportsQueryTimeout()) {
+                        try {
+                            statement.setQueryTimeout(getQueryTimeout());
+                        } catch (SQLFeatureNotSupportedException e) {
+                            logger.warn("driver does not support setQueryTimeout(), skipped");
+                        }
                     }
                     results = executeQuery(statement, command.getSQL());
                     if (shouldPrepareResultSetMetadata()) {
                         prepare(results.getMetaData());
                     }
-                    SinkKeyValueStreamListener<Object, Object> listener = new SinkKeyValueStreamListener<Object, Object>()
-                            .output(context.getSink())
-                            .shouldIgnoreNull(shouldIgnoreNull())
-                            .shouldDetectGeo(shouldDetectGeo())
-                            .shouldDetectJson(shouldDetectJson());
+                    SinkKeyValueStreamListener<Object, Object> listener = createListener(context.getSink());
                     merge(command, results, listener);
                 }
             } else {
@@ -716,18 +1145,14 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
         try {
             if (command.isQuery()) {
                 statement = prepareQuery(command.getSQL());
-                bind(statement, command.getParameters());
+                bind(statement, command);
                 logger.info("execute sql is {} ", statement.toString());
                 results = executeQuery(statement);
-                SinkKeyValueStreamListener<Object, Object> listener = new SinkKeyValueStreamListener<Object, Object>()
-                        .output(context.getSink())
-                        .shouldIgnoreNull(shouldIgnoreNull())
-                        .shouldDetectGeo(shouldDetectGeo())
-                        .shouldDetectJson(shouldDetectJson());
+                SinkKeyValueStreamListener<Object, Object> listener = createListener(context.getSink());
                 merge(command, results, listener);
             } else {
                 statement = prepareUpdate(command.getSQL());
-                bind(statement, command.getParameters());
+                bind(statement, command);
                 executeUpdate(statement);
             }
         } finally {
@@ -737,24 +1162,317 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
     }
 
     /**
-     * Execute callable SQL command
+     * Execute SQL query command in range partitions. The minimum and maximum value of the
+     * partition column is selected first, then the statement is rewritten into disjoint range
+     * predicates. Each partition is fetched in its own thread on its own read connection,
+     * and all partitions feed the same sink. Rows with a null value in the partition column
+     * are not fetched.
      *
      * @param command the SQL command
-     * @throws SQLException when SQL execution gives an error
-     * @throws IOException  when input/output error occurs
+     * @throws Exception when SQL execution gives an error
      */
-    private void executeCallable(SQLCommand command) throws Exception {
-        // call stored procedure
-        CallableStatement statement = null;
+    private void executePartitioned(final SQLCommand command) throws Exception {
+        Object min = null;
+        Object max = null;
+        PreparedStatement statement = null;
+        ResultSet results = null;
         try {
-            // we do not make a difference betwwen read/write and we assume
-            // it is safe to use the read connection and query the DB
-            Connection connection = getConnectionForWriting();
-            logger.debug("{} using write connection {} for executing callable statement", this, connection);
-            if (connection != null) {
-                statement = connection.prepareCall(command.getSQL());
-                if (!command.getParameters().isEmpty()) {
-                    bind(statement, command.getParameters());
+            statement = prepareQuery(RangePartitioner.rangeSQL(command.getSQL(), command.getPartitionColumn()));
+            bind(statement, command);
+            results = statement.executeQuery();
+            if (results.next()) {
+                min = results.getObject(1);
+                max = results.getObject(2);
+            }
+        } finally {
+            close(results);
+            close(statement);
+        }
+        List<RangePartitioner.Range> ranges = RangePartitioner.split(min, max, command.getPartitions());
+        logger.info("{} partitions of column {} from {} to {}: {}",
+                ranges.size(), command.getPartitionColumn(), min, max, ranges);
+        if (ranges.isEmpty()) {
+            setLastRowCount(0L);
+            return;
+        }
+        final Sink sink = context.getSink();
+        final RangePartitioner.Range first = ranges.get(0);
+        ExecutorService executorService = Executors.newFixedThreadPool(ranges.size());
+        List<Future<Long>> futures = new LinkedList<Future<Long>>();
+        try {
+            for (final RangePartitioner.Range range : ranges) {
+                futures.add(executorService.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        StandardSource<C> source = newPartitionSource();
+                        try {
+                            return source.executePartition(command, range, sink, range == first);
+                        } finally {
+                            source.closeReading();
+                        }
+                    }
+                }));
+            }
+            long rows = 0L;
+            for (Future<Long> future : futures) {
+                try {
+                    rows += future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            setLastRowCount(rows);
+        } finally {
+            executorService.shutdownNow();
+        }
+        executeWriteBatches();
+    }
+
+    /**
+     * Fetch a single range partition of an SQL query command.
+     *
+     * @param command the SQL command
+     * @param range   the range partition
+     * @param sink    the sink shared by all partitions
+     * @param check   true if the columns of the result should be checked
+     * @return the number of rows fetched
+     * @throws Exception when SQL execution gives an error
+     */
+    private long executePartition(SQLCommand command, RangePartitioner.Range range, final Sink sink, boolean check)
+            throws Exception {
+        PreparedStatement statement = null;
+        ResultSet results = null;
+        try {
+            String sql = RangePartitioner.partitionSQL(command.getSQL(), command.getPartitionColumn(), range.isLast());
+            statement = prepareQuery(sql);
+            int n = bind(statement, command);
+            bind(statement, n + 1, range.getLower());
+            bind(statement, n + 2, range.getUpper());
+            logger.debug("{} executing partition {}", this, range);
+            results = executeQuery(statement);
+            if (check) {
+                checkPartitionColumn(command, results.getMetaData());
+            }
+            // the sink is shared by all partitions, the listener serializes the index operations on the sink
+            SinkKeyValueStreamListener<Object, Object> listener = createListener(sink);
+            merge(command, results, listener);
+            return getLastRowCount();
+        } finally {
+            close(results);
+            close(statement);
+        }
+    }
+
+    /**
+     * Warn if rows are merged into documents by _id, but the partition column is not the _id column. Each
+     * partition has its own listener, so the rows of a document with partition column values in more than one
+     * partition are merged into partial documents, and the last partial document overwrites the others.
+     *
+     * @param command  the SQL command
+     * @param metadata the metadata of a partition result
+     * @throws SQLException if the metadata can not be read
+     */
+    private void checkPartitionColumn(SQLCommand command, ResultSetMetaData metadata) throws SQLException {
+        String label = KeysetPagination.label(command.getPartitionColumn());
+        if (ControlKeys._id.name().equals(label)) {
+            return;
+        }
+        for (int i = 1; i <= metadata.getColumnCount(); i++) {
+            if (ControlKeys._id.name().equals(metadata.getColumnLabel(i))) {
+                logger.warn("partition column {} is not the _id column, the rows of a document must have the same " +
+                        "value in the partition column, otherwise the document is split and only the last part " +
+                        "is kept", command.getPartitionColumn());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Execute SQL query command in pages by keyset pagination. Each page selects the rows with a key
+     * greater than the last key of the previous page. The last key of a complete page is recorded as
+     * checkpoint of the statement as soon as the sink has acknowledged all documents up to the page,
+     * so a retry or a new run after a crash resumes with the next page. Fetching continues while the
+     * documents of earlier pages are in flight. The checkpoint is removed when the documents of the
+     * last page are acknowledged.
+     *
+     * @param command the SQL command
+     * @throws Exception when SQL execution gives an error
+     */
+    private void executePaged(SQLCommand command) throws Exception {
+        String checkpoint = "sql_" + getStatements().indexOf(command);
+        Object lastKey = context.getCheckpoint(checkpoint);
+        if (lastKey != null) {
+            logger.info("resuming paged SQL {} after key {}", command, lastKey);
+        }
+        Sink sink = context.getSink();
+        SinkKeyValueStreamListener<Object, Object> listener = createListener(sink);
+        if (sourceMetric != null) {
+            sourceMetric.resetCurrentRows();
+        }
+        // the last keys of the pages, by the acknowledgement of the documents up to the page
+        Map<Future<?>, Object> pages = new LinkedHashMap<>();
+        long rows = 0L;
+        long pageRows;
+        do {
+            PreparedStatement statement = null;
+            ResultSet results = null;
+            pageRows = 0L;
+            try {
+                statement = prepareQuery(KeysetPagination.pageSQL(command.getSQL(), command.getPageKey(), lastKey == null));
+                int n = bind(statement, command);
+                if (lastKey != null) {
+                    bind(statement, n + 1, lastKey);
+                }
+                statement.setMaxRows(command.getPageSize());
+                statement.setFetchSize(getFetchSize());
+                results = statement.executeQuery();
+                int keyColumn = results.findColumn(KeysetPagination.label(command.getPageKey()));
+                beforeRows(command, results, listener);
+                while (nextRow(command, results, listener)) {
+                    lastKey = results.getObject(keyColumn);
+                    pageRows++;
+                    if (sourceMetric != null) {
+                        sourceMetric.getCurrentRows().inc();
+                        sourceMetric.getTotalRows().inc();
+                    }
+                }
+                afterRows(command, results, listener);
+            } finally {
+                abort(listener);
+                close(results);
+                close(statement);
+            }
+            rows += pageRows;
+            if (pageRows >= command.getPageSize()) {
+                pages.put(sink.acknowledged(sink.getPosition()), lastKey);
+                commit(checkpoint, pages, false);
+            }
+        } while (pageRows >= command.getPageSize());
+        // removes the checkpoint when the documents of the last page are acknowledged
+        pages.put(sink.acknowledged(sink.getPosition()), null);
+        commit(checkpoint, pages, true);
+        setLastRowCount(rows);
+        logger.debug("merged {} rows in pages", rows);
+    }
+
+    /**
+     * Advance a checkpoint to the last key of the latest page whose documents, and the documents of
+     * all pages before, are acknowledged by the sink, and write the state
+     *
+     * @param checkpoint the name of the checkpoint
+     * @param pages      the last keys of the pages not yet committed, by acknowledgement
+     * @param wait       true if all pages must be acknowledged, at most for the time given by the
+     *                   max_request_wait parameter
+     * @throws Exception if documents are lost, or the acknowledgement has failed or timed out
+     */
+    private void commit(String checkpoint, Map<Future<?>, Object> pages, boolean wait) throws Exception {
+        TimeValue timeout = context.getSettings().getAsTime("max_request_wait", TimeValue.timeValueSeconds(60));
+        boolean advanced = false;
+        Object lastKey = null;
+        Iterator<Map.Entry<Future<?>, Object>> it = pages.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Future<?>, Object> page = it.next();
+            if (!wait && !page.getKey().isDone()) {
+                break;
+            }
+            if (!Boolean.TRUE.equals(page.getKey().get(timeout.millis(), TimeUnit.MILLISECONDS))) {
+                throw new IOException("documents are lost, checkpoint " + checkpoint + " is not advanced past " +
+                        context.getCheckpoint(checkpoint));
+            }
+            it.remove();
+            lastKey = page.getValue();
+            advanced = true;
+        }
+        if (advanced) {
+            context.setCheckpoint(checkpoint, lastKey);
+            context.writeState();
+            logger.debug("pages acknowledged, checkpoint {} = {}", checkpoint, lastKey);
+        }
+    }
+
+    /**
+     * Create a source for fetching a partition. The new source shares the context, the settings and
+     * the connection pools of this source, but uses its own read connection.
+     *
+     * @return a new source
+     */
+    @SuppressWarnings("unchecked")
+    protected StandardSource<C> newPartitionSource() {
+        StandardSource<C> source = newInstance();
+        source.setContext(context);
+        source.setUrl(url);
+        source.setUser(user);
+        source.setPassword(password);
+        source.locale = locale;
+        source.timezone = timezone;
+        source.calendar = calendar != null ? (Calendar) calendar.clone() : null;
+        source.dateTimeZone = dateTimeZone;
+        source.dateTimeFormatter = dateTimeFormatter;
+        source.epochMillis = epochMillis;
+        source.autocommit = autocommit;
+        // partitions use the current fetch size, the controller is not shared between threads
+        source.fetchSize = getFetchSize();
+        source.maxRows = maxRows;
+        source.retries = retries;
+        source.maxretrywait = maxretrywait;
+        source.rounding = rounding;
+        source.scale = scale;
+        source.resultSetType = resultSetType;
+        source.resultSetConcurrency = resultSetConcurrency;
+        source.shouldIgnoreNull = shouldIgnoreNull;
+        source.shouldDetectGeo = shouldDetectGeo;
+        source.shouldDetectJson = shouldDetectJson;
+        source.jsonColumns = jsonColumns;
+        source.jsonSampleSize = jsonSampleSize;
+        source.jsonPassthrough = jsonPassthrough;
+        source.geoColumns = geoColumns;
+        source.geoSampleSize = geoSampleSize;
+        source.groupMemoryLimit = groupMemoryLimit;
+        source.groupSpillDirectory = groupSpillDirectory;
+        source.stringDictionarySize = stringDictionarySize;
+        source.stringDictionarySample = stringDictionarySample;
+        source.shouldPrepareResultSetMetadata = false;
+        source.shouldPrepareDatabaseMetadata = false;
+        source.columnNameMap = columnNameMap;
+        source.sql = sql;
+        source.queryTimeout = queryTimeout;
+        source.connectionProperties = connectionProperties;
+        source.shouldTreatBinaryAsString = shouldTreatBinaryAsString;
+        source.dialect = dialect;
+        source.sessionSQL = sessionSQL;
+        source.readPool = readPool;
+        source.writePool = writePool;
+        source.statementCacheSize = statementCacheSize;
+        source.pipelineQueueSize = pipelineQueueSize;
+        source.lobMaxSize = lobMaxSize;
+        source.lobPolicy = lobPolicy;
+        source.writeBatches = writeBatches;
+        source.shouldExecuteWriteBatches = false;
+        return source;
+    }
+
+    /**
+     * Execute callable SQL command
+     *
+     * @param command the SQL command
+     * @throws SQLException when SQL execution gives an error
+     * @throws IOException  when input/output error occurs
+     */
+    private void executeCallable(SQLCommand command) throws Exception {
+        // call stored procedure
+        CallableStatement statement = null;
+        try {
+            // we do not make a difference betwwen read/write and we assume
+            // it is safe to use the read connection and query the DB
+            Connection connection = getConnectionForWriting();
+            logger.debug("{} using write connection {} for executing callable statement", this, connection);
+            if (connection != null) {
+                statement = connection.prepareCall(command.getSQL());
+                if (!command.getParameters().isEmpty()) {
+                    bind(statement, command);
                 }
                 if (!command.getRegister().isEmpty()) {
                     register(statement, command.getRegister());
@@ -793,25 +1511,63 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
         if (listener == null) {
             return;
         }
-        beforeRows(command, results, listener);
-        long rows = 0L;
-        if (sourceMetric != null) {
-            sourceMetric.resetCurrentRows();
-        }
-        while (nextRow(command, results, listener)) {
-            rows++;
+        try {
+            beforeRows(command, results, listener);
+            long rows = 0L;
             if (sourceMetric != null) {
-                sourceMetric.getCurrentRows().inc();
-                sourceMetric.getTotalRows().inc();
+                sourceMetric.resetCurrentRows();
+            }
+            while (nextRow(command, results, listener)) {
+                rows++;
+                if (sourceMetric != null) {
+                    sourceMetric.getCurrentRows().inc();
+                    sourceMetric.getTotalRows().inc();
+                }
+            }
+            setLastRowCount(rows);
+            if (rows > 0) {
+                logger.debug("merged {} rows", rows);
+            } else {
+                logger.debug("no rows merged ");
             }
+            afterRows(command, results, listener);
+        } finally {
+            abort(listener);
         }
-        setLastRowCount(rows);
-        if (rows > 0) {
-            logger.debug("merged {} rows", rows);
-        } else {
-            logger.debug("no rows merged ");
+    }
+
+    /**
+     * Create a listener that pushes the objects of a result set to a sink. If a pipeline is configured,
+     * the objects are assembled and pushed to the sink in separate threads.
+     *
+     * @param sink the sink
+     * @return the listener
+     */
+    protected SinkKeyValueStreamListener<Object, Object> createListener(Sink sink) {
+        SinkKeyValueStreamListener<Object, Object> listener = pipelineQueueSize > 0 ?
+                new PipelinedSinkKeyValueStreamListener<Object, Object>(pipelineQueueSize).metric(sourceMetric) :
+                new SinkKeyValueStreamListener<Object, Object>();
+        return listener.output(sink)
+                .shouldIgnoreNull(shouldIgnoreNull())
+                .shouldDetectGeo(shouldDetectGeo())
+                .shouldDetectJson(shouldDetectJson())
+                .jsonColumns(jsonColumns)
+                .jsonSampleSize(jsonSampleSize)
+                .jsonPassthrough(jsonPassthrough)
+                .geoColumns(geoColumns)
+                .geoSampleSize(geoSampleSize)
+                .groupById(groupMemoryLimit, groupSpillDirectory);
+    }
+
+    /**
+     * Stop the stages of a pipelined listener that did not reach the end of the result set
+     *
+     * @param listener the listener
+     */
+    private static void abort(KeyValueStreamListener listener) {
+        if (listener instanceof PipelinedSinkKeyValueStreamListener) {
+            ((PipelinedSinkKeyValueStreamListener) listener).close();
         }
-        afterRows(command, results, listener);
     }
 
     /**
@@ -834,6 +1590,12 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
                 ResultSet.TYPE_SCROLL_INSENSITIVE : ResultSet.TYPE_FORWARD_ONLY;
         int concurrency = "CONCUR_READ_ONLY".equals(getResultSetConcurrency()) ?
                 ResultSet.CONCUR_READ_ONLY : ResultSet.CONCUR_UPDATABLE;
+        if (statementCacheSize > 0) {
+            if (readStatements == null || readStatements.getConnection() != connection) {
+                readStatements = getStatementCache(connection, readPool, readStatements);
+            }
+            return readStatements.prepare(sql, type, concurrency);
+        }
         return connection.prepareStatement(sql, type, concurrency);
     }
 
@@ -850,9 +1612,34 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
         if (connection == null) {
             throw new SQLException("can't connect to source " + url);
         }
+        if (statementCacheSize > 0) {
+            if (writeStatements == null || writeStatements.getConnection() != connection) {
+                writeStatements = getStatementCache(connection, writePool, writeStatements);
+            }
+            return writeStatements.prepare(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        }
         return connection.prepareStatement(sql);
     }
 
+    /**
+     * Get the statement cache for a connection. Pooled connections keep their statement cache
+     * in the pool, so it is reused by later runs.
+     *
+     * @param connection the connection
+     * @param pool       the connection pool or null
+     * @param previous   the statement cache of a previous connection or null
+     * @return the statement cache
+     */
+    private StatementCache getStatementCache(Connection connection, ConnectionPool pool, StatementCache previous) {
+        if (pool != null) {
+            return pool.getStatementCache(connection, statementCacheSize);
+        }
+        if (previous != null) {
+            previous.close();
+        }
+        return new StatementCache(connection, statementCacheSize);
+    }
+
     /**
      * Bind values to prepared statement
      *
@@ -1007,114 +1794,628 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
     }
 
     /**
-     * Before rows are read, let the KeyValueStreamListener know about the keys.
-     * If the SQL command was a callable statement and a register is there, look into the register map
-     * for the key names, not in the result set metadata.
+     * Before rows are read, let the KeyValueStreamListener know about the keys.
+     * If the SQL command was a callable statement and a register is there, look into the register map
+     * for the key names, not in the result set metadata.
+     *
+     * @param command  the SQL command that created this result set
+     * @param results  the result set
+     * @param listener the key/value stream listener
+     * @throws SQLException when SQL execution gives an error
+     * @throws IOException  when input/output error occurs
+     */
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public void beforeRows(SQLCommand command, ResultSet results, KeyValueStreamListener listener)
+            throws SQLException, IOException {
+        List<String> keys = new LinkedList();
+        List<String> jsonKeys = null;
+        List<String> geoKeys = null;
+        if (command != null && command.isCallable() && !command.getRegister().isEmpty()) {
+            for (Map.Entry<String, Object> me : command.getRegister().entrySet()) {
+                keys.add(me.getKey());
+            }
+            // result sets of callable statements are decoded by a plan built on the first row
+            decoders = null;
+        } else {
+            prepareDecoders(results);
+            for (ColumnDecoder decoder : decoders) {
+                if (getColumnNameMap() == null) {
+                    keys.add(decoder.label);
+                } else {
+                    keys.add(mapColumnName(decoder.label));
+                }
+            }
+            jsonKeys = mapColumnNames(this.jsonKeys);
+            geoKeys = mapColumnNames(this.geoKeys);
+        }
+        if (fetchSizeController != null) {
+            fetchSizeController.reset();
+            if (sourceMetric != null) {
+                sourceMetric.setFetchSize(fetchSizeController.getFetchSize());
+            }
+        }
+        listener.begin();
+        if ((jsonKeys != null || geoKeys != null) && listener instanceof PlainKeyValueStreamListener) {
+            ((PlainKeyValueStreamListener) listener).keys(keys, jsonKeys, geoKeys);
+        } else {
+            listener.keys(keys);
+        }
+    }
+
+    private List<String> mapColumnNames(List<String> labels) {
+        if (labels == null || getColumnNameMap() == null) {
+            return labels;
+        }
+        List<String> list = new ArrayList<String>(labels.size());
+        for (String label : labels) {
+            list.add(mapColumnName(label));
+        }
+        return list;
+    }
+
+    @Override
+    public boolean nextRow(ResultSet results, KeyValueStreamListener listener)
+            throws SQLException, IOException {
+        return nextRow(null, results, listener);
+    }
+
+    /**
+     * Get next row and prepare the values for processing. The labels of each
+     * columns are used for the ValueListener as paths for JSON object merging.
+     *
+     * @param command  the SQL command that created this result set
+     * @param results  the result set
+     * @param listener the listener
+     * @return true if row exists and was processed, false otherwise
+     * @throws SQLException when SQL execution gives an error
+     * @throws IOException  when input/output error occurs
+     */
+    @Override
+    public boolean nextRow(SQLCommand command, ResultSet results, KeyValueStreamListener listener)
+            throws SQLException, IOException {
+        if (fetchSizeController == null) {
+            if (results.next()) {
+                processRow(results, listener);
+                collect(listener);
+                return true;
+            }
+            return false;
+        }
+        long t0 = System.nanoTime();
+        if (results.next()) {
+            long nanos = System.nanoTime() - t0;
+            long size = processRow(results, listener);
+            collect(listener);
+            adapt(results, size, nanos);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void afterRows(ResultSet results, KeyValueStreamListener listener)
+            throws SQLException, IOException {
+        afterRows(null, results, listener);
+    }
+
+    /**
+     * After the rows keys and values, let the listener know about the end of
+     * the result set.
+     *
+     * @param command  the SQL command that created this result set
+     * @param results  the result set
+     * @param listener the key/value stream listener
+     * @throws SQLException when SQL execution gives an error
+     * @throws IOException  when input/output error occurs
+     */
+    @Override
+    public void afterRows(SQLCommand command, ResultSet results, KeyValueStreamListener listener)
+            throws SQLException, IOException {
+        listener.end();
+        decoders = null;
+        rowValues = null;
+        // all documents of the result set are passed to the sink
+        executeWriteBatches();
+    }
+
+    /**
+     * Add the current row to the batched write statements. A batch that is due is executed for all rows
+     * that belong to documents already passed to the sink. With a pipeline, it is not known which
+     * documents are passed, so the batches wait for the end of the result set.
+     *
+     * @param listener the key/value stream listener
+     * @throws SQLException when SQL execution gives an error
+     * @throws IOException  when input/output error occurs
+     */
+    private void collect(KeyValueStreamListener listener) throws SQLException, IOException {
+        if (writeBatches == null || writeBatches.isEmpty()) {
+            return;
+        }
+        Map<String, Object> row = getLastRow();
+        for (Map.Entry<SQLCommand, WriteBatch> me : writeBatches.entrySet()) {
+            List<Object> params = me.getKey().getParameters();
+            Object[] values = new Object[params.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object param = params.get(i);
+                values[i] = param instanceof String && row.containsKey(param) ? row.get(param) : WriteBatch.UNBOUND;
+            }
+            WriteBatch batch = me.getValue();
+            batch.add(values);
+            if (shouldExecuteWriteBatches && listener instanceof PlainKeyValueStreamListener
+                    && !(listener instanceof PipelinedSinkKeyValueStreamListener)) {
+                int held = ((PlainKeyValueStreamListener) listener).getPendingRows();
+                if (batch.isDue(held)) {
+                    execute(me.getKey(), batch, held, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Execute all pending rows of the batched write statements
+     *
+     * @throws SQLException when SQL execution gives an error
+     * @throws IOException  when input/output error occurs
+     */
+    private void executeWriteBatches() throws SQLException, IOException {
+        if (!shouldExecuteWriteBatches || writeBatches == null) {
+            return;
+        }
+        for (Map.Entry<SQLCommand, WriteBatch> me : writeBatches.entrySet()) {
+            execute(me.getKey(), me.getValue(), 0, true);
+        }
+    }
+
+    /**
+     * Execute the pending rows of a batched write statement by JDBC batch updates. The pending rows wait
+     * for the sink position that is reached when they are drained, and a row is only written after the
+     * sink has acknowledged the documents up to this position. Rows whose documents are lost, or not
+     * acknowledged within the time given by the max_request_wait parameter, are not written, and will be
+     * fetched again in the next run. If the execution fails, the rows are not written either.
+     *
+     * @param command the batched write statement
+     * @param batch   the pending rows
+     * @param held    the number of most recent rows that must be held back
+     * @param wait    true if all drained rows must be acknowledged, false if only rows whose
+     *                acknowledgement has already arrived are written
+     * @throws SQLException when SQL execution gives an error
+     * @throws IOException  when input/output error occurs
+     */
+    private void execute(SQLCommand command, WriteBatch batch, int held, boolean wait)
+            throws SQLException, IOException {
+        Sink<?> sink = context.getSink();
+        long current = sink.getPosition();
+        List<Object[]> drained = batch.drain(held);
+        if (!drained.isEmpty()) {
+            batch.await(drained, current);
+        }
+        TimeValue timeout = context.getSettings().getAsTime("max_request_wait", TimeValue.timeValueSeconds(60));
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (long position : batch.getPositions()) {
+            // do not force the submission of documents that have just been passed to the sink
+            if (!wait && position >= current) {
+                break;
+            }
+            Future<Boolean> future = sink.acknowledged(position);
+            if (!wait && !future.isDone()) {
+                break;
+            }
+            Boolean acknowledged = null;
+            try {
+                acknowledged = future.get(timeout.millis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException | TimeoutException e) {
+                logger.warn("no acknowledgement for documents up to position " + position, e);
+            }
+            if (!Boolean.TRUE.equals(acknowledged)) {
+                int n = batch.acknowledge(Long.MAX_VALUE).size();
+                logger.warn("documents up to position {} are not acknowledged, {} rows are not written: {}",
+                        position, n, command.getSQL());
+                break;
+            }
+            rows.addAll(batch.acknowledge(position));
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        ParameterBinder[] parameterBinders = binders(command);
+        PreparedStatement statement = null;
+        try {
+            statement = prepareUpdate(command.getSQL());
+            int n = 0;
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] == WriteBatch.UNBOUND) {
+                        parameterBinders[i].bind(statement, i + 1);
+                    } else if (row[i] == null) {
+                        statement.setNull(i + 1, Types.VARCHAR);
+                    } else {
+                        statement.setObject(i + 1, row[i]);
+                    }
+                }
+                statement.addBatch();
+                if (++n % batch.getSize() == 0) {
+                    statement.executeBatch();
+                }
+            }
+            if (n % batch.getSize() != 0) {
+                statement.executeBatch();
+            }
+            if (!writeConnection.getAutoCommit()) {
+                writeConnection.commit();
+            }
+            logger.debug("executed {} rows in batches of {}: {}", n, batch.getSize(), command.getSQL());
+        } catch (SQLException e) {
+            if (statement != null) {
+                statement.clearBatch();
+            }
+            throw e;
+        } finally {
+            close(statement);
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private long processRow(ResultSet results, KeyValueStreamListener listener)
+            throws SQLException, IOException {
+        if (decoders == null) {
+            prepareDecoders(results);
+        }
+        Map<String, Object> row = getLastRow();
+        long size = 0L;
+        for (int i = 0; i < decoders.length; i++) {
+            ColumnDecoder decoder = decoders[i];
+            Object value;
+            try {
+                value = decoder.decode(results);
+                if (logger.isTraceEnabled()) {
+                    logger.trace("value={} class={}", value, value != null ? value.getClass().getName() : "");
+                }
+                if (value != null) {
+                    size += decoder.size(value);
+                }
+            } catch (ParseException e) {
+                logger.warn("parse error for value {}, using null instead", results.getObject(decoder.column));
+                value = null;
+            }
+            rowValues.set(i, value);
+            row.put(decoder.rowKey, value);
+        }
+        if (size > 0L && sourceMetric != null) {
+            sourceMetric.getTotalSizeInBytes().inc(size);
+        }
+        if (listener != null) {
+            listener.values(rowValues);
+        }
+        return size;
+    }
+
+    /**
+     * Pass a row to the fetch size controller, and set a new fetch size for the next fetches of the result set
+     *
+     * @param results the result set
+     * @param size    the decoded size of the row
+     * @param nanos   the time taken to move the cursor to the row
+     */
+    private void adapt(ResultSet results, long size, long nanos) {
+        if (!fetchSizeController.row(size, nanos)) {
+            return;
+        }
+        int n = fetchSizeController.getFetchSize();
+        logger.debug("adapting fetch size to {}, row size {}, latency {} ms",
+                n, (long) fetchSizeController.getRowSize(), fetchSizeController.getLatency() / 1000000L);
+        try {
+            results.setFetchSize(n);
+        } catch (SQLException e) {
+            // some drivers accept the fetch size only on the statement, it is used for the next statement
+            logger.debug("driver does not accept fetch size on result set: " + e.getMessage());
+        }
+        if (sourceMetric != null) {
+            sourceMetric.setFetchSize(n);
+        }
+    }
+
+    /**
+     * Build the decoder plan for a result set. The result set metadata is examined only once,
+     * each column gets a decoder for its JDBC type, and the value buffer and the last row map
+     * are allocated for the column count and reused for every row.
      *
-     * @param command  the SQL command that created this result set
-     * @param results  the result set
-     * @param listener the key/value stream listener
-     * @throws SQLException when SQL execution gives an error
-     * @throws IOException  when input/output error occurs
+     * @param results the result set
+     * @throws SQLException when result set metadata can not be read
      */
-    @Override
-    @SuppressWarnings({"unchecked"})
-    public void beforeRows(SQLCommand command, ResultSet results, KeyValueStreamListener listener)
-            throws SQLException, IOException {
-        List<String> keys = new LinkedList();
-        if (command != null && command.isCallable() && !command.getRegister().isEmpty()) {
-            for (Map.Entry<String, Object> me : command.getRegister().entrySet()) {
-                keys.add(me.getKey());
+    private void prepareDecoders(ResultSet results) throws SQLException {
+        ResultSetMetaData metadata = results.getMetaData();
+        int columns = metadata.getColumnCount();
+        ColumnDecoder[] plan = new ColumnDecoder[columns];
+        List<String> list = null;
+        List<String> geoList = null;
+        for (int i = 1; i <= columns; i++) {
+            plan[i - 1] = createDecoder(i, metadata.getColumnType(i), metadata.getColumnLabel(i));
+            String typeName = shouldDetectJson || shouldDetectGeo ? metadata.getColumnTypeName(i) : null;
+            typeName = typeName != null ? typeName.toLowerCase(Locale.ROOT) : null;
+            // json, jsonb
+            if (shouldDetectJson && typeName != null && typeName.contains("json")) {
+                if (list == null) {
+                    list = new ArrayList<String>();
+                }
+                list.add(plan[i - 1].label);
             }
-        } else {
-            ResultSetMetaData metadata = results.getMetaData();
-            int columns = metadata.getColumnCount();
-            for (int i = 1; i <= columns; i++) {
-                if (getColumnNameMap() == null) {
-                    keys.add(metadata.getColumnLabel(i));
-                } else {
-                    keys.add(mapColumnName(metadata.getColumnLabel(i)));
+            // geometry, geography
+            if (shouldDetectGeo && typeName != null && (typeName.contains("geometry") || typeName.contains("geography"))) {
+                if (geoList == null) {
+                    geoList = new ArrayList<String>();
                 }
+                geoList.add(plan[i - 1].label);
             }
         }
-        listener.begin();
-        listener.keys(keys);
+        this.decoders = plan;
+        this.jsonKeys = list;
+        this.geoKeys = geoList;
+        this.rowValues = new ArrayList<Object>(Collections.nCopies(columns, null));
+        setLastRow(new HashMap<String, Object>(columns * 2));
     }
 
-    @Override
-    public boolean nextRow(ResultSet results, KeyValueStreamListener listener)
-            throws SQLException, IOException {
-        return nextRow(null, results, listener);
+    /**
+     * Create the decoder for a result set column. The frequent simple types are read with
+     * their typed getter, all other types are decoded by parseType().
+     *
+     * @param column the column position in the result set
+     * @param type   the JDBC type of the column
+     * @param label  the column label
+     * @return the column decoder
+     */
+    protected ColumnDecoder createDecoder(int column, final int type, String label) {
+        switch (type) {
+            case Types.LONGVARCHAR: {
+                if (lobMaxSize >= 0) {
+                    return new ColumnDecoder(column, type, label, -1) {
+                        @Override
+                        protected Object decode(ResultSet results) throws SQLException, IOException {
+                            return getLobReader().read(results.getCharacterStream(column), -1L, this.label);
+                        }
+                    };
+                }
+                return new ColumnDecoder(column, type, label, -1) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException {
+                        return results.getString(column);
+                    }
+                };
+            }
+            case Types.LONGNVARCHAR: {
+                if (lobMaxSize >= 0) {
+                    return new ColumnDecoder(column, type, label, -1) {
+                        @Override
+                        protected Object decode(ResultSet results) throws SQLException, IOException {
+                            return getLobReader().read(results.getNCharacterStream(column), -1L, this.label);
+                        }
+                    };
+                }
+                return new ColumnDecoder(column, type, label, -1) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException {
+                        return results.getNString(column);
+                    }
+                };
+            }
+            case Types.LONGVARBINARY: {
+                return new ColumnDecoder(column, type, label, -1) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException, IOException {
+                        byte[] b = getLobReader().read(results.getBinaryStream(column), -1L, this.label);
+                        return shouldTreatBinaryAsString() ? (b != null ? new String(b) : null) : b;
+                    }
+                };
+            }
+            case Types.BLOB:
+            case Types.CLOB:
+            case Types.NCLOB: {
+                return new ColumnDecoder(column, type, label, -1) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException, IOException {
+                        return readLob(results, column, type, this.label);
+                    }
+                };
+            }
+            case Types.CHAR:
+            case Types.VARCHAR: {
+                if (stringDictionarySize > 0) {
+                    final StringDictionary dictionary = new StringDictionary(stringDictionarySize, stringDictionarySample);
+                    return new ColumnDecoder(column, type, label, -1) {
+                        @Override
+                        protected Object decode(ResultSet results) throws SQLException {
+                            return dictionary.intern(results.getString(column));
+                        }
+                    };
+                }
+                return new ColumnDecoder(column, type, label, -1) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException {
+                        return results.getString(column);
+                    }
+                };
+            }
+            case Types.NCHAR:
+            case Types.NVARCHAR: {
+                if (stringDictionarySize > 0) {
+                    final StringDictionary dictionary = new StringDictionary(stringDictionarySize, stringDictionarySample);
+                    return new ColumnDecoder(column, type, label, -1) {
+                        @Override
+                        protected Object decode(ResultSet results) throws SQLException {
+                            return dictionary.intern(results.getNString(column));
+                        }
+                    };
+                }
+                return new ColumnDecoder(column, type, label, -1) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException {
+                        return results.getNString(column);
+                    }
+                };
+            }
+            case Types.BIGINT: {
+                return new ColumnDecoder(column, type, label, 8) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException {
+                        long l = results.getLong(column);
+                        return results.wasNull() ? null : l;
+                    }
+                };
+            }
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER: {
+                return new ColumnDecoder(column, type, label, 4) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException {
+                        try {
+                            int n = results.getInt(column);
+                            return results.wasNull() ? null : n;
+                        } catch (SQLDataException e) {
+                            long l = results.getLong(column);
+                            return results.wasNull() ? null : l;
+                        }
+                    }
+                };
+            }
+            case Types.BOOLEAN: {
+                return new ColumnDecoder(column, type, label, 1) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException {
+                        return results.getBoolean(column);
+                    }
+                };
+            }
+            case Types.BIT: {
+                return new GenericColumnDecoder(column, type, label, 1);
+            }
+            case Types.DOUBLE:
+            case Types.FLOAT: {
+                return new ColumnDecoder(column, type, label, 8) {
+                    @Override
+                    protected Object decode(ResultSet results) throws SQLException {
+                        double d = results.getDouble(column);
+                        return results.wasNull() ? null : d;
+                    }
+                };
+            }
+            case Types.REAL: {
+                return new GenericColumnDecoder(column, type, label, 8);
+            }
+            case Types.TIMESTAMP: {
+                return new ColumnDecoder(column, type, label, epochMillis ? 8 : 29) {
+                    @Override
+                    protected Object decode(ResultSet results) {
+                        try {
+                            Timestamp t = results.getTimestamp(column, calendar);
+                            return t != null ? dateValue(t.getTime()) : null;
+                        } catch (SQLException e) {
+                            // invalid timestamps like '0000-00-00 00:00:00'
+                            return null;
+                        }
+                    }
+                };
+            }
+            default: {
+                return new GenericColumnDecoder(column, type, label, -1);
+            }
+        }
     }
 
     /**
-     * Get next row and prepare the values for processing. The labels of each
-     * columns are used for the ValueListener as paths for JSON object merging.
+     * Read a BLOB, CLOB, or NCLOB value from its stream, in chunks, up to the size limit
      *
-     * @param command  the SQL command that created this result set
-     * @param results  the result set
-     * @param listener the listener
-     * @return true if row exists and was processed, false otherwise
-     * @throws SQLException when SQL execution gives an error
-     * @throws IOException  when input/output error occurs
+     * @param results the result set
+     * @param column  the column position
+     * @param type    the JDBC type of the column
+     * @param field   the field name, for messages
+     * @return the value as byte array or string, or null
+     * @throws SQLException when the value can not be read
+     * @throws IOException  when the value is above the size limit and the policy is to fail
      */
-    @Override
-    public boolean nextRow(SQLCommand command, ResultSet results, KeyValueStreamListener listener)
-            throws SQLException, IOException {
-        if (results.next()) {
-            processRow(results, listener);
-            return true;
+    private Object readLob(ResultSet results, int column, int type, String field) throws SQLException, IOException {
+        if (type == Types.BLOB) {
+            Blob blob = results.getBlob(column);
+            if (blob == null) {
+                return null;
+            }
+            try {
+                return getLobReader().read(blob.getBinaryStream(), blob.length(), field);
+            } finally {
+                blob.free();
+            }
+        }
+        Clob clob = type == Types.NCLOB ? results.getNClob(column) : results.getClob(column);
+        if (clob == null) {
+            return null;
+        }
+        try {
+            return getLobReader().read(clob.getCharacterStream(), clob.length(), field);
+        } finally {
+            clob.free();
         }
-        return false;
     }
 
-    @Override
-    public void afterRows(ResultSet results, KeyValueStreamListener listener)
-            throws SQLException, IOException {
-        afterRows(null, results, listener);
+    /**
+     * A decoder for a result set column, part of the decoder plan of a result set.
+     */
+    protected abstract static class ColumnDecoder {
+
+        protected final int column;
+
+        protected final int type;
+
+        protected final String label;
+
+        /**
+         * The key of the column in the last row map, for binding "$row.label" parameters
+         */
+        protected final String rowKey;
+
+        /**
+         * The estimated size of a value, or -1 if the size depends on the value
+         */
+        private final int width;
+
+        protected ColumnDecoder(int column, int type, String label, int width) {
+            this.column = column;
+            this.type = type;
+            this.label = label;
+            this.rowKey = "$row." + label;
+            this.width = width;
+        }
+
+        protected abstract Object decode(ResultSet results) throws SQLException, IOException, ParseException;
+
+        protected long size(Object value) {
+            if (width >= 0) {
+                return width;
+            }
+            if (value instanceof String) {
+                return ((String) value).length();
+            }
+            if (value instanceof byte[]) {
+                return ((byte[]) value).length;
+            }
+            return value.toString().length();
+        }
     }
 
     /**
-     * After the rows keys and values, let the listener know about the end of
-     * the result set.
-     *
-     * @param command  the SQL command that created this result set
-     * @param results  the result set
-     * @param listener the key/value stream listener
-     * @throws SQLException when SQL execution gives an error
-     * @throws IOException  when input/output error occurs
+     * A column decoder that decodes values by parseType().
      */
-    @Override
-    public void afterRows(SQLCommand command, ResultSet results, KeyValueStreamListener listener)
-            throws SQLException, IOException {
-        listener.end();
-    }
+    protected class GenericColumnDecoder extends ColumnDecoder {
 
-    @SuppressWarnings({"unchecked"})
-    private void processRow(ResultSet results, KeyValueStreamListener listener)
-            throws SQLException, IOException {
-        List<Object> values = new LinkedList<Object>();
-        ResultSetMetaData metadata = results.getMetaData();
-        int columns = metadata.getColumnCount();
-        setLastRow(new HashMap());
-        for (int i = 1; i <= columns; i++) {
-            try {
-                Object value = parseType(results, i, metadata.getColumnType(i), locale);
-                if (logger.isTraceEnabled()) {
-                    logger.trace("value={} class={}", value, value != null ? value.getClass().getName() : "");
-                }
-                values.add(value);
-                getLastRow().put("$row." + metadata.getColumnLabel(i), value);
-                if (value != null && sourceMetric != null) {
-                    sourceMetric.getTotalSizeInBytes().inc(value.toString().length());
-                }
-            } catch (ParseException e) {
-                logger.warn("parse error for value {}, using null instead", results.getObject(i));
-                values.add(null);
-            }
+        protected GenericColumnDecoder(int column, int type, String label, int width) {
+            super(column, type, label, width);
         }
-        if (listener != null) {
-            listener.values(values);
+
+        @Override
+        protected Object decode(ResultSet results) throws SQLException, IOException, ParseException {
+            return parseType(results, column, type, locale);
         }
     }
 
@@ -1141,6 +2442,13 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
     @Override
     public StandardSource<C> close(Statement statement) throws SQLException {
         if (statement != null) {
+            // cached statements are kept open
+            if (readStatements != null && readStatements.release(statement)) {
+                return this;
+            }
+            if (writeStatements != null && writeStatements.release(statement)) {
+                return this;
+            }
             statement.close();
         }
         return this;
@@ -1151,16 +2459,35 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
      */
     @Override
     public StandardSource<C> closeReading() {
+        if (readStatements != null) {
+            // the statement cache of a pooled connection stays with the connection
+            if (readPool == null) {
+                readStatements.close();
+            }
+            readStatements = null;
+        }
         try {
             if (readConnection != null && !readConnection.isClosed()) {
                 // always commit before close to finish cursors/transactions
                 if (!readConnection.getAutoCommit()) {
                     readConnection.commit();
                 }
-                readConnection.close();
+                if (readPool != null) {
+                    readPool.release(readConnection);
+                    readConnection = null;
+                } else {
+                    readConnection.close();
+                }
+            } else if (readPool != null && readConnection != null) {
+                readPool.invalidate(readConnection);
+                readConnection = null;
             }
         } catch (SQLException e) {
             logger.warn("while closing read connection: " + e.getMessage());
+            if (readPool != null) {
+                readPool.invalidate(readConnection);
+                readConnection = null;
+            }
         }
         return this;
     }
@@ -1170,21 +2497,40 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
      */
     @Override
     public StandardSource<C> closeWriting() {
+        if (writeStatements != null) {
+            // the statement cache of a pooled connection stays with the connection
+            if (writePool == null) {
+                writeStatements.close();
+            }
+            writeStatements = null;
+        }
         try {
             if (writeConnection != null && !writeConnection.isClosed()) {
                 // always commit before close to finish cursors/transactions
                 if (!writeConnection.getAutoCommit()) {
                     writeConnection.commit();
                 }
-                writeConnection.close();
+                if (writePool != null) {
+                    writePool.release(writeConnection);
+                    writeConnection = null;
+                } else {
+                    writeConnection.close();
+                }
+            } else if (writePool != null && writeConnection != null) {
+                writePool.invalidate(writeConnection);
+                writeConnection = null;
             }
         } catch (SQLException e) {
             logger.warn("while closing write connection: " + e.getMessage());
+            if (writePool != null) {
+                writePool.invalidate(writeConnection);
+                writeConnection = null;
+            }
         }
         return this;
     }
 
-    private void prepare(final DatabaseMetaData metaData) throws SQLException {
+    private Map<String, Object> prepare(final DatabaseMetaData metaData) throws SQLException {
         Map<String, Object> m = new HashMap<String, Object>() {
             {
                 put("$meta.db.allproceduresarecallable", metaData.allProceduresAreCallable());
@@ -1236,9 +2582,10 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
                 put("$meta.db.searchstringescape", metaData.getSearchStringEscape());
                 put("$meta.db.sqlkeywords", metaData.getSQLKeywords());
                 put("$meta.db.sqlstatetype", metaData.getSQLStateType());
+                put("$meta.db.timedatefunctions", metaData.getTimeDateFunctions());
             }
         };
-        setLastDatabaseMetadata(m);
+        return m;
     }
 
     private void prepare(final ResultSetMetaData metaData) throws SQLException {
@@ -1273,84 +2620,241 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
     }
 
     private void bind(PreparedStatement statement, int i, Object value) throws SQLException {
-        logger.debug("bind: value = {}", value);
+        compile(value).bind(statement, i);
+    }
+
+    /**
+     * Bind the parameters of an SQL command, by the binders compiled for the command
+     *
+     * @param statement the prepared statement
+     * @param command   the SQL command
+     * @return the number of bound parameters
+     * @throws SQLException when SQL execution gives an error
+     */
+    private int bind(PreparedStatement statement, SQLCommand command) throws SQLException {
+        ParameterBinder[] parameterBinders = binders(command);
+        for (int i = 0; i < parameterBinders.length; i++) {
+            parameterBinders[i].bind(statement, i + 1);
+        }
+        return parameterBinders.length;
+    }
+
+    private ParameterBinder[] binders(SQLCommand command) {
+        ParameterBinder[] parameterBinders = binders.get(command);
+        if (parameterBinders == null) {
+            parameterBinders = new ParameterBinder[command.getParameters().size()];
+            for (int i = 0; i < parameterBinders.length; i++) {
+                parameterBinders[i] = compile(command.getParameters().get(i));
+            }
+            binders.put(command, parameterBinders);
+        }
+        return parameterBinders;
+    }
+
+    /**
+     * Compile a parameter value into a binder. Variables like <code>$now</code> or <code>$metrics.counter</code>
+     * are resolved here once, the binder only fetches the current value of the variable.
+     *
+     * @param value the parameter value
+     * @return the parameter binder
+     */
+    protected ParameterBinder compile(final Object value) {
+        logger.debug("compile: value = {}", value);
         if (value == null) {
-            statement.setNull(i, Types.VARCHAR);
-        } else if (value instanceof String) {
-            String s = (String) value;
-            if ("$now".equals(s)) {
-                Timestamp t = new Timestamp(new DateTime().getMillis());
-                statement.setTimestamp(i, t, calendar);
-            } else if ("$state".equals(s)) {
-                String state = context.getState().name();
-                statement.setString(i, state);
-            } else if ("$metrics.counter".equals(s) || "$job".equals(s)) { // $job for legacy support
-                Long counter = sourceMetric != null ? sourceMetric.getCounter() : 0L;
-                statement.setLong(i, counter);
-            } else if ("$lastrowcount".equals(s)) {
-                statement.setLong(i, getLastRowCount());
-            } else if ("$lastexceptiondate".equals(s)) {
-                DateTime dateTime = context.getDateOfThrowable();
-                statement.setTimestamp(i, dateTime != null ? new Timestamp(dateTime.getMillis()) : null);
-            } else if ("$lastexception".equals(s)) {
-                statement.setString(i, ExceptionFormatter.format(context.getThrowable()));
-            } else if ("$metrics.lastexecutionstart".equals(s)) {
-                DateTime dateTime = sourceMetric != null ? sourceMetric.getLastExecutionStart() : null;
-                statement.setTimestamp(i, dateTime != null ? new Timestamp(dateTime.getMillis()) : new Timestamp(new DateTime(0).getMillis()));
-            } else if ("$metrics.lastexecutionend".equals(s)) {
-                DateTime dateTime = sourceMetric != null ? sourceMetric.getLastExecutionEnd() : null;
-                statement.setTimestamp(i, dateTime != null ? new Timestamp(dateTime.getMillis()) : null);
-            } else if ("$metrics.totalrows".equals(s)) {
-                Long count = sourceMetric != null && sourceMetric.getTotalRows() != null ? sourceMetric.getTotalRows().count() : -1L;
-                statement.setLong(i, count);
-            } else if ("$metrics.totalbytes".equals(s)) {
-                Long count = sourceMetric != null && sourceMetric.getTotalSizeInBytes() != null ? sourceMetric.getTotalSizeInBytes().count() : -1L;
-                statement.setLong(i, count);
-            } else if ("$metrics.failed".equals(s)) {
-                Long count = sourceMetric != null && sourceMetric.getFailed() != null ? sourceMetric.getFailed().count() : -1L;
-                statement.setLong(i, count);
-            } else if ("$metrics.succeeded".equals(s)) {
-                Long count = sourceMetric != null && sourceMetric.getSucceeded() != null ? sourceMetric.getSucceeded().count() : -1L;
-                statement.setLong(i, count);
-            } else if (shouldPrepareDatabaseMetadata()) {
-                for (String k : getLastDatabaseMetadata().keySet()) {
-                    if (k.equals(s)) {
-                        statement.setObject(i, getLastDatabaseMetadata().get(k));
-                    }
-                }
-            } else if (shouldPrepareResultSetMetadata()) {
-                for (String k : getLastResultSetMetadata().keySet()) {
-                    if (k.equals(s)) {
-                        statement.setObject(i, getLastResultSetMetadata().get(k));
-                    }
+            return new ParameterBinder() {
+                @Override
+                public void bind(PreparedStatement statement, int i) throws SQLException {
+                    statement.setNull(i, Types.VARCHAR);
                 }
-            } else {
-                Object rowValue = getLastRow().get(s);
-                if (rowValue != null) {
-                    statement.setObject(i, rowValue);
-                } else {
-                    statement.setString(i, (String) value);
-                }
-            }
+            };
+        } else if (value instanceof String) {
+            return compile((String) value);
         } else if (value instanceof Integer) {
-            statement.setInt(i, (Integer) value);
+            return new ParameterBinder() {
+                @Override
+                public void bind(PreparedStatement statement, int i) throws SQLException {
+                    statement.setInt(i, (Integer) value);
+                }
+            };
         } else if (value instanceof Long) {
-            statement.setLong(i, (Long) value);
+            return new ParameterBinder() {
+                @Override
+                public void bind(PreparedStatement statement, int i) throws SQLException {
+                    statement.setLong(i, (Long) value);
+                }
+            };
         } else if (value instanceof BigDecimal) {
-            statement.setBigDecimal(i, (BigDecimal) value);
+            return new ParameterBinder() {
+                @Override
+                public void bind(PreparedStatement statement, int i) throws SQLException {
+                    statement.setBigDecimal(i, (BigDecimal) value);
+                }
+            };
         } else if (value instanceof Date) {
-            statement.setDate(i, (Date) value);
+            return new ParameterBinder() {
+                @Override
+                public void bind(PreparedStatement statement, int i) throws SQLException {
+                    statement.setDate(i, (Date) value);
+                }
+            };
         } else if (value instanceof Timestamp) {
-            statement.setTimestamp(i, (Timestamp) value, calendar);
+            return new ParameterBinder() {
+                @Override
+                public void bind(PreparedStatement statement, int i) throws SQLException {
+                    statement.setTimestamp(i, (Timestamp) value, calendar);
+                }
+            };
         } else if (value instanceof Float) {
-            statement.setFloat(i, (Float) value);
+            return new ParameterBinder() {
+                @Override
+                public void bind(PreparedStatement statement, int i) throws SQLException {
+                    statement.setFloat(i, (Float) value);
+                }
+            };
         } else if (value instanceof Double) {
-            statement.setDouble(i, (Double) value);
-        } else {
-            statement.setObject(i, value);
+            return new ParameterBinder() {
+                @Override
+                public void bind(PreparedStatement statement, int i) throws SQLException {
+                    statement.setDouble(i, (Double) value);
+                }
+            };
+        }
+        return new ParameterBinder() {
+            @Override
+            public void bind(PreparedStatement statement, int i) throws SQLException {
+                statement.setObject(i, value);
+            }
+        };
+    }
+
+    private ParameterBinder compile(final String s) {
+        switch (s) {
+            case "$now":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        statement.setTimestamp(i, new Timestamp(new DateTime().getMillis()), calendar);
+                    }
+                };
+            case "$state":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        statement.setString(i, context.getState().name());
+                    }
+                };
+            case "$metrics.counter":
+            case "$job": // $job for legacy support
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        statement.setLong(i, sourceMetric != null ? sourceMetric.getCounter() : 0L);
+                    }
+                };
+            case "$lastrowcount":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        statement.setLong(i, getLastRowCount());
+                    }
+                };
+            case "$lastexceptiondate":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        DateTime dateTime = context.getDateOfThrowable();
+                        statement.setTimestamp(i, dateTime != null ? new Timestamp(dateTime.getMillis()) : null);
+                    }
+                };
+            case "$lastexception":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        statement.setString(i, ExceptionFormatter.format(context.getThrowable()));
+                    }
+                };
+            case "$metrics.lastexecutionstart":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        DateTime dateTime = sourceMetric != null ? sourceMetric.getLastExecutionStart() : null;
+                        statement.setTimestamp(i, dateTime != null ? new Timestamp(dateTime.getMillis()) : new Timestamp(new DateTime(0).getMillis()));
+                    }
+                };
+            case "$metrics.lastexecutionend":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        DateTime dateTime = sourceMetric != null ? sourceMetric.getLastExecutionEnd() : null;
+                        statement.setTimestamp(i, dateTime != null ? new Timestamp(dateTime.getMillis()) : null);
+                    }
+                };
+            case "$metrics.totalrows":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        statement.setLong(i, sourceMetric != null && sourceMetric.getTotalRows() != null ?
+                                sourceMetric.getTotalRows().count() : -1L);
+                    }
+                };
+            case "$metrics.totalbytes":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        statement.setLong(i, sourceMetric != null && sourceMetric.getTotalSizeInBytes() != null ?
+                                sourceMetric.getTotalSizeInBytes().count() : -1L);
+                    }
+                };
+            case "$metrics.failed":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        statement.setLong(i, sourceMetric != null && sourceMetric.getFailed() != null ?
+                                sourceMetric.getFailed().count() : -1L);
+                    }
+                };
+            case "$metrics.succeeded":
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        statement.setLong(i, sourceMetric != null && sourceMetric.getSucceeded() != null ?
+                                sourceMetric.getSucceeded().count() : -1L);
+                    }
+                };
+            default:
+                final boolean isDatabaseMetadata = s.startsWith("$meta.db.");
+                final boolean isResultSetMetadata = s.startsWith("$meta.rs.") || s.startsWith("$meta.row.");
+                return new ParameterBinder() {
+                    @Override
+                    public void bind(PreparedStatement statement, int i) throws SQLException {
+                        // metadata keys are looked up directly, only in the map they belong to
+                        if (isDatabaseMetadata && shouldPrepareDatabaseMetadata()
+                                && getLastDatabaseMetadata().containsKey(s)) {
+                            statement.setObject(i, getLastDatabaseMetadata().get(s));
+                        } else if (isResultSetMetadata && shouldPrepareResultSetMetadata()
+                                && getLastResultSetMetadata().containsKey(s)) {
+                            statement.setObject(i, getLastResultSetMetadata().get(s));
+                        } else {
+                            Object rowValue = getLastRow().get(s);
+                            if (rowValue != null) {
+                                statement.setObject(i, rowValue);
+                            } else {
+                                statement.setString(i, s);
+                            }
+                        }
+                    }
+                };
         }
     }
 
+    /**
+     * Binds the value of a parameter to a prepared statement
+     */
+    protected interface ParameterBinder {
+
+        void bind(PreparedStatement statement, int i) throws SQLException;
+    }
+
     /**
      * Parse of value of result set
      *
@@ -1475,17 +2979,7 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
              * desired.
              */
             case Types.BLOB: {
-                Blob blob = result.getBlob(i);
-                if (blob != null) {
-                    long n = blob.length();
-                    if (n > Integer.MAX_VALUE) {
-                        throw new IOException("can't process blob larger than Integer.MAX_VALUE");
-                    }
-                    byte[] tab = blob.getBytes(1, (int) n);
-                    blob.free();
-                    return tab;
-                }
-                break;
+                return readLob(result, i, type, "column " + i);
             }
             /**
              * The JDBC type CLOB represents the SQL3 type CLOB (Character Large
@@ -1499,31 +2993,9 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
              * Clob interface materialize the data of a CLOB object on the
              * client.
              */
-            case Types.CLOB: {
-                Clob clob = result.getClob(i);
-                if (clob != null) {
-                    long n = clob.length();
-                    if (n > Integer.MAX_VALUE) {
-                        throw new IOException("can't process clob larger than Integer.MAX_VALUE");
-                    }
-                    String str = clob.getSubString(1, (int) n);
-                    clob.free();
-                    return str;
-                }
-                break;
-            }
+            case Types.CLOB:
             case Types.NCLOB: {
-                NClob nclob = result.getNClob(i);
-                if (nclob != null) {
-                    long n = nclob.length();
-                    if (n > Integer.MAX_VALUE) {
-                        throw new IOException("can't process nclob larger than Integer.MAX_VALUE");
-                    }
-                    String str = nclob.getSubString(1, (int) n);
-                    nclob.free();
-                    return str;
-                }
-                break;
+                return readLob(result, i, type, "column " + i);
             }
             /**
              * The JDBC type DATALINK, new in the JDBC 3.0 API, is a column
@@ -1559,7 +3031,7 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
             case Types.DATE: {
                 try {
                     Date d = result.getDate(i, calendar);
-                    return d != null ? formatDate(d.getTime()) : null;
+                    return d != null ? dateValue(d.getTime()) : null;
                 } catch (SQLException e) {
                     return null;
                 }
@@ -1567,7 +3039,7 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
             case Types.TIME: {
                 try {
                     Time t = result.getTime(i, calendar);
-                    return t != null ? formatDate(t.getTime()) : null;
+                    return t != null ? dateValue(t.getTime()) : null;
                 } catch (SQLException e) {
                     return null;
                 }
@@ -1575,7 +3047,7 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
             case Types.TIMESTAMP: {
                 try {
                     Timestamp t = result.getTimestamp(i, calendar);
-                    return t != null ? formatDate(t.getTime()) : null;
+                    return t != null ? dateValue(t.getTime()) : null;
                 } catch (SQLException e) {
                     // java.sql.SQLException: Cannot convert value '0000-00-00 00:00:00' from column ... to TIMESTAMP.
                     return null;
@@ -1637,19 +3109,19 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
                     return null;
                 }
                 if (getScale() >= 0) {
-                    bd = bd.setScale(getScale(), getRounding());
-                    try {
-                        long l = bd.longValueExact();
-                        if (Long.toString(l).equals(result.getString(i))) {
-                            // convert to long if possible
-                            return l;
-                        } else {
+                    // a value without fraction digits is a long, if it fits
+                    if (bd.scale() <= 0) {
+                        try {
+                            return bd.longValueExact();
+                        } catch (ArithmeticException e) {
                             // convert to double (with precision loss)
-                            return bd.doubleValue();
                         }
-                    } catch (ArithmeticException e) {
-                        return bd.doubleValue();
                     }
+                    // rounding is only needed for values with more fraction digits than the scale
+                    if (bd.scale() > getScale()) {
+                        bd = bd.setScale(getScale(), getRounding());
+                    }
+                    return bd.doubleValue();
                 } else {
                     return bd.toPlainString();
                 }
@@ -1669,13 +3141,8 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
              * double.
              */
             case Types.DOUBLE: {
-                String s = result.getString(i);
-                if (result.wasNull() || s == null) {
-                    return null;
-                }
-                NumberFormat format = NumberFormat.getInstance(locale);
-                Number number = format.parse(s);
-                return number.doubleValue();
+                double d = result.getDouble(i);
+                return result.wasNull() ? null : d;
             }
             /**
              * The JDBC type FLOAT is basically equivalent to the JDBC type
@@ -1696,13 +3163,8 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
              * DOUBLE type in preference to FLOAT.
              */
             case Types.FLOAT: {
-                String s = result.getString(i);
-                if (result.wasNull() || s == null) {
-                    return null;
-                }
-                NumberFormat format = NumberFormat.getInstance(locale);
-                Number number = format.parse(s);
-                return number.doubleValue();
+                double d = result.getDouble(i);
+                return result.wasNull() ? null : d;
             }
             /**
              * The JDBC type JAVA_OBJECT, added in the JDBC 2.0 core API, makes
@@ -1863,7 +3325,6 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
                 return null;
             }
         }
-        return null;
     }
 
     private int toJDBCType(String type) {
@@ -1954,8 +3415,14 @@ public class StandardSource<C extends StandardContext> implements JDBCSource<C>
         return sb.toString();
     }
 
-    private String formatDate(long millis) {
-        return new DateTime(millis).withZone(dateTimeZone).toString();
+    /**
+     * The value of a fetched JDBC time value
+     *
+     * @param millis the milliseconds since the epoch
+     * @return the milliseconds, or the formatted time
+     */
+    private Object dateValue(long millis) {
+        return epochMillis ? millis : dateTimeFormatter.print(millis);
     }
 
 }
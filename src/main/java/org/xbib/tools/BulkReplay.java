@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.tools;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Settings;
+import org.xbib.elasticsearch.common.metrics.MetricsLogger;
+import org.xbib.elasticsearch.common.util.StrategyLoader;
+import org.xbib.elasticsearch.jdbc.strategy.Context;
+import org.xbib.elasticsearch.jdbc.strategy.Sink;
+import org.xbib.elasticsearch.jdbc.strategy.standard.StandardContext;
+import org.xbib.elasticsearch.jdbc.strategy.standard.StandardSink;
+
+import java.io.InputStream;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+
+/**
+ * Submits the bulk actions of a dead letter file again. The settings are the settings of the importer run
+ * that has written the dead letter file, so the cluster, the content type, and the dead letter file are
+ * the same. Actions that fail again are written to a new dead letter file.
+ */
+public class BulkReplay implements CommandLineInterpreter {
+
+    private final static Logger logger = LogManager.getLogger("importer.jdbc.replay");
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run(String resourceName, InputStream in) throws Exception {
+        Settings settings = settingsBuilder().loadFromStream(resourceName, in).build();
+        if (settings.getAsStructuredMap().containsKey("jdbc")) {
+            settings = settings.getAsSettings("jdbc");
+        }
+        if (settings.get("dead_letter_file") == null) {
+            throw new IllegalArgumentException("no dead_letter_file");
+        }
+        // the client must be closed after the replay, also with the settings of a scheduled job
+        settings = settingsBuilder().put(settings).put("bulk_direct", true).put("keep_alive", false).build();
+        String strategy = settings.get("strategy", "standard");
+        Context context = StrategyLoader.newContext(strategy);
+        Sink sink = StrategyLoader.newSink(strategy);
+        if (!(context instanceof StandardContext) || !(sink instanceof StandardSink)) {
+            throw new IllegalArgumentException("strategy " + strategy + " can not replay bulk actions");
+        }
+        context.setSettings(settings);
+        StandardSink standardSink = (StandardSink) sink;
+        standardSink.setContext((StandardContext) context);
+        standardSink.beforeFetch();
+        try {
+            int n = standardSink.replay();
+            logger.info("replayed {} bulk actions from {}", n, settings.get("dead_letter_file"));
+        } finally {
+            standardSink.afterFetch();
+            new MetricsLogger().writeMetrics(settings, standardSink.getMetric());
+        }
+    }
+}
@@ -68,6 +68,8 @@ public class JDBCImporter
 
     private List<Future> futures;
 
+    private boolean shutdownHookAdded;
+
     protected PipelineProvider<Pipeline<SettingsPipelineRequest>> pipelineProvider() {
         return new PipelineProvider<Pipeline<SettingsPipelineRequest>>() {
             @Override
@@ -127,9 +129,12 @@ public class JDBCImporter
 
     @Override
     public void run() {
+        // a scheduled run may keep the context for the next run
+        boolean scheduledRun = false;
         try {
             prepare();
             futures = schedule(settings);
+            scheduledRun = futures.isEmpty() && threadPoolExecutor != null;
             if (!futures.isEmpty()) {
                 logger.debug("waiting for {} futures...", futures.size());
                 for (Future future : futures) {
@@ -160,7 +165,7 @@ public class JDBCImporter
                     }
                 }
             	
-                if (context != null) {
+                if (context != null && !(scheduledRun && context.isKeepAlive())) {
                     context.shutdown();
                     context = null;
                 }
@@ -178,11 +183,16 @@ public class JDBCImporter
 
     private void prepare() throws IOException, InterruptedException {
         logger.debug("prepare started");
-        this.reloadSettings(settings); // reload settings to solve the schedule bug
+        if (context == null) {
+            this.reloadSettings(settings); // reload settings to solve the schedule bug
+        }
         if (settings.getAsStructuredMap().containsKey("jdbc")) {
             settings = settings.getAsSettings("jdbc");
         }
-        Runtime.getRuntime().addShutdownHook(shutdownHook());
+        if (!shutdownHookAdded) {
+            Runtime.getRuntime().addShutdownHook(shutdownHook());
+            shutdownHookAdded = true;
+        }
         BlockingQueue<SettingsPipelineRequest> queue = new ArrayBlockingQueue<>(32);
         setQueue(queue);
         SettingsPipelineRequest element = new SettingsPipelineRequest().set(settings);
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BulkControllerTests extends Assert {
+
+    private final static long SECOND = 1000000000L;
+
+    @Test
+    public void testIncrease() {
+        BulkController controller = new BulkController(100, 10000, 10 * 1024 * 1024, 1, 8, SECOND);
+        assertEquals(controller.getActions(), 5000);
+        assertEquals(controller.getVolume(), 5 * 1024 * 1024);
+        assertEquals(controller.getConcurrency(), 4);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(controller.response(SECOND / 10, 0));
+            assertEquals(controller.getConcurrency(), 4);
+        }
+        // a round of good responses adds a request
+        controller.response(SECOND / 10, 0);
+        assertEquals(controller.getConcurrency(), 5);
+        for (int i = 0; i < 100; i++) {
+            controller.response(SECOND / 10, 0);
+        }
+        assertEquals(controller.getActions(), 10000);
+        assertEquals(controller.getVolume(), 10 * 1024 * 1024);
+        assertEquals(controller.getConcurrency(), 8);
+        assertFalse(controller.response(SECOND / 10, 0));
+    }
+
+    @Test
+    public void testRejection() {
+        BulkController controller = new BulkController(100, 10000, 10 * 1024 * 1024, 1, 8, SECOND);
+        assertTrue(controller.response(SECOND / 10, 3));
+        assertEquals(controller.getActions(), 2500);
+        assertEquals(controller.getConcurrency(), 2);
+        for (int i = 0; i < 10; i++) {
+            controller.response(SECOND / 10, 1);
+        }
+        // the bounds are kept
+        assertEquals(controller.getActions(), 100);
+        assertEquals(controller.getConcurrency(), 1);
+    }
+
+    @Test
+    public void testLatency() {
+        BulkController controller = new BulkController(100, 10000, 10 * 1024 * 1024, 1, 8, SECOND);
+        assertTrue(controller.response(2 * SECOND, 0));
+        assertEquals(controller.getActions(), 2500);
+        assertEquals(controller.getConcurrency(), 4);
+        assertEquals(controller.getLatency(), 2 * SECOND);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.xbib.elasticsearch.common.metrics.SinkMetric;
+import org.xbib.elasticsearch.util.NodeTestUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class BulkWriterTests extends NodeTestUtils {
+
+    @BeforeMethod
+    public void before() {
+        startNodes();
+    }
+
+    @AfterMethod
+    public void after() {
+        stopNodes();
+    }
+
+    @Test
+    public void testBulkFormat() throws Exception {
+        for (XContentType contentType : Arrays.asList(XContentType.JSON, XContentType.SMILE)) {
+            BulkWriter writer = new BulkWriter(client("1"), contentType, 10, 1024 * 1024, 2, null);
+            for (int i = 0; i < 25; i++) {
+                writer.index(index, type, Integer.toString(i), document("n", i));
+            }
+            writer.delete(index, type, "0", new PlainIndexableObject());
+            writer.update(index, type, "1", document("m", 1));
+            writer.update(index, type, "100", document("m", 100));
+            PlainIndexableObject raw = new PlainIndexableObject();
+            raw.meta(ControlKeys._routing.name(), "r");
+            raw.rawSource(RawJson.of("{\"n\": 200, \"doc\": {\"a\": [1, 2]}}", RawJson.Mode.SCAN));
+            writer.index(index, type, "200", raw);
+            writer.close();
+            assertTrue(writer.waitForResponses(TimeValue.timeValueSeconds(30)));
+            assertFalse(writer.hasThrowable());
+            client("1").admin().indices().prepareRefresh(index).execute().actionGet();
+            assertHits("1", 26);
+            Map<String, Object> source = client("1").prepareGet(index, type, "1").execute().actionGet().getSourceAsMap();
+            assertEquals(source.get("n"), 1);
+            assertEquals(source.get("m"), 1);
+            assertFalse(client("1").prepareGet(index, type, "0").execute().actionGet().isExists());
+            GetResponse response = client("1").prepareGet(index, type, "200").setRouting("r").execute().actionGet();
+            assertEquals(response.getSourceAsMap().get("doc").toString(), "{a=[1, 2]}");
+            client("1").admin().indices().prepareDelete(index).execute().actionGet();
+        }
+    }
+
+    @Test
+    public void testMultiLineSource() throws Exception {
+        BulkWriter writer = new BulkWriter(client("1"), XContentType.JSON, 10, 1024 * 1024, 1, null);
+        PlainIndexableObject raw = new PlainIndexableObject();
+        raw.rawSource(RawJson.of("{\n  \"n\" : 1,\n  \"doc\" : {\r\n    \"a\" : [ 1, 2 ]\n  }\n}\n", RawJson.Mode.SCAN));
+        writer.index(index, type, "1", raw);
+        writer.index(index, type, "2", document("n", 2));
+        writer.close();
+        assertTrue(writer.waitForResponses(TimeValue.timeValueSeconds(30)));
+        assertFalse(writer.hasThrowable());
+        client("1").admin().indices().prepareRefresh(index).execute().actionGet();
+        assertHits("1", 2);
+        Map<String, Object> source = client("1").prepareGet(index, type, "1").execute().actionGet().getSourceAsMap();
+        assertEquals(source.get("doc").toString(), "{a=[1, 2]}");
+    }
+
+    @Test
+    public void testMetric() throws Exception {
+        SinkMetric metric = new SinkMetric().start();
+        BulkWriter writer = new BulkWriter(client("1"), XContentType.JSON, 1000, 1024 * 1024, 1,
+                TimeValue.timeValueMillis(100)).setMetric(metric);
+        for (int i = 0; i < 5; i++) {
+            writer.index(index, type, null, document("n", i));
+        }
+        // the buffer is submitted by the flush interval
+        for (int i = 0; i < 50 && metric.getSucceeded().getCount() < 5; i++) {
+            Thread.sleep(100L);
+        }
+        assertEquals(metric.getSubmitted().getCount(), 5L);
+        assertEquals(metric.getSucceeded().getCount(), 5L);
+        assertEquals(metric.getFailed().getCount(), 0L);
+        writer.index(index, type, "x", document("n", "not a number"));
+        writer.close();
+        assertTrue(writer.waitForResponses(TimeValue.timeValueSeconds(30)));
+        assertEquals(metric.getFailed().getCount(), 1L);
+    }
+
+    @Test
+    public void testAdaptive() throws Exception {
+        SinkMetric metric = new SinkMetric().start();
+        BulkController controller = new BulkController(10, 100, 1024 * 1024, 1, 4, TimeValue.timeValueSeconds(30).nanos());
+        BulkWriter writer = new BulkWriter(client("1"), XContentType.JSON, 100, 1024 * 1024, 4, null)
+                .setController(controller)
+                .setMetric(metric);
+        assertEquals(metric.getBulkActions(), 50);
+        assertEquals(metric.getBulkConcurrency(), 2);
+        for (int i = 0; i < 500; i++) {
+            writer.index(index, type, Integer.toString(i), document("n", i));
+        }
+        writer.close();
+        assertTrue(writer.waitForResponses(TimeValue.timeValueSeconds(30)));
+        assertEquals(metric.getSucceeded().getCount(), 500L);
+        // good responses have increased the bulk size
+        assertTrue(metric.getBulkActions() > 50, Integer.toString(metric.getBulkActions()));
+        assertEquals(metric.getBulkActions(), controller.getActions());
+        assertEquals(metric.getInFlightBytes().count(), 0L);
+        assertTrue(metric.getBulkLatency() > 0L);
+    }
+
+    @Test
+    public void testDeadLetter() throws Exception {
+        File file = File.createTempFile("deadletter", ".bulk");
+        assertTrue(file.delete());
+        DeadLetterLog log = new DeadLetterLog(file, 1024 * 1024, 2);
+        SinkMetric metric = new SinkMetric().start();
+        BulkWriter writer = new BulkWriter(client("1"), XContentType.JSON, 10, 1024 * 1024, 1, null)
+                .setRetries(2, TimeValue.timeValueMillis(10), TimeValue.timeValueMillis(100))
+                .setDeadLetterLog(log)
+                .setMetric(metric);
+        writer.index(index, type, "1", document("n", 1));
+        writer.flush();
+        assertTrue(writer.waitForResponses(TimeValue.timeValueSeconds(30)));
+        writer.index(index, type, "2", document("n", "not a number"));
+        writer.delete(index, type, "3", new PlainIndexableObject());
+        writer.close();
+        assertTrue(writer.waitForResponses(TimeValue.timeValueSeconds(30)));
+        log.close();
+        // a mapping failure is permanent, it is not retried
+        assertEquals(metric.getRetried().count(), 0L);
+        assertEquals(metric.getFailed().getCount(), 1L);
+        assertEquals(metric.getDeadLettered().count(), 1L);
+        assertEquals(log.getFiles(), Arrays.asList(file));
+        // the failed action succeeds with a new mapping
+        client("1").admin().indices().prepareDelete(index).execute().actionGet();
+        writer = new BulkWriter(client("1"), XContentType.JSON, 10, 1024 * 1024, 1, null)
+                .setDeadLetterLog(log);
+        assertEquals(log.replay(writer, TimeValue.timeValueSeconds(30)), 1);
+        assertFalse(new File(file.getPath() + ".replay").exists());
+        writer.close();
+        assertTrue(writer.waitForResponses(TimeValue.timeValueSeconds(30)));
+        log.close();
+        assertTrue(log.getFiles().isEmpty());
+        Map<String, Object> source = client("1").prepareGet(index, type, "2").execute().actionGet().getSourceAsMap();
+        assertEquals(source.get("n"), "not a number");
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        final ElasticsearchClient client = client("1");
+        final List<Integer> requests = new ArrayList<>();
+        // the first request fails as a whole, the second is rejected for every other action
+        ElasticsearchClient rejecting = new ElasticsearchClient() {
+            @Override
+            public <Request extends ActionRequest, Response extends ActionResponse,
+                    RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+            ActionFuture<Response> execute(Action<Request, Response, RequestBuilder> action, Request request) {
+                return client.execute(action, request);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <Request extends ActionRequest, Response extends ActionResponse,
+                    RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+            void execute(Action<Request, Response, RequestBuilder> action, Request request,
+                         final ActionListener<Response> listener) {
+                final int n;
+                synchronized (requests) {
+                    n = requests.size();
+                    requests.add(((BulkRequest) request).numberOfActions());
+                }
+                if (n == 0) {
+                    listener.onFailure(new EsRejectedExecutionException("rejected"));
+                    return;
+                }
+                client.execute(action, request, new ActionListener<Response>() {
+                    @Override
+                    public void onResponse(Response response) {
+                        if (n > 1) {
+                            listener.onResponse(response);
+                            return;
+                        }
+                        BulkItemResponse[] items = ((BulkResponse) response).getItems();
+                        for (int i = 0; i < items.length; i += 2) {
+                            items[i] = new BulkItemResponse(i, items[i].getOpType(),
+                                    new BulkItemResponse.Failure(items[i].getIndex(), items[i].getType(),
+                                            items[i].getId(), new EsRejectedExecutionException("rejected")));
+                        }
+                        listener.onResponse((Response) new BulkResponse(items, 0L));
+                    }
+
+                    @Override
+                    public void onFailure(Throwable e) {
+                        listener.onFailure(e);
+                    }
+                });
+            }
+
+            @Override
+            public <Request extends ActionRequest, Response extends ActionResponse,
+                    RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+            RequestBuilder prepareExecute(Action<Request, Response, RequestBuilder> action) {
+                return client.prepareExecute(action);
+            }
+
+            @Override
+            public ThreadPool threadPool() {
+                return client.threadPool();
+            }
+        };
+        SinkMetric metric = new SinkMetric().start();
+        BulkWriter writer = new BulkWriter(rejecting, XContentType.JSON, 10, 1024 * 1024, 1, null)
+                .setRetries(3, TimeValue.timeValueMillis(10), TimeValue.timeValueMillis(100))
+                .setMetric(metric);
+        for (int i = 0; i < 10; i++) {
+            writer.index(index, type, Integer.toString(i), document("n", i));
+        }
+        // closing the writer would give up the retries
+        assertTrue(writer.waitForResponses(TimeValue.timeValueSeconds(30)));
+        writer.close();
+        // only the rejected actions are submitted again
+        assertEquals(requests, Arrays.asList(10, 10, 5));
+        assertEquals(metric.getSubmitted().getCount(), 10L);
+        assertEquals(metric.getSucceeded().getCount(), 10L);
+        assertEquals(metric.getFailed().getCount(), 0L);
+        assertEquals(metric.getRetried().count(), 15L);
+        assertEquals(metric.getRejected().count(), 15L);
+        client("1").admin().indices().prepareRefresh(index).execute().actionGet();
+        assertHits("1", 10);
+    }
+
+    @Test
+    public void testAcknowledged() throws Exception {
+        BulkWriter writer = new BulkWriter(client("1"), XContentType.JSON, 10, 1024 * 1024, 1, null);
+        writer.index(index, type, "1", document("n", 1));
+        assertEquals(writer.getPosition(), 1L);
+        // the current buffer is submitted for the acknowledgement
+        assertTrue(writer.acknowledged(1L).get(30, TimeUnit.SECONDS));
+        assertEquals(writer.getAcknowledged(), 1L);
+        writer.index(index, type, "2", document("n", "not a number"));
+        writer.index(index, type, "3", document("n", 3));
+        // without a dead letter log, the failed action is lost
+        assertFalse(writer.acknowledged(3L).get(30, TimeUnit.SECONDS));
+        assertEquals(writer.getAcknowledged(), 3L);
+        assertTrue(writer.acknowledged(1L).get(30, TimeUnit.SECONDS));
+        writer.close();
+    }
+
+    private static IndexableObject document(String key, Object value) {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put(key, value);
+        return new PlainIndexableObject(ToXContent.EMPTY_PARAMS).source(map);
+    }
+}
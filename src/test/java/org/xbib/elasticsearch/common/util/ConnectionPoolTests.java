@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ConnectionPoolTests extends Assert {
+
+    private ConnectionPool pool;
+
+    @BeforeMethod
+    public void createPool() {
+        pool = new ConnectionPool("jdbc:derby:memory:pooltest;create=true", null, 2)
+                .setValidationInterval(60000L);
+    }
+
+    @AfterMethod
+    public void closePool() {
+        pool.close();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        Connection connection = pool.acquire(1000L);
+        pool.release(connection);
+        assertSame(pool.acquire(1000L), connection);
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        Connection c1 = pool.acquire(1000L);
+        Connection c2 = pool.acquire(1000L);
+        assertNotSame(c1, c2);
+        try {
+            pool.acquire(100L);
+            fail("pool must be exhausted");
+        } catch (SQLTransientConnectionException e) {
+            // expected
+        }
+        pool.release(c2);
+        assertSame(pool.acquire(100L), c2);
+    }
+
+    @Test
+    public void testClosedConnectionIsDiscarded() throws Exception {
+        Connection connection = pool.acquire(1000L);
+        connection.close();
+        pool.release(connection);
+        Connection other = pool.acquire(1000L);
+        assertNotSame(other, connection);
+        assertFalse(other.isClosed());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        Connection c1 = pool.acquire(1000L);
+        Connection c2 = pool.acquire(1000L);
+        pool.invalidate(c1);
+        assertTrue(c1.isClosed());
+        Connection c3 = pool.acquire(100L);
+        assertNotSame(c3, c1);
+        pool.release(c2);
+        pool.release(c3);
+    }
+
+    @Test
+    public void testFailedValidationIsDiscarded() throws Exception {
+        final AtomicBoolean failing = new AtomicBoolean();
+        ConnectionPool pool = new ConnectionPool("jdbc:derby:memory:pooltest;create=true", null, 1) {
+            @Override
+            public boolean isValid(Connection connection) throws SQLException {
+                if (failing.get()) {
+                    throw new SQLException("validation failed");
+                }
+                return super.isValid(connection);
+            }
+        };
+        try {
+            Connection connection = pool.acquire(1000L);
+            pool.release(connection);
+            failing.set(true);
+            Connection other = pool.acquire(100L);
+            assertNotSame(other, connection);
+            assertTrue(connection.isClosed());
+            pool.release(other);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testDatabaseMetadata() throws Exception {
+        assertNull(pool.getDatabaseMetadata());
+        pool.setDatabaseMetadata(Collections.<String, Object>singletonMap("$meta.db.databaseproductname", "Apache Derby"));
+        assertEquals(pool.getDatabaseMetadata().get("$meta.db.databaseproductname"), "Apache Derby");
+        pool.close();
+        assertNull(pool.getDatabaseMetadata());
+        assertTrue(pool.isClosed());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class DeadLetterLogTests extends Assert {
+
+    @Test
+    public void testRotation() throws Exception {
+        File dir = Files.createTempDirectory("deadletter").toFile();
+        File file = new File(dir, "failed.bulk");
+        DeadLetterLog log = new DeadLetterLog(file, 10, 2);
+        assertTrue(log.getFiles().isEmpty());
+        write(log, "aaaa\n");
+        assertEquals(log.getFiles(), Arrays.asList(file));
+        write(log, "bbbbbb\n");
+        // the file has exceeded the maximum size
+        assertFalse(file.exists());
+        write(log, "cc\n");
+        File first = new File(dir, "failed.bulk.1");
+        assertEquals(log.getFiles(), Arrays.asList(first, file));
+        write(log, "dddddddddd\n");
+        write(log, "eeeeeeeeee\n");
+        // the oldest file is deleted
+        File second = new File(dir, "failed.bulk.2");
+        assertEquals(log.getFiles(), Arrays.asList(second, first));
+        assertEquals(read(second), "cc\ndddddddddd\n");
+        assertEquals(read(first), "eeeeeeeeee\n");
+        log.close();
+        for (File f : log.getFiles()) {
+            assertTrue(f.delete());
+        }
+        assertTrue(dir.delete());
+    }
+
+    @Test
+    public void testReplayKeepsUnacknowledgedFile() throws Exception {
+        File dir = Files.createTempDirectory("deadletter").toFile();
+        File file = new File(dir, "failed.bulk");
+        DeadLetterLog log = new DeadLetterLog(file, 1024, 2);
+        write(log, "{\"index\":{\"_index\":\"test\",\"_type\":\"test\",\"_id\":\"1\"}}\n{\"n\":1}\n");
+        // a client that never answers
+        ElasticsearchClient client = new ElasticsearchClient() {
+            @Override
+            public <Request extends ActionRequest, Response extends ActionResponse,
+                    RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+            ActionFuture<Response> execute(Action<Request, Response, RequestBuilder> action, Request request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <Request extends ActionRequest, Response extends ActionResponse,
+                    RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+            void execute(Action<Request, Response, RequestBuilder> action, Request request,
+                         ActionListener<Response> listener) {
+            }
+
+            @Override
+            public <Request extends ActionRequest, Response extends ActionResponse,
+                    RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+            RequestBuilder prepareExecute(Action<Request, Response, RequestBuilder> action) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ThreadPool threadPool() {
+                return null;
+            }
+        };
+        BulkWriter writer = new BulkWriter(client, XContentType.JSON, 10, 1024 * 1024, 1, null)
+                .setDeadLetterLog(log);
+        try {
+            log.replay(writer, TimeValue.timeValueMillis(100));
+            fail("replay must fail without acknowledgement");
+        } catch (IOException e) {
+            // expected
+        }
+        File replay = new File(dir, "failed.bulk.replay");
+        assertTrue(replay.exists());
+        assertEquals(read(replay), "{\"index\":{\"_index\":\"test\",\"_type\":\"test\",\"_id\":\"1\"}}\n{\"n\":1}\n");
+        writer.close();
+        log.close();
+        assertTrue(replay.delete());
+        assertTrue(dir.delete());
+    }
+
+    private static void write(DeadLetterLog log, String s) throws Exception {
+        byte[] b = s.getBytes("UTF-8");
+        log.write(b, 0, b.length);
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class FetchSizeControllerTests extends Assert {
+
+    private final static long SECOND = 1000000000L;
+
+    @Test
+    public void testNarrowRows() {
+        FetchSizeController controller = new FetchSizeController(10, 1024 * 1024, SECOND);
+        for (int i = 0; i < 9; i++) {
+            assertFalse(controller.row(100, 1000L));
+        }
+        assertTrue(controller.row(100, 1000L));
+        assertEquals(controller.getFetchSize(), 10485);
+        assertEquals(controller.getRowSize(), 100.0d);
+    }
+
+    @Test
+    public void testWideRows() {
+        FetchSizeController controller = new FetchSizeController(10, 1024 * 1024, SECOND);
+        for (int i = 0; i < 10; i++) {
+            controller.row(4 * 1024 * 1024, 1000L);
+        }
+        assertEquals(controller.getFetchSize(), 1);
+        // the next window is a single row
+        assertFalse(controller.row(4 * 1024 * 1024, 1000L));
+        assertEquals(controller.getFetchSize(), 1);
+    }
+
+    @Test
+    public void testHeapHeadroom() {
+        FetchSizeController controller = new FetchSizeController(10, 1024 * 1024, SECOND) {
+            @Override
+            protected long headroom() {
+                return 400000L;
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            controller.row(100, 1000L);
+        }
+        assertEquals(controller.getFetchSize(), 1000);
+    }
+
+    @Test
+    public void testLatency() {
+        FetchSizeController controller = new FetchSizeController(10, 1024 * 1024, SECOND);
+        for (int i = 0; i < 10; i++) {
+            controller.row(100, i == 0 ? 2 * SECOND : 1000L);
+        }
+        // slow round trip, the fetch size is not increased
+        assertEquals(controller.getFetchSize(), 10);
+        assertEquals(controller.getLatency(), 2 * SECOND);
+        for (int i = 0; i < 10; i++) {
+            controller.row(1024 * 1024, i == 0 ? 2 * SECOND : 1000L);
+        }
+        // but it is decreased
+        assertTrue(controller.getFetchSize() < 10);
+    }
+}
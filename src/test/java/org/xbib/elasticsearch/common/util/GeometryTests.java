@@ -1,32 +1,111 @@
 package org.xbib.elasticsearch.common.util;
 
-import com.spatial4j.core.context.SpatialContext;
 import com.spatial4j.core.context.jts.JtsSpatialContext;
-import com.spatial4j.core.shape.Shape;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.text.ParseException;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
-public class GeometryTests {
+public class GeometryTests extends Assert {
 
-    protected final static Logger logger = LogManager.getLogger("test.geo");
+    @Test
+    public void convert() throws IOException, ParseException {
+        for (String s : new String[]{
+                "POINT(1 2)",
+                "POINT (1.5 -2)",
+                "LINESTRING(0 0,1 1,2 0.5)",
+                "POLYGON((0 0,10 0,10 10,0 10,0 0),(5 5,7 5,7 7,5 7,5 5))"
+        }) {
+            assertEquals(GeoShape.fromWkt(s).toString(), serialize(s), s);
+        }
+    }
+
+    @Test
+    public void testMultiGeometries() {
+        assertEquals(GeoShape.fromWkt("MULTIPOINT((0 0),(1 1))").toString(),
+                "{\"type\":\"MultiPoint\",\"coordinates\":[[0.0,0.0],[1.0,1.0]]}");
+        assertEquals(GeoShape.fromWkt("MULTIPOINT(0 0, 1 1)").toString(),
+                "{\"type\":\"MultiPoint\",\"coordinates\":[[0.0,0.0],[1.0,1.0]]}");
+        assertEquals(GeoShape.fromWkt("multilinestring((0 0,1 1),(2 2,3 3))").toString(),
+                "{\"type\":\"MultiLineString\",\"coordinates\":[[[0.0,0.0],[1.0,1.0]],[[2.0,2.0],[3.0,3.0]]]}");
+        assertEquals(GeoShape.fromWkt("MULTIPOLYGON(((0 0,1 0,1 1,0 0)),((5 5,6 5,6 6,5 5),(5.1 5.1,5.2 5.1,5.2 5.2,5.1 5.1)))").toString(),
+                "{\"type\":\"MultiPolygon\",\"coordinates\":[[[[0.0,0.0],[1.0,0.0],[1.0,1.0],[0.0,0.0]]],"
+                        + "[[[5.0,5.0],[6.0,5.0],[6.0,6.0],[5.0,5.0]],[[5.1,5.1],[5.2,5.1],[5.2,5.2],[5.1,5.1]]]]}");
+    }
 
     @Test
-    public void convert() throws ParseException, IOException {
-        String s = "POLYGON((0 0,10 0,10 10,0 10,0 0),(5 5,7 5,7 7,5 7,5 5))";
-        SpatialContext ctx = JtsSpatialContext.GEO;
-        Shape shape = ctx.readShapeFromWkt(s);
+    public void testExtendedWkt() {
+        assertEquals(GeoShape.fromWkt("SRID=4326;POINT Z (1 2 3)").toString(),
+                "{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}");
+        assertNull(GeoShape.fromWkt("POINT EMPTY"));
+        assertTrue(GeoShape.isWkt("POLYGON ((0 0,1 0,1 1,0 0))"));
+        assertTrue(GeoShape.isWkt("SRID=4326;POINT(1 2)"));
+        assertFalse(GeoShape.isWkt("POINTS(1 2)"));
+        assertFalse(GeoShape.isWkt("Point of sale"));
+        assertNull(GeoShape.decode("Point of sale", true));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidWkt() {
+        GeoShape.fromWkt("POLYGON((0 0,1 0,1 1,0 0)");
+    }
+
+    @Test
+    public void testWkb() {
+        String point = "{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}";
+        // little and big endian
+        assertEquals(GeoShape.fromWkb(point(ByteOrder.LITTLE_ENDIAN, 1, 1.0, 2.0)).toString(), point);
+        assertEquals(GeoShape.fromWkb(point(ByteOrder.BIG_ENDIAN, 1, 1.0, 2.0)).toString(), point);
+        // PostGIS EWKB with SRID, hex encoded
+        assertEquals(GeoShape.decode("0101000020E6100000000000000000F03F0000000000000040", true).toString(), point);
+        assertNull(GeoShape.decode("0101000020E6100000000000000000F03F0000000000000040", false));
+        // MySQL: SRID 0 and 4326 before the WKB
+        byte[] wkb = point(ByteOrder.LITTLE_ENDIAN, 1, 1.0, 2.0);
+        for (int srid : new int[]{0, 4326}) {
+            ByteBuffer buffer = ByteBuffer.allocate(wkb.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(srid).put(wkb);
+            assertEquals(GeoShape.decode(buffer.array(), true).toString(), point);
+        }
+        // polygon with a hole
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 4 + 2 * (4 + 4 * 16)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 1).putInt(3).putInt(2);
+        buffer.putInt(4).putDouble(0).putDouble(0).putDouble(10).putDouble(0).putDouble(10).putDouble(10).putDouble(0).putDouble(0);
+        buffer.putInt(4).putDouble(5).putDouble(5).putDouble(7).putDouble(5).putDouble(7).putDouble(7).putDouble(5).putDouble(5);
+        assertEquals(GeoShape.fromWkb(buffer.array()),
+                GeoShape.fromWkt("POLYGON((0 0,10 0,10 10,0 0),(5 5,7 5,7 7,5 5))"));
+        // multi point, the elements have a header
+        buffer = ByteBuffer.allocate(1 + 4 + 4 + 2 * 21).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 1).putInt(4).putInt(2).put(wkb).put(point(ByteOrder.BIG_ENDIAN, 1, 3.0, 4.0));
+        assertEquals(GeoShape.fromWkb(buffer.array()), GeoShape.fromWkt("MULTIPOINT(1 2,3 4)"));
+        // ISO WKB point Z
+        buffer = ByteBuffer.allocate(1 + 4 + 24).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 1).putInt(1001).putDouble(1.0).putDouble(2.0).putDouble(3.0);
+        assertEquals(GeoShape.fromWkb(buffer.array()).toString(), point);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidWkb() {
+        GeoShape.fromWkb(new byte[]{1, 1, 0, 0, 0, 0});
+    }
+
+    private static byte[] point(ByteOrder order, int type, double x, double y) {
+        ByteBuffer buffer = ByteBuffer.allocate(21).order(order);
+        buffer.put((byte) (order == ByteOrder.LITTLE_ENDIAN ? 1 : 0)).putInt(type).putDouble(x).putDouble(y);
+        return buffer.array();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String serialize(String wkt) throws IOException, ParseException {
         XContentBuilder builder = jsonBuilder();
         builder.startObject();
-        GeoJSONShapeSerializer.serialize(shape, builder);
+        GeoJSONShapeSerializer.serialize(JtsSpatialContext.GEO.readShapeFromWkt(wkt), builder);
         builder.endObject();
-        logger.info("geo={}", builder.string());
-
+        return builder.string();
     }
 }
@@ -15,10 +15,23 @@
  */
 package org.xbib.elasticsearch.common.util;
 
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 public class IndexableObjectTests {
 
@@ -71,4 +84,93 @@ public class IndexableObjectTests {
         assertNotEquals(a, b);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSlotIndexableObject() {
+        DocumentLayout layout = layout("_id", "name");
+        IndexableObject a = new SlotIndexableObject(layout, ToXContent.EMPTY_PARAMS)
+                .index("index")
+                .type("type")
+                .id("id");
+        IndexableObject b = new PlainIndexableObject()
+                .index("index")
+                .type("type")
+                .id("id");
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), new SlotIndexableObject(layout, ToXContent.EMPTY_PARAMS)
+                .index("index").type("type").id("id").hashCode());
+        assertEquals(a.meta(ControlKeys._id.name()), "id");
+        assertTrue(!a.isEmpty());
+    }
+
+    @Test
+    public void testSlotLayout() {
+        assertNull(layout("a", "a.b"));
+        assertNull(layout("a.b", "a"));
+        assertNull(layout("a[b]"));
+        DocumentLayout layout = layout("_id", "a.b", "c", "a.d", "c[]");
+        assertEquals(layout.size(), 3);
+        assertEquals(layout.slot(0), -1);
+        assertEquals(layout.slot(4), layout.slot(2));
+        assertTrue(layout.isSequence(4));
+        assertEquals(layout.getRoot().name(0), "a");
+        assertEquals(layout.getRoot().node(0).name(1), "d");
+    }
+
+    @Test
+    public void testSlotSource() throws Exception {
+        List<String> keys = Arrays.asList("_id", "person.name", "person.city", "tags[]", "count");
+        List<KeyPlan> plans = new ArrayList<KeyPlan>();
+        for (String key : keys) {
+            plans.add(KeyPlan.compile(key, '.'));
+        }
+        Object[][] rows = {
+                {"1", "Joe", null, "a,b", 1},
+                {"1", "Joe", "Berlin", "b,c", 2},
+        };
+        for (String ignoreNull : Arrays.asList("true", "false")) {
+            Map<String, String> map = new HashMap<String, String>();
+            map.put("ignore_null", ignoreNull);
+            ToXContent.Params params = new ToXContent.MapParams(map);
+            StringKeyValueStreamListener listener = new StringKeyValueStreamListener();
+            PlainIndexableObject plain = new PlainIndexableObject(params);
+            SlotIndexableObject slotted = new SlotIndexableObject(DocumentLayout.compile(plans), params);
+            for (int i = 0; i < rows.length; i++) {
+                for (int j = 0; j < keys.size(); j++) {
+                    plain.source(listener.merge(plain.source(), plans.get(j), rows[i][j]));
+                    slotted.add(j, rows[i][j]);
+                }
+                assertEquals(slotted.build(), plain.build());
+            }
+            assertEquals(slotted.toString(), plain.toString());
+        }
+    }
+
+    @Test
+    public void testContentType() throws Exception {
+        DocumentLayout layout = layout("_id", "name", "count", "value", "tags[]");
+        SlotIndexableObject slotted = new SlotIndexableObject(layout, ToXContent.EMPTY_PARAMS);
+        Object[] row = {"1", "Joe", 42L, 1.5d, "a"};
+        for (int j = 0; j < row.length; j++) {
+            slotted.add(j, row[j]);
+        }
+        String json = slotted.build();
+        assertEquals(slotted.build(XContentType.JSON).toUtf8(), json);
+        for (XContentType contentType : Arrays.asList(XContentType.SMILE, XContentType.CBOR)) {
+            BytesReference bytes = slotted.build(contentType);
+            assertEquals(XContentFactory.xContentType(bytes), contentType);
+            assertEquals(XContentHelper.convertToJson(bytes, false), json);
+        }
+        PlainIndexableObject plain = new PlainIndexableObject();
+        plain.rawSource(RawJson.of("{\"a\": [1.5]}", RawJson.Mode.SCAN));
+        assertEquals(plain.build(XContentType.JSON).toUtf8(), "{\"a\": [1.5]}");
+        assertEquals(XContentHelper.convertToJson(plain.build(XContentType.SMILE), false), "{\"a\":[1.5]}");
+    }
+
+    private static DocumentLayout layout(String... keys) {
+        List<KeyPlan> plans = new ArrayList<KeyPlan>();
+        for (String key : keys) {
+            plans.add(KeyPlan.compile(key, '.'));
+        }
+        return DocumentLayout.compile(plans);
+    }
+}
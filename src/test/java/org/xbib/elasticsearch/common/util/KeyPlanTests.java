@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class KeyPlanTests extends Assert {
+
+    @Test
+    public void testControlKeys() {
+        KeyPlan plan = KeyPlan.compile("_id", '.');
+        assertEquals(plan.getControl(), ControlKeys._id);
+        assertEquals(plan.getKind(), KeyPlan.Kind.IGNORED);
+        // control keys are recognized in any case, but only exact control keys are not merged
+        plan = KeyPlan.compile("_ID", '.');
+        assertEquals(plan.getControl(), ControlKeys._id);
+        assertEquals(plan.getKind(), KeyPlan.Kind.FIELD);
+        assertNull(KeyPlan.compile("id", '.').getControl());
+    }
+
+    @Test
+    public void testField() {
+        KeyPlan plan = KeyPlan.compile("name", '.');
+        assertEquals(plan.getKind(), KeyPlan.Kind.FIELD);
+        assertEquals(plan.getHead(), "name");
+        assertFalse(plan.isSequence());
+        plan = KeyPlan.compile("name[]", '.');
+        assertEquals(plan.getKind(), KeyPlan.Kind.FIELD);
+        assertEquals(plan.getHead(), "name");
+        assertTrue(plan.isSequence());
+    }
+
+    @Test
+    public void testPath() {
+        KeyPlan plan = KeyPlan.compile("person.address.city", '.');
+        assertEquals(plan.getKind(), KeyPlan.Kind.PATH);
+        assertEquals(plan.getHead(), "person");
+        plan = plan.getNext();
+        assertEquals(plan.getKind(), KeyPlan.Kind.PATH);
+        assertEquals(plan.getHead(), "address");
+        plan = plan.getNext();
+        assertEquals(plan.getKind(), KeyPlan.Kind.FIELD);
+        assertEquals(plan.getHead(), "city");
+    }
+
+    @Test
+    public void testIndexed() {
+        KeyPlan plan = KeyPlan.compile("person[address.city]", '.');
+        assertEquals(plan.getKind(), KeyPlan.Kind.INDEXED);
+        assertEquals(plan.getHead(), "person");
+        assertEquals(plan.getIndex(), "address.city");
+        assertTrue(plan.indexHasDelimiter());
+        assertEquals(plan.getNext().getKind(), KeyPlan.Kind.PATH);
+        assertEquals(plan.getNext().getNext().getHead(), "city");
+    }
+
+    @Test
+    public void testMerge() {
+        StringKeyValueStreamListener listener = new StringKeyValueStreamListener();
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        listener.merge(map, KeyPlan.compile("a.b", '.'), "1");
+        listener.merge(map, KeyPlan.compile("a.c", '.'), "2");
+        listener.merge(map, KeyPlan.compile("_id", '.'), "3");
+        assertEquals(map.keySet().toString(), "[a]");
+        assertEquals(((Map) map.get("a")).keySet().toString(), "[b, c]");
+    }
+}
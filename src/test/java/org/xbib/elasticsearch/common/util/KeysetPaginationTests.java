@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+public class KeysetPaginationTests extends Assert {
+
+    @Test
+    public void testPageSQL() {
+        assertEquals(KeysetPagination.pageSQL("select * from orders", "id", true),
+                "select * from (select * from orders) keyset_page order by id");
+        assertEquals(KeysetPagination.pageSQL("select * from orders", "id", false),
+                "select * from (select * from orders) keyset_page where id > ? order by id");
+        assertEquals(KeysetPagination.pageSQL("select o.id from orders o", "o.id", false),
+                "select * from (select o.id from orders o) keyset_page where id > ? order by id");
+        assertEquals(KeysetPagination.pageSQL("select o.\"a.b\" from orders o", "o.\"a.b\"", false),
+                "select * from (select o.\"a.b\" from orders o) keyset_page where \"a.b\" > ? order by \"a.b\"");
+    }
+
+    @Test
+    public void testLabel() {
+        assertEquals(KeysetPagination.label("id"), "id");
+        assertEquals(KeysetPagination.label("\"_id\""), "_id");
+        assertEquals(KeysetPagination.label("o.`id`"), "id");
+        assertEquals(KeysetPagination.label("o.\"a.b\""), "a.b");
+    }
+
+    @Test
+    public void testCheckpoint() {
+        Object[] keys = new Object[]{42L, 1.5d, new BigDecimal("12.50"), new Timestamp(1000L), "abc"};
+        for (Object key : keys) {
+            String[] s = KeysetPagination.encode(key);
+            assertEquals(KeysetPagination.decode(s[0], s[1]), key);
+        }
+        String[] s = KeysetPagination.encode(7);
+        assertEquals(KeysetPagination.decode(s[0], s[1]), 7L);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+public class LobReaderTests extends Assert {
+
+    private final static byte[] BYTES = new byte[20000];
+
+    private final static String CHARS;
+
+    static {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BYTES.length; i++) {
+            BYTES[i] = (byte) i;
+            sb.append((char) ('a' + i % 26));
+        }
+        CHARS = sb.toString();
+    }
+
+    @Test
+    public void testNoLimit() throws IOException {
+        LobReader reader = new LobReader(-1L, LobReader.Policy.TRUNCATE);
+        assertNull(reader.read((ByteArrayInputStream) null, -1L, "f"));
+        assertEquals(reader.read(new ByteArrayInputStream(BYTES), -1L, "f"), BYTES);
+        assertEquals(reader.read(new ByteArrayInputStream(BYTES), BYTES.length, "f"), BYTES);
+        assertEquals(reader.read(new StringReader(CHARS), -1L, "f"), CHARS);
+        assertEquals(reader.read(new StringReader(CHARS), CHARS.length(), "f"), CHARS);
+        // the declared length is larger than the value
+        assertEquals(reader.read(new StringReader("abc"), 5L, "f"), "abc");
+    }
+
+    @Test
+    public void testTruncate() throws IOException {
+        LobReader reader = new LobReader(10000L, LobReader.Policy.TRUNCATE);
+        byte[] b = reader.read(new ByteArrayInputStream(BYTES), -1L, "f");
+        assertEquals(b.length, 10000);
+        assertEquals(b[9999], BYTES[9999]);
+        assertEquals(reader.read(new ByteArrayInputStream(BYTES), BYTES.length, "f").length, 10000);
+        assertEquals(reader.read(new StringReader(CHARS), -1L, "f"), CHARS.substring(0, 10000));
+        assertEquals(reader.read(new StringReader(CHARS), CHARS.length(), "f"), CHARS.substring(0, 10000));
+        // values at the limit are complete
+        assertEquals(reader.read(new StringReader(CHARS.substring(0, 10000)), -1L, "f"), CHARS.substring(0, 10000));
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        LobReader reader = new LobReader(10000L, LobReader.Policy.SKIP);
+        assertNull(reader.read(new ByteArrayInputStream(BYTES), -1L, "f"));
+        assertNull(reader.read(new ByteArrayInputStream(BYTES), BYTES.length, "f"));
+        assertNull(reader.read(new StringReader(CHARS), -1L, "f"));
+        assertEquals(reader.read(new StringReader("abc"), 3L, "f"), "abc");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testFail() throws IOException {
+        LobReader reader = new LobReader(10000L, LobReader.Policy.FAIL);
+        reader.read(new ByteArrayInputStream(BYTES), -1L, "f");
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.xbib.elasticsearch.common.metrics.SourceMetric;
+import org.xbib.elasticsearch.jdbc.strategy.mock.MockSink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PipelineTests extends Assert {
+
+    @Test
+    public void testRingBuffer() {
+        RingBuffer<Integer> buffer = new RingBuffer<Integer>(3);
+        assertEquals(buffer.capacity(), 4);
+        assertNull(buffer.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(buffer.size(), 4);
+        assertEquals(buffer.poll(), Integer.valueOf(0));
+        assertTrue(buffer.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(buffer.poll(), Integer.valueOf(i));
+        }
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testRingBufferHandoff() throws Exception {
+        final RingBuffer<Integer> buffer = new RingBuffer<Integer>(8);
+        final int count = 100000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    while (!buffer.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+        int expected = 0;
+        while (expected < count) {
+            Integer i = buffer.poll();
+            if (i == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(i.intValue(), expected++);
+        }
+        producer.join();
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        List<String> columns = Arrays.asList("_id", "label");
+        MockSink output = new MockSink();
+        SourceMetric metric = new SourceMetric();
+        PipelinedSinkKeyValueStreamListener<String, String> listener =
+                new PipelinedSinkKeyValueStreamListener<String, String>(4).metric(metric);
+        listener.output(output);
+        listener.begin();
+        listener.keys(columns);
+        List<String> row = new ArrayList<String>(Arrays.asList("0", "label0"));
+        for (int i = 0; i < 100; i++) {
+            // the reader reuses the row buffer
+            row.set(0, Integer.toString(i / 2));
+            row.set(1, "label" + i);
+            listener.values(row);
+        }
+        listener.end();
+        assertEquals(output.data().size(), 50);
+        assertEquals(metric.getRowQueueDepth().count(), 0L);
+        assertEquals(metric.getDocumentQueueDepth().count(), 0L);
+    }
+
+    @Test
+    public void testPipelineFailure() throws Exception {
+        MockSink output = new MockSink() {
+            @Override
+            public void index(IndexableObject object, boolean create) throws IOException {
+                throw new IOException("sink failure");
+            }
+        };
+        PipelinedSinkKeyValueStreamListener<String, String> listener =
+                new PipelinedSinkKeyValueStreamListener<String, String>(4);
+        listener.output(output);
+        listener.begin();
+        listener.keys(Arrays.asList("_id", "label"));
+        try {
+            for (int i = 0; i < 100; i++) {
+                listener.values(Arrays.asList(Integer.toString(i), "label"));
+            }
+            listener.end();
+            fail("sink failure must be thrown to the reader");
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "sink failure");
+        } finally {
+            listener.close();
+        }
+    }
+}
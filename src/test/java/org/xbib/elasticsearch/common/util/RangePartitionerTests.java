@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.List;
+
+public class RangePartitionerTests extends Assert {
+
+    @Test
+    public void testLongRange() {
+        List<RangePartitioner.Range> ranges = RangePartitioner.split(1, 100L, 4);
+        assertEquals(ranges.size(), 4);
+        // the minimum is bound as it is
+        assertEquals(ranges.get(0).getLower(), 1);
+        assertEquals(ranges.get(0).getUpper(), 26L);
+        assertEquals(ranges.get(1).getLower(), 26L);
+        assertEquals(ranges.get(3).getUpper(), 100L);
+        assertFalse(ranges.get(2).isLast());
+        assertTrue(ranges.get(3).isLast());
+    }
+
+    @Test
+    public void testSmallLongRange() {
+        List<RangePartitioner.Range> ranges = RangePartitioner.split(5L, 6L, 8);
+        assertEquals(ranges.size(), 2);
+        assertEquals(ranges.get(0).getLower(), 5L);
+        assertEquals(ranges.get(1).getUpper(), 6L);
+        assertTrue(ranges.get(1).isLast());
+    }
+
+    @Test
+    public void testSingleValue() {
+        List<RangePartitioner.Range> ranges = RangePartitioner.split(new BigDecimal("7"), new BigDecimal("7.00"), 4);
+        assertEquals(ranges.size(), 1);
+        assertEquals(ranges.get(0).getLower(), new BigDecimal("7"));
+        assertEquals(ranges.get(0).getUpper(), new BigDecimal("7.00"));
+        assertTrue(ranges.get(0).isLast());
+    }
+
+    @Test
+    public void testDoubleRange() {
+        List<RangePartitioner.Range> ranges = RangePartitioner.split(0.5d, 2.5d, 2);
+        assertEquals(ranges.size(), 2);
+        assertEquals(ranges.get(0).getUpper(), 1.5d);
+        assertEquals(ranges.get(1).getLower(), 1.5d);
+        assertEquals(ranges.get(1).getUpper(), 2.5d);
+    }
+
+    @Test
+    public void testDateRange() {
+        List<RangePartitioner.Range> ranges = RangePartitioner.split(new Timestamp(0L), new Timestamp(999L), 10);
+        assertEquals(ranges.size(), 10);
+        assertEquals(ranges.get(1).getLower(), new Timestamp(100L));
+        assertEquals(ranges.get(9).getUpper(), new Timestamp(999L));
+    }
+
+    @Test
+    public void testDateRangeWithNanos() {
+        Timestamp min = new Timestamp(0L);
+        min.setNanos(123456);
+        Timestamp max = new Timestamp(999L);
+        max.setNanos(999999999);
+        List<RangePartitioner.Range> ranges = RangePartitioner.split(min, max, 4);
+        assertEquals(ranges.size(), 4);
+        // the bounds keep the nanoseconds, so the rows with the minimum and the maximum are fetched
+        assertSame(ranges.get(0).getLower(), min);
+        assertSame(ranges.get(3).getUpper(), max);
+        assertEquals(ranges.get(1).getLower(), new Timestamp(250L));
+    }
+
+    @Test
+    public void testDecimalRangeAboveLong() {
+        BigDecimal min = new BigDecimal("9223372036854775800");
+        BigDecimal max = new BigDecimal("9223372036854775900");
+        List<RangePartitioner.Range> ranges = RangePartitioner.split(min, max, 2);
+        assertEquals(ranges.size(), 2);
+        assertSame(ranges.get(0).getLower(), min);
+        assertEquals(ranges.get(0).getUpper(), new BigDecimal("9223372036854775851"));
+        assertEquals(ranges.get(1).getLower(), new BigDecimal("9223372036854775851"));
+        assertSame(ranges.get(1).getUpper(), max);
+        assertTrue(ranges.get(1).isLast());
+        ranges = RangePartitioner.split(new BigInteger("-1"), new BigInteger("18446744073709551615"), 2);
+        assertEquals(ranges.get(0).getUpper(), new BigDecimal("9223372036854775808"));
+        assertEquals(ranges.get(1).getUpper(), new BigInteger("18446744073709551615"));
+    }
+
+    @Test
+    public void testEmptyRange() {
+        assertTrue(RangePartitioner.split(null, null, 4).isEmpty());
+    }
+
+    @Test
+    public void testPartitionSQL() {
+        assertEquals(RangePartitioner.partitionSQL("select * from orders", "id", false),
+                "select * from (select * from orders) range_partition where id >= ? and id < ?");
+        assertEquals(RangePartitioner.partitionSQL("select * from orders", "id", true),
+                "select * from (select * from orders) range_partition where id >= ? and id <= ?");
+        assertEquals(RangePartitioner.partitionSQL("select o.id from orders o", "o.id", false),
+                "select * from (select o.id from orders o) range_partition where id >= ? and id < ?");
+        assertEquals(RangePartitioner.rangeSQL("select o.id from orders o", "o.`id`"),
+                "select min(`id`), max(`id`) from (select o.id from orders o) range_partition");
+    }
+}
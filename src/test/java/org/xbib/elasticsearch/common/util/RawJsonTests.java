@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.smileBuilder;
+
+public class RawJsonTests extends Assert {
+
+    @Test
+    public void testValidate() {
+        assertNotNull(RawJson.of(" {\"a\":[1,\"]\"]} ", RawJson.Mode.VALIDATE));
+        assertTrue(RawJson.of("{}", RawJson.Mode.VALIDATE).isObject());
+        assertFalse(RawJson.of("[1]", RawJson.Mode.VALIDATE).isObject());
+        assertNull(RawJson.of("hello", RawJson.Mode.VALIDATE));
+        assertNull(RawJson.of("\"{}\"", RawJson.Mode.VALIDATE));
+        assertNull(RawJson.of("{\"a\":1", RawJson.Mode.VALIDATE));
+        assertNull(RawJson.of("{\"a\":}", RawJson.Mode.VALIDATE));
+        assertNull(RawJson.of("{} {}", RawJson.Mode.VALIDATE));
+    }
+
+    @Test
+    public void testScan() {
+        assertNotNull(RawJson.of(" {\"a\":[1,\"]\\\"\"]} ", RawJson.Mode.SCAN));
+        assertNotNull(RawJson.of("[[],{}]".getBytes(), RawJson.Mode.SCAN));
+        assertNull(RawJson.of("{\"a\":1", RawJson.Mode.SCAN));
+        assertNull(RawJson.of("{\"a\":[1}]", RawJson.Mode.SCAN));
+        assertNull(RawJson.of("{\"a\":\"}", RawJson.Mode.SCAN));
+        assertNull(RawJson.of("{} {}", RawJson.Mode.SCAN));
+        // scanning does not check the tokens
+        assertNotNull(RawJson.of("{\"a\":}", RawJson.Mode.SCAN));
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        RawJson object = RawJson.of("{\"a\":[1,{\"b\":\"c\"}]}", RawJson.Mode.VALIDATE);
+        RawJson array = RawJson.of("[1,{\"b\":\"c\"}]", RawJson.Mode.VALIDATE);
+        XContentBuilder builder = jsonBuilder().startObject();
+        object.toXContent(builder, "o");
+        array.toXContent(builder, "l");
+        builder.startArray("v").value(object).value(array).endArray().endObject();
+        assertEquals(builder.string(), "{\"o\":{\"a\":[1,{\"b\":\"c\"}]},\"l\":[1,{\"b\":\"c\"}],"
+                + "\"v\":[{\"a\":[1,{\"b\":\"c\"}]},[1,{\"b\":\"c\"}]]}");
+        // raw JSON is converted in other content types
+        builder = smileBuilder().startObject();
+        object.toXContent(builder, "o");
+        array.toXContent(builder, "l");
+        builder.endObject();
+        Map<String, Object> map = XContentHelper.convertToMap(builder.bytes(), true).v2();
+        assertEquals(map.get("o"), object.map());
+        assertEquals(map.toString(), "{o={a=[1, {b=c}]}, l=[1, {b=c}]}");
+    }
+
+    @Test
+    public void testIndexableObject() throws IOException {
+        Map<String, Object> source = new LinkedHashMap<String, Object>();
+        source.put("doc", new Values<Object>(null, RawJson.of("{\"a\":1}", RawJson.Mode.SCAN), false));
+        PlainIndexableObject object = new PlainIndexableObject();
+        object.source(source);
+        assertEquals(object.build(), "{\"doc\":{\"a\":1}}");
+        object.rawSource(RawJson.of("{\"a\": 1}", RawJson.Mode.SCAN));
+        assertEquals(object.build(), "{\"a\": 1}");
+        assertEquals(object.source().get("a"), 1);
+        assertEquals(object.build(), "{\"a\":1}");
+    }
+
+    @Test
+    public void testLineBreaks() throws IOException {
+        RawJson json = RawJson.of("{\n  \"a\" : [ 1,\r\n 2 ],\n  \"b\" : \"x\\ny\"\n}", RawJson.Mode.SCAN);
+        assertFalse(json.isSingleLine());
+        assertTrue(RawJson.of("{\"b\":\"x\\ny\"}", RawJson.Mode.SCAN).isSingleLine());
+        XContentBuilder builder = jsonBuilder().startObject();
+        json.toXContent(builder, "o");
+        assertEquals(builder.endObject().string(), "{\"o\":{\"a\":[1,2],\"b\":\"x\\ny\"}}");
+        PlainIndexableObject object = new PlainIndexableObject();
+        object.rawSource(json);
+        assertEquals(object.build(XContentType.JSON).toUtf8(), "{\"a\":[1,2],\"b\":\"x\\ny\"}");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        object.build(XContentType.JSON, out);
+        assertEquals(out.toString("UTF-8"), "{\"a\":[1,2],\"b\":\"x\\ny\"}");
+    }
+}
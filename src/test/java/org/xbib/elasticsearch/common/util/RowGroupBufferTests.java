@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RowGroupBufferTests extends Assert {
+
+    @Test
+    public void testGroupsInMemory() throws IOException {
+        RowGroupBuffer buffer = new RowGroupBuffer(1024 * 1024, null);
+        buffer.add("b", row("b", 1));
+        buffer.add("a", row("a", 2));
+        buffer.add("b", row("b", 3));
+        buffer.add("a", row("a", 4));
+        assertEquals(buffer.size(), 4);
+        assertEquals(buffer.getRuns(), 0);
+        // groups in the order of their first row
+        assertEquals(drain(buffer).toString(), "[[b, 1], [b, 3], [a, 2], [a, 4]]");
+        assertEquals(buffer.size(), 0);
+    }
+
+    @Test
+    public void testSpilledGroups() throws IOException {
+        File dir = Files.createTempDirectory("group").toFile();
+        RowGroupBuffer buffer = new RowGroupBuffer(300, dir);
+        buffer.add("c", row("c", 1));
+        buffer.add("a", row("a", 2));
+        buffer.add("b", row("b", 3));
+        buffer.add("c", row("c", 4));
+        buffer.add("a", row("a", 5));
+        buffer.add("a", row("a", 6));
+        assertTrue(buffer.getRuns() > 0);
+        assertEquals(buffer.size(), 6);
+        // groups sorted by key, rows of a key in the order they were added
+        assertEquals(drain(buffer).toString(), "[[a, 2], [a, 5], [a, 6], [b, 3], [c, 1], [c, 4]]");
+        assertEquals(dir.list().length, 0);
+        assertTrue(dir.delete());
+    }
+
+    @Test
+    public void testSpilledValues() throws IOException {
+        RowGroupBuffer buffer = new RowGroupBuffer(0, null);
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("x", Arrays.asList(1L, "y"));
+        List<Object> row = Arrays.<Object>asList("1", 1, 2L, 3.5d, 1.5f, true, null, new BigDecimal("1.50"),
+                new Date(1000L), map);
+        buffer.add("1", row);
+        buffer.add("1", row("1", "ü"));
+        assertEquals(buffer.getRuns(), 2);
+        List<List<Object>> rows = drain(buffer);
+        assertEquals(rows.get(0), row);
+        assertEquals(rows.get(1), row("1", "ü"));
+        buffer.add("2", Arrays.<Object>asList(new byte[]{1, 2}));
+        assertEquals(drain(buffer).get(0).get(0), new byte[]{1, 2});
+    }
+
+    private static List<Object> row(Object... values) {
+        return new ArrayList<Object>(Arrays.asList(values));
+    }
+
+    private static List<List<Object>> drain(RowGroupBuffer buffer) throws IOException {
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        buffer.drain(new RowGroupBuffer.RowHandler() {
+            @Override
+            public void row(List<Object> row) {
+                rows.add(row);
+            }
+        });
+        return rows;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+public class StatementCacheTests extends Assert {
+
+    private final static int TYPE = ResultSet.TYPE_FORWARD_ONLY;
+
+    private final static int CONCURRENCY = ResultSet.CONCUR_READ_ONLY;
+
+    private Connection connection;
+
+    private StatementCache cache;
+
+    @BeforeMethod
+    public void open() throws Exception {
+        connection = DriverManager.getConnection("jdbc:derby:memory:statementcachetest;create=true");
+        cache = new StatementCache(connection, 2);
+    }
+
+    @AfterMethod
+    public void close() throws Exception {
+        cache.close();
+        connection.close();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        PreparedStatement statement = cache.prepare("values 1", TYPE, CONCURRENCY);
+        assertTrue(cache.release(statement));
+        assertFalse(statement.isClosed());
+        assertSame(cache.prepare("values 1", TYPE, CONCURRENCY), statement);
+        assertEquals(cache.getHits(), 1L);
+        assertEquals(cache.getMisses(), 1L);
+    }
+
+    @Test
+    public void testInUse() throws Exception {
+        PreparedStatement s1 = cache.prepare("values 1", TYPE, CONCURRENCY);
+        PreparedStatement s2 = cache.prepare("values 1", TYPE, CONCURRENCY);
+        assertNotSame(s1, s2);
+        assertTrue(cache.release(s2));
+        assertTrue(s2.isClosed());
+        assertTrue(cache.release(s1));
+        assertFalse(s1.isClosed());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        PreparedStatement s1 = cache.prepare("values 1", TYPE, CONCURRENCY);
+        cache.release(s1);
+        PreparedStatement s2 = cache.prepare("values 2", TYPE, CONCURRENCY);
+        cache.release(s2);
+        // touch s1, so s2 is the least recently used statement
+        cache.release(cache.prepare("values 1", TYPE, CONCURRENCY));
+        PreparedStatement s3 = cache.prepare("values 3", TYPE, CONCURRENCY);
+        cache.release(s3);
+        assertTrue(s2.isClosed());
+        assertFalse(s1.isClosed());
+        assertFalse(s3.isClosed());
+    }
+
+    @Test
+    public void testForeignStatement() throws Exception {
+        PreparedStatement statement = connection.prepareStatement("values 1");
+        assertFalse(cache.release(statement));
+        statement.close();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class StringDictionaryTests extends Assert {
+
+    @Test
+    public void testLowCardinality() {
+        StringDictionary dictionary = new StringDictionary(10, 100);
+        String first = new String("open");
+        assertSame(dictionary.intern(first), first);
+        for (int i = 0; i < 200; i++) {
+            String s = new String(i % 2 == 0 ? "open" : "closed");
+            String t = dictionary.intern(s);
+            assertEquals(t, s);
+            if (i % 2 == 0) {
+                assertSame(t, first);
+            }
+        }
+        assertTrue(dictionary.isEnabled());
+        assertEquals(dictionary.size(), 2);
+        assertEquals(dictionary.getMisses(), 2L);
+        assertNull(dictionary.intern(null));
+    }
+
+    @Test
+    public void testHighCardinality() {
+        StringDictionary dictionary = new StringDictionary(1000, 100);
+        for (int i = 0; i < 100; i++) {
+            dictionary.intern("value" + i);
+        }
+        assertFalse(dictionary.isEnabled());
+        assertEquals(dictionary.size(), 0);
+        String s = new String("value1");
+        assertSame(dictionary.intern(s), s);
+    }
+
+    @Test
+    public void testEviction() {
+        StringDictionary dictionary = new StringDictionary(2, 0);
+        String a = dictionary.intern(new String("a"));
+        dictionary.intern("b");
+        dictionary.intern("a");
+        dictionary.intern("c");
+        assertEquals(dictionary.size(), 2);
+        // "b" was the least recently used string
+        assertSame(dictionary.intern(new String("a")), a);
+        String b = new String("b");
+        assertSame(dictionary.intern(b), b);
+        assertTrue(dictionary.isEnabled());
+    }
+}
@@ -19,6 +19,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.xbib.elasticsearch.jdbc.strategy.mock.MockSink;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -395,4 +396,173 @@ public class ValueListenerTests extends Assert {
 
     }
 
+    @Test
+    public void testJsonSampling() throws Exception {
+        List<String> columns = Arrays.asList("_id", "text", "doc");
+        List<String> row1 = Arrays.asList("1", "plain", "{\"a\":1}");
+        List<String> row2 = Arrays.asList("2", "[not json", "text");
+        List<String> row3 = Arrays.asList("3", "{\"b\":2}", "{\"a\":3}");
+        MockSink output = new MockSink();
+        new StringKeyValueStreamListener()
+                .output(output)
+                .jsonSampleSize(2)
+                .begin()
+                .keys(columns)
+                .values(row1)
+                .values(row2)
+                .values(row3)
+                .end();
+        assertEquals(output.data().size(), 3, "Number of inserted objects");
+        // the text column is sampled twice without JSON, so it is not parsed any longer
+        assertTrue(output.data().containsValue("{\"text\":\"{\\\"b\\\":2}\",\"doc\":{\"a\":3}}"),
+                output.data().toString());
+        assertTrue(output.data().containsValue("{\"text\":\"plain\",\"doc\":{\"a\":1}}"),
+                output.data().toString());
+    }
+
+    @Test
+    public void testJsonColumns() throws Exception {
+        List<String> columns = Arrays.asList("_id", "text", "doc");
+        List<String> row1 = Arrays.asList("1", "{\"b\":2}", "{\"a\":1}");
+        MockSink output = new MockSink();
+        new StringKeyValueStreamListener()
+                .output(output)
+                .jsonColumns(Arrays.asList("doc"))
+                .begin()
+                .keys(columns)
+                .values(row1)
+                .end();
+        assertTrue(output.data().containsValue("{\"text\":\"{\\\"b\\\":2}\",\"doc\":{\"a\":1}}"),
+                output.data().toString());
+        // a column with a JSON type is parsed even if sampling has given up
+        output = new MockSink();
+        StringKeyValueStreamListener listener = new StringKeyValueStreamListener();
+        listener.output(output).jsonSampleSize(1);
+        listener.begin();
+        listener.keys(columns, Arrays.asList("doc"), null);
+        listener.values(Arrays.asList("1", "x", "x"));
+        listener.values(Arrays.asList("2", "{\"b\":2}", "{\"a\":1}"));
+        listener.end();
+        assertTrue(output.data().containsValue("{\"text\":\"{\\\"b\\\":2}\",\"doc\":{\"a\":1}}"),
+                output.data().toString());
+    }
+
+    @Test
+    public void testJsonPassthrough() throws Exception {
+        for (RawJson.Mode mode : RawJson.Mode.values()) {
+            List<String> columns = Arrays.asList("_id", "text", "doc", "list");
+            MockSink output = new MockSink();
+            new StringKeyValueStreamListener()
+                    .output(output)
+                    .jsonPassthrough(mode)
+                    .begin()
+                    .keys(columns)
+                    .values(Arrays.asList("1", "{\"b\":2", "{\"a\": [1, {\"c\": \"}\"}]}", "[1,2]"))
+                    .end();
+            // the JSON is copied as it is, malformed JSON is a string
+            assertTrue(output.data().containsValue("{\"text\":\"{\\\"b\\\":2\","
+                    + "\"doc\":{\"a\": [1, {\"c\": \"}\"}]},\"list\":[1,2]}"), output.data().toString());
+            columns = Arrays.asList("_optype", "_id", "_source");
+            output = new MockSink();
+            new StringKeyValueStreamListener()
+                    .output(output)
+                    .jsonPassthrough(mode)
+                    .begin()
+                    .keys(columns)
+                    .values(Arrays.asList("index", "1", "{\"Hello\" : \"World\"}"))
+                    .end();
+            assertEquals(output.data().toString(), "{[index/null/null/1]->{\"Hello\" : \"World\"}={\"Hello\" : \"World\"}}");
+        }
+    }
+
+    @Test
+    public void testGeoSampling() throws Exception {
+        List<String> columns = Arrays.asList("_id", "text", "location");
+        List<String> row1 = Arrays.asList("1", "plain", "POINT(1 2)");
+        List<String> row2 = Arrays.asList("2", "text", "POLYGON((0 0,1 0,1 1,0 0))");
+        List<String> row3 = Arrays.asList("3", "POINT(3 4)", "not a geometry");
+        MockSink output = new MockSink();
+        new StringKeyValueStreamListener()
+                .output(output)
+                .geoSampleSize(2)
+                .begin()
+                .keys(columns)
+                .values(row1)
+                .values(row2)
+                .values(row3)
+                .end();
+        assertTrue(output.data().containsValue("{\"text\":\"plain\",\"location\":{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}}"),
+                output.data().toString());
+        assertTrue(output.data().containsValue("{\"text\":\"text\",\"location\":{\"type\":\"Polygon\","
+                + "\"coordinates\":[[[0.0,0.0],[1.0,0.0],[1.0,1.0],[0.0,0.0]]]}}"), output.data().toString());
+        // the text column is sampled twice without WKT, so it is not decoded any longer
+        assertTrue(output.data().containsValue("{\"text\":\"POINT(3 4)\",\"location\":\"not a geometry\"}"),
+                output.data().toString());
+        // no geo detection
+        output = new MockSink();
+        new StringKeyValueStreamListener()
+                .output(output)
+                .shouldDetectGeo(false)
+                .begin()
+                .keys(columns)
+                .values(row1)
+                .end();
+        assertTrue(output.data().containsValue("{\"text\":\"plain\",\"location\":\"POINT(1 2)\"}"),
+                output.data().toString());
+    }
+
+    @Test
+    public void testGeoColumns() throws Exception {
+        List<String> columns = Arrays.asList("_id", "text", "location");
+        // a column with a geometry type may hold hex encoded WKB
+        MockSink output = new MockSink();
+        StringKeyValueStreamListener listener = new StringKeyValueStreamListener();
+        listener.output(output);
+        listener.begin();
+        listener.keys(columns, null, Arrays.asList("location"));
+        listener.values(Arrays.asList("1", "0101000020E6100000000000000000F03F0000000000000040",
+                "0101000020E6100000000000000000F03F0000000000000040"));
+        listener.end();
+        assertTrue(output.data().containsValue("{\"text\":\"0101000020E6100000000000000000F03F0000000000000040\","
+                + "\"location\":{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}}"), output.data().toString());
+        // only the configured columns are decoded
+        output = new MockSink();
+        new StringKeyValueStreamListener()
+                .output(output)
+                .geoColumns(Arrays.asList("location"))
+                .begin()
+                .keys(columns)
+                .values(Arrays.asList("1", "POINT(1 2)", "POINT(1 2)"))
+                .end();
+        assertTrue(output.data().containsValue("{\"text\":\"POINT(1 2)\","
+                + "\"location\":{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}}"), output.data().toString());
+    }
+
+    @Test
+    public void testGroupById() throws Exception {
+        List<String> columns = Arrays.asList("_id", "person.name", "person.coursename[]");
+        List<List<String>> rows = new ArrayList<List<String>>();
+        rows.add(Arrays.asList("1", "A", "math"));
+        rows.add(Arrays.asList("2", "B", "art"));
+        rows.add(Arrays.asList("1", "A", "physics"));
+        rows.add(Arrays.asList("3", "C", "music"));
+        rows.add(Arrays.asList("2", "B", "history"));
+        for (long memoryLimit : new long[]{1024 * 1024, 0}) {
+            MockSink output = new MockSink();
+            StringKeyValueStreamListener listener = new StringKeyValueStreamListener();
+            listener.output(output).groupById(memoryLimit, null);
+            listener.begin();
+            listener.keys(columns);
+            for (List<String> row : rows) {
+                listener.values(row);
+            }
+            assertEquals(listener.getPendingRows(), 5);
+            listener.end();
+            assertEquals(output.data().size(), 3, output.data().toString());
+            assertTrue(output.data().containsValue("{\"person\":{\"name\":\"A\",\"coursename\":[\"math\",\"physics\"]}}"),
+                    output.data().toString());
+            assertTrue(output.data().containsValue("{\"person\":{\"name\":\"B\",\"coursename\":[\"art\",\"history\"]}}"),
+                    output.data().toString());
+        }
+    }
 }
@@ -18,6 +18,8 @@ package org.xbib.elasticsearch.common.util;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.Locale;
+
 /**
  * Unit-test checking basic functionality of {@link Values}.
  *
@@ -116,4 +118,39 @@ public class ValuesTests extends Assert {
         assertEquals(values[2], "TEST3");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testManyValuesWithDuplicates() {
+        Values<String> vs = null;
+        for (int i = 0; i < 20000; i++) {
+            vs = new Values<String>(vs, "TEST" + (i % 1000), false);
+        }
+        Object[] values = vs.getValues();
+        assertEquals(values.length, 1000);
+        assertEquals(values[0], "TEST0");
+        assertEquals(values[999], "TEST999");
+        vs.add(null, false);
+        values = vs.getValues();
+        assertEquals(values.length, 1000);
+    }
+
+    @Test
+    public void testExpandValueLikeSplit() {
+        for (String s : new String[]{"", ",", ",,", "a", "a,", "a,,", ",a", "a,,b", "a,b,a", ",a,,b,,"}) {
+            Values<String> vs = new Values<String>(null, s, true);
+            Values<String> expected = null;
+            for (String t : s.split(",")) {
+                expected = new Values<String>(expected, t, false);
+            }
+            assertEquals(vs.toString(), expected != null ? expected.toString() : "", s);
+        }
+    }
+
+    @Test
+    public void testFormatFloatingPoint() {
+        for (double d : new double[]{0.0d, -0.0d, 1.5d, -2.7446785d, 1e20d, 1.234e-9d, -3.0e-13d, 0.1d + 0.2d}) {
+            assertEquals(new Values<Object>(null, d, false).toString(), String.format(Locale.ROOT, "%.12f", d));
+        }
+        assertEquals(new Values<Object>(null, 1.1f, false).toString(), String.format(Locale.ROOT, "%.12f", 1.1f));
+        assertEquals(new Values<Object>(null, Double.NaN, false).toString(), "NaN");
+    }
+}
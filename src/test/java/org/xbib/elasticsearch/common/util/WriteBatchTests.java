@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.common.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class WriteBatchTests extends Assert {
+
+    @Test
+    public void testSize() {
+        WriteBatch batch = new WriteBatch(3, 60000L);
+        assertFalse(batch.isDue(0));
+        batch.add(new Object[]{1});
+        batch.add(new Object[]{2});
+        assertFalse(batch.isDue(0));
+        batch.add(new Object[]{3});
+        assertTrue(batch.isDue(0));
+        // the last row belongs to a document that is not complete
+        assertFalse(batch.isDue(1));
+        batch.add(new Object[]{4});
+        assertTrue(batch.isDue(1));
+        List<Object[]> rows = batch.drain(1);
+        assertEquals(rows.size(), 3);
+        assertEquals(rows.get(0)[0], 1);
+        assertEquals(rows.get(2)[0], 3);
+        assertEquals(batch.pending(), 1);
+        assertTrue(batch.drain(1).isEmpty());
+        assertEquals(batch.drain(0).get(0)[0], 4);
+        assertEquals(batch.pending(), 0);
+    }
+
+    @Test
+    public void testInterval() throws InterruptedException {
+        WriteBatch batch = new WriteBatch(100, 10L);
+        batch.add(new Object[]{1});
+        Thread.sleep(20L);
+        assertTrue(batch.isDue(0));
+        assertFalse(batch.isDue(1));
+    }
+
+    @Test
+    public void testAcknowledge() {
+        WriteBatch batch = new WriteBatch(2, 60000L);
+        batch.add(new Object[]{1});
+        batch.add(new Object[]{2});
+        batch.await(batch.drain(0), 2L);
+        batch.add(new Object[]{3});
+        batch.await(batch.drain(0), 5L);
+        assertEquals(batch.getPositions().size(), 2);
+        assertEquals(batch.getPositions().get(1), Long.valueOf(5L));
+        assertTrue(batch.acknowledge(1L).isEmpty());
+        assertEquals(batch.acknowledge(4L).size(), 2);
+        assertEquals(batch.unacknowledged(), 1);
+        assertEquals(batch.acknowledge(5L).get(0)[0], 3);
+        assertTrue(batch.getPositions().isEmpty());
+    }
+
+    @Test
+    public void testBatched() throws IOException {
+        SQLCommand command = new SQLCommand().setSQL("update orders set indexed = 1 where id = ?");
+        assertFalse(command.isBatched());
+        command.setBatchSize(100);
+        assertTrue(command.isBatched());
+        command.setSQL("select * from orders");
+        assertFalse(command.isBatched());
+    }
+}
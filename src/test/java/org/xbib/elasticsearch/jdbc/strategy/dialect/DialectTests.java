@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.jdbc.strategy.dialect;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.xbib.elasticsearch.common.util.StrategyLoader;
+import org.xbib.elasticsearch.jdbc.strategy.Dialect;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+public class DialectTests extends Assert {
+
+    @Test
+    public void testSelectByURL() {
+        assertEquals(StrategyLoader.newDialect(null, "jdbc:derby:memory:test").name(), "derby");
+        assertEquals(StrategyLoader.newDialect(null, "jdbc:h2:mem:test").name(), "h2");
+        assertEquals(StrategyLoader.newDialect(null, "jdbc:hsqldb:mem:test").name(), "hsqldb");
+        assertEquals(StrategyLoader.newDialect(null, "jdbc:mysql://localhost:3306/test").name(), "mysql");
+        assertEquals(StrategyLoader.newDialect(null, "jdbc:mariadb://localhost:3306/test").name(), "mysql");
+        assertEquals(StrategyLoader.newDialect(null, "jdbc:postgresql://localhost/test").name(), "postgresql");
+        assertEquals(StrategyLoader.newDialect(null, "jdbc:oracle:thin:@localhost:1521:test").name(), "oracle");
+        assertEquals(StrategyLoader.newDialect(null, "jdbc:unknown:test").name(), "standard");
+        assertEquals(StrategyLoader.newDialect(null, null).name(), "standard");
+    }
+
+    @Test
+    public void testSelectByName() {
+        assertEquals(StrategyLoader.newDialect("postgresql", "jdbc:unknown:test").name(), "postgresql");
+        assertEquals(StrategyLoader.newDialect("standard", "jdbc:mysql://localhost:3306/test").name(), "standard");
+    }
+
+    @Test
+    public void testPostgreSQL() {
+        // the query timeout is skipped only if the driver reports it as not supported
+        assertTrue(new PostgreSQLDialect().supportsQueryTimeout());
+    }
+
+    @Test
+    public void testMySQL() {
+        Dialect dialect = new MySQLDialect();
+        String url = "jdbc:mysql://localhost:3306/test";
+        assertEquals(dialect.getDefaultFetchSize(url, null), Integer.MIN_VALUE);
+        assertEquals(dialect.getDefaultFetchSize(url + "?useCursorFetch=true", null), 10);
+        Map<String, Object> map = Collections.<String, Object>singletonMap("useCursorFetch", "true");
+        assertEquals(dialect.getDefaultFetchSize(url, map), 10);
+        Properties properties = new Properties();
+        dialect.addStreamingProperties(url, properties, Integer.MIN_VALUE);
+        assertTrue(properties.isEmpty());
+        dialect.addStreamingProperties(url, properties, 100);
+        assertEquals(properties.getProperty("useCursorFetch"), "true");
+    }
+
+    @Test
+    public void testOracle() {
+        Dialect dialect = new OracleDialect();
+        Properties properties = new Properties();
+        dialect.addStreamingProperties("jdbc:oracle:thin:@localhost:1521:test", properties, 500);
+        assertEquals(properties.getProperty("defaultRowPrefetch"), "500");
+    }
+
+    @Test
+    public void testDerby() throws Exception {
+        Connection connection = DriverManager.getConnection("jdbc:derby:memory:dialect;create=true");
+        try {
+            assertReading(StrategyLoader.newDialect(null, "jdbc:derby:memory:dialect"), connection, true);
+            assertEquals(connection.getHoldability(), ResultSet.CLOSE_CURSORS_AT_COMMIT);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testH2() throws Exception {
+        Connection connection = DriverManager.getConnection("jdbc:h2:mem:dialect");
+        try {
+            // H2 ignores the read-only flag of a connection
+            assertReading(StrategyLoader.newDialect(null, "jdbc:h2:mem:dialect"), connection, false);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testHSQLDB() throws Exception {
+        Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:dialect", "SA", "");
+        try {
+            Dialect dialect = StrategyLoader.newDialect(null, "jdbc:hsqldb:mem:dialect");
+            assertReading(dialect, connection, true);
+            assertEquals(connection.getHoldability(), ResultSet.CLOSE_CURSORS_AT_COMMIT);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void assertReading(Dialect dialect, Connection connection, boolean readOnly) throws SQLException {
+        assertTrue(connection.getAutoCommit());
+        dialect.prepareForReading(connection, false);
+        assertEquals(connection.isReadOnly(), readOnly);
+        assertFalse(connection.getAutoCommit());
+        // preparing again must not change anything
+        dialect.prepareForReading(connection, false);
+        assertFalse(connection.getAutoCommit());
+        dialect.prepareForWriting(connection, true);
+        assertTrue(connection.getAutoCommit());
+    }
+}
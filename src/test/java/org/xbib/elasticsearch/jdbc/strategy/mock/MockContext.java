@@ -84,6 +84,11 @@ public class MockContext implements Context<Source,Sink> {
         return State.IDLE;
     }
 
+    @Override
+    public boolean isKeepAlive() {
+        return false;
+    }
+
     @Override
     public void log() {
     }
@@ -17,11 +17,17 @@ package org.xbib.elasticsearch.jdbc.strategy.mock;
 
 import org.elasticsearch.common.unit.TimeValue;
 import org.xbib.elasticsearch.common.keyvalue.KeyValueStreamListener;
+import org.xbib.elasticsearch.common.util.ConnectionPool;
+import org.xbib.elasticsearch.common.util.FetchSizeController;
+import org.xbib.elasticsearch.common.util.LobReader;
+import org.xbib.elasticsearch.common.util.RawJson;
 import org.xbib.elasticsearch.common.util.SQLCommand;
 import org.xbib.elasticsearch.common.metrics.SourceMetric;
+import org.xbib.elasticsearch.jdbc.strategy.Dialect;
 import org.xbib.elasticsearch.jdbc.strategy.JDBCSource;
 import org.xbib.elasticsearch.jdbc.strategy.Source;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
@@ -153,6 +159,41 @@ public class MockJDBCSource implements JDBCSource<MockContext> {
         return this;
     }
 
+    @Override
+    public JDBCSource<MockContext> setJsonColumns(List<String> jsonColumns) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setJsonSampleSize(int jsonSampleSize) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setJsonPassthrough(RawJson.Mode jsonPassthrough) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setGeoColumns(List<String> geoColumns) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setGeoSampleSize(int geoSampleSize) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setGroupById(long memoryLimit, File spillDirectory) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setStringDictionary(int size, int sampleSize) {
+        return this;
+    }
+
     @Override
     public JDBCSource<MockContext> shouldPrepareResultSetMetadata(boolean shouldPrepareResultSetMetadata) {
         return this;
@@ -183,6 +224,41 @@ public class MockJDBCSource implements JDBCSource<MockContext> {
         return this;
     }
 
+    @Override
+    public JDBCSource<MockContext> setDialect(Dialect dialect) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setSessionSQL(List<String> sessionSQL) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setConnectionPools(ConnectionPool readPool, ConnectionPool writePool) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setStatementCacheSize(int statementCacheSize) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setPipelineQueueSize(int pipelineQueueSize) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setLobLimit(long lobMaxSize, LobReader.Policy lobPolicy) {
+        return this;
+    }
+
+    @Override
+    public JDBCSource<MockContext> setFetchSizeController(FetchSizeController fetchSizeController) {
+        return this;
+    }
+
     @Override
     public Connection getConnectionForReading() throws SQLException {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -298,6 +374,11 @@ public class MockJDBCSource implements JDBCSource<MockContext> {
         return this;
     }
 
+    @Override
+    public JDBCSource<MockContext> setTimestampFormat(String timestampFormat) {
+        return this;
+    }
+
     @Override
     public void shutdown() throws IOException {
     }
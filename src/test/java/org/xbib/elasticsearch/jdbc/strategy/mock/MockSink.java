@@ -17,6 +17,7 @@ package org.xbib.elasticsearch.jdbc.strategy.mock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.xbib.elasticsearch.common.metrics.SinkMetric;
 import org.xbib.elasticsearch.common.util.IndexableObject;
 import org.xbib.elasticsearch.jdbc.strategy.Sink;
@@ -24,6 +25,7 @@ import org.xbib.elasticsearch.jdbc.strategy.Sink;
 import java.io.IOException;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Future;
 
 public class MockSink implements Sink<MockContext> {
 
@@ -33,6 +35,8 @@ public class MockSink implements Sink<MockContext> {
 
     private long counter;
 
+    private long position;
+
     @Override
     public String strategy() {
         return "mock";
@@ -62,6 +66,7 @@ public class MockSink implements Sink<MockContext> {
         logger.info("index {} = {}", object.toString(), object.build());
         data.put(object, object.build());
         counter++;
+        position++;
         logger.info("size after insert {}", data.size());
     }
 
@@ -70,6 +75,7 @@ public class MockSink implements Sink<MockContext> {
         logger.info("delete {}", object.toString());
         data.remove(object);
         counter--;
+        position++;
         logger.info("size after delete {}", data.size());
     }
 
@@ -78,6 +84,7 @@ public class MockSink implements Sink<MockContext> {
         logger.info("update {} = {}", object.toString(), object.build());
         data.put(object, object.build());
         counter++;
+        position++;
         logger.info("size after update {}", data.size());
     }
 
@@ -124,6 +131,18 @@ public class MockSink implements Sink<MockContext> {
     public void flushIngest() throws IOException {
     }
 
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public Future<Boolean> acknowledged(long position) throws IOException {
+        PlainActionFuture<Boolean> future = PlainActionFuture.newFuture();
+        future.onResponse(true);
+        return future;
+    }
+
     @Override
     public void shutdown() throws IOException {
     }
@@ -15,10 +15,12 @@
  */
 package org.xbib.elasticsearch.jdbc.strategy.standard;
 
+import org.elasticsearch.common.settings.Settings;
 import org.testng.annotations.Parameters;
 import org.testng.annotations.Test;
 import org.xbib.elasticsearch.jdbc.strategy.Context;
 import org.xbib.elasticsearch.jdbc.strategy.JDBCSource;
+import org.xbib.elasticsearch.jdbc.strategy.Sink;
 import org.xbib.tools.JDBCImporter;
 
 import java.io.ByteArrayInputStream;
@@ -55,6 +57,33 @@ public class StandardScheduleTests extends AbstractSinkTest {
         assertTrue(hits > 104L);
     }
 
+    /**
+     * The context, the sink, and the client of a scheduled job are kept between runs
+     *
+     * @param resource the resource
+     * @param sql           the SQL statement
+     * @throws Exception if test fails
+     */
+    @Test
+    @Parameters({"task6", "sql1"})
+    public void testKeepAlive(String resource, String sql) throws Exception {
+        createRandomProducts(sql, 100);
+        Context context = createContext(resource);
+        // keep alive is opt-in
+        assertFalse(context.isKeepAlive());
+        context.setSettings(Settings.settingsBuilder().put(context.getSettings()).put("keep_alive", true).build());
+        JDBCImporter importer = createImporter(context);
+        Thread.sleep(6000L); // after the first run
+        context = importer.getContext();
+        assertTrue(context.isKeepAlive());
+        Sink sink = context.getSink();
+        assertNotNull(sink);
+        Thread.sleep(6000L); // after the next run
+        assertSame(importer.getContext(), context);
+        assertSame(context.getSink(), sink);
+        importer.shutdown();
+    }
+
     /**
      * Test read and write of timestamps in a table. We create 100 timestamps over hour interval,
      * current timestamp $now is in the center.
@@ -79,8 +108,11 @@ public class StandardScheduleTests extends AbstractSinkTest {
     }
 
     private JDBCImporter createImporter(final String resource) throws Exception {
+        return createImporter(createContext(resource));
+    }
+
+    private JDBCImporter createImporter(Context context) throws Exception {
         final JDBCImporter importer = new JDBCImporter();
-        Context context = createContext(resource);
         logger.info("createImporter: setting context {}", context);
         importer.setContext(context);
         logger.info("createImporter: settings = {}", context.getSettings());
@@ -17,9 +17,13 @@ package org.xbib.elasticsearch.jdbc.strategy.standard;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.settings.Settings;
+import org.joda.time.format.ISODateTimeFormat;
 import org.testng.annotations.Optional;
 import org.testng.annotations.Parameters;
 import org.testng.annotations.Test;
+import org.xbib.elasticsearch.common.util.SQLCommand;
 import org.xbib.elasticsearch.common.util.StringKeyValueStreamListener;
 import org.xbib.elasticsearch.jdbc.strategy.mock.MockSink;
 import org.xbib.elasticsearch.common.util.IndexableObject;
@@ -31,9 +35,11 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public class StandardSourceTests extends AbstractSourceTest {
 
@@ -174,4 +180,99 @@ public class StandardSourceTests extends AbstractSourceTest {
         assertEquals(it.next().source().toString(), res2);
     }
 
-}
\ No newline at end of file
+    @Test
+    @Parameters({"sql2"})
+    public void testTimestampFormat(String sql) throws Exception {
+        StandardSource<?> standardSource = (StandardSource<?>) source;
+        standardSource.setTimestampFormat("epoch_millis");
+        List<Object> millis = created(sql);
+        standardSource.setTimestampFormat("iso");
+        List<Object> dates = created(sql);
+        assertEquals(millis.size(), 5);
+        assertEquals(dates.size(), 5);
+        for (int i = 0; i < millis.size(); i++) {
+            assertTrue(millis.get(i) instanceof Long, millis.toString());
+            assertEquals(ISODateTimeFormat.dateTime().parseMillis(dates.get(i).toString()), millis.get(i));
+        }
+    }
+
+    /**
+     * Test that a batched write statement only marks rows whose documents are acknowledged by the sink
+     *
+     * @param sql1 the query statement, selecting the customer as _id
+     * @param sql2 the batched write statement, with the $row._id parameter
+     * @param sql3 the statement selecting the marked customers
+     * @throws Exception if test fails
+     */
+    @Test
+    @Parameters({"sql5", "sql6", "sql7"})
+    public void testWriteBatch(@Optional String sql1, @Optional String sql2, @Optional String sql3) throws Exception {
+        if (sql1 == null) {
+            return;
+        }
+        final List<String> ids = new LinkedList<String>();
+        Sink sink = new MockSink() {
+            @Override
+            public void index(IndexableObject object, boolean create) throws IOException {
+                super.index(object, create);
+                ids.add(object.id());
+            }
+
+            @Override
+            public Future<Boolean> acknowledged(long position) throws IOException {
+                // the documents after the second one are lost
+                PlainActionFuture<Boolean> future = PlainActionFuture.newFuture();
+                future.onResponse(position <= 2L);
+                return future;
+            }
+        };
+        StandardContext context = newContext();
+        context.setSettings(Settings.settingsBuilder().put("max_request_wait", "1s").build());
+        context.setSink(sink);
+        StandardSource<StandardContext> standardSource = (StandardSource<StandardContext>) source;
+        standardSource.setContext(context);
+        List<SQLCommand> statements = new LinkedList<SQLCommand>();
+        statements.add(new SQLCommand().setSQL(sql1));
+        statements.add(new SQLCommand().setSQL(sql2)
+                .setParameters(Collections.<Object>singletonList("$row._id"))
+                .setBatchSize(2));
+        standardSource.setStatements(statements);
+        standardSource.fetch();
+        assertEquals(ids.size(), 5);
+        PreparedStatement statement = source.prepareQuery(sql3);
+        ResultSet results = source.executeQuery(statement);
+        List<String> marked = new LinkedList<String>();
+        while (results.next()) {
+            marked.add(results.getString(1));
+        }
+        source.close(results);
+        source.close(statement);
+        assertEquals(marked, ids.subList(0, 2));
+    }
+
+    private List<Object> created(String sql) throws Exception {
+        final List<Object> created = new LinkedList<Object>();
+        Sink sink = new MockSink() {
+            @Override
+            public void index(IndexableObject object, boolean create) throws IOException {
+                Values o = (Values) object.source().get("created");
+                if (o == null) {
+                    o = (Values) object.source().get("CREATED"); // hsqldb is uppercase
+                }
+                created.add(o.getValues()[0]);
+            }
+        };
+        PreparedStatement statement = source.prepareQuery(sql);
+        ResultSet results = source.executeQuery(statement);
+        StringKeyValueStreamListener listener = new StringKeyValueStreamListener()
+                .output(sink);
+        source.beforeRows(results, listener);
+        while (source.nextRow(results, listener)) {
+            // collect
+        }
+        source.afterRows(results, listener);
+        source.close(results);
+        source.close(statement);
+        return created;
+    }
+}